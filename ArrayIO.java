@@ -0,0 +1,36 @@
+package csci366.lmc.whiletran;
+
+import java.util.Arrays;
+
+// reads from a fixed array and collects writes, running out of input is an IllegalStateException like LmcMachine
+final class ArrayIO implements WhiletranIO {
+
+    private final int[] inputs;
+    private int inputHead = 0;
+    private int[] outputs = new int[8];
+    private int outputCount = 0;
+
+    ArrayIO(int[] inputs) {
+        this.inputs = inputs;
+    }
+
+    @Override
+    public int read() {
+        if (inputHead == inputs.length) {
+            throw new IllegalStateException("No input available");
+        }
+        return inputs[inputHead++];
+    }
+
+    @Override
+    public void write(int value) {
+        if (outputCount == outputs.length) {
+            outputs = Arrays.copyOf(outputs, outputs.length * 2);
+        }
+        outputs[outputCount++] = value;
+    }
+
+    int[] getOutput() {
+        return Arrays.copyOf(outputs, outputCount);
+    }
+}
@@ -0,0 +1,73 @@
+package csci366.lmc.whiletran;
+
+import java.util.Arrays;
+
+/**
+ * The order the code generator works out an arena's expressions in, shared with
+ * {@link MailboxAllocator} so the live ranges it numbers are the ones the generated code has.
+ *
+ * ADD and SUB need their right side in a mailbox, so a right side that isn't a variable or a number
+ * is worked out first and spilled to a temporary, which stays taken while the left side is worked
+ * out. When the operation commutes the sides are swapped if that avoids the spill, or if the left
+ * side needs more temporaries, so it's the one worked out while nothing else is held (Sethi-Ullman
+ * order). A comparison with 0 is its left side as it is, anything else is the difference of its sides.
+ */
+final class EvaluationOrder {
+
+    private final WhiletranArena arena;
+    // temporaries needed by each expression node, -1 until worked out
+    private final int[] needs;
+
+    EvaluationOrder(WhiletranArena arena) {
+        this.arena = arena;
+        this.needs = new int[arena.nodeCount()];
+        Arrays.fill(needs, -1);
+    }
+
+    // whether lhs op rhs is worked out as rhs op lhs, for an operation that commutes
+    boolean swaps(int lhs, int rhs) {
+        return !isOperand(rhs) && (isOperand(lhs) || need(lhs) > need(rhs));
+    }
+
+    // ADD and == can be worked out either way round
+    boolean commutes(int node) {
+        int kind = arena.kind(node);
+        return kind == WhiletranArena.ADD || kind == WhiletranArena.EQUAL;
+    }
+
+    // how many temporaries working out the node takes
+    int need(int node) {
+        if (needs[node] >= 0) {
+            return needs[node];
+        }
+        int need = 0;
+        if (arena.kind(node) >= WhiletranArena.ADD && !(isComparison(node) && isZero(arena.rhs(node)))) {
+            int lhs = arena.lhs(node);
+            int rhs = arena.rhs(node);
+            if (commutes(node) && swaps(lhs, rhs)) {
+                int swap = lhs;
+                lhs = rhs;
+                rhs = swap;
+            }
+            need = isOperand(rhs) ? need(lhs) : Math.max(need(rhs), need(lhs) + 1);
+        } else if (isComparison(node)) {
+            need = need(arena.lhs(node));
+        }
+        needs[node] = need;
+        return need;
+    }
+
+    boolean isOperand(int node) {
+        int kind = arena.kind(node);
+        return kind == WhiletranArena.VARIABLE || kind == WhiletranArena.NUMBER || kind == WhiletranArena.BOOLEAN;
+    }
+
+    boolean isZero(int node) {
+        return arena.kind(node) == WhiletranArena.NUMBER && arena.value(node) == 0;
+    }
+
+    boolean isComparison(int node) {
+        int kind = arena.kind(node);
+        return kind == WhiletranArena.GREATER_EQUAL || kind == WhiletranArena.EQUAL;
+    }
+}
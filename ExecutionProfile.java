@@ -0,0 +1,135 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Per mailbox execution counts from a profiled {@link LmcMachine} run, mapped back to the source
+ * through the statement each instruction was generated for. Instructions without an origin (the
+ * final HLT, data) are only counted in {@link #countAt(int)}.
+ */
+public class ExecutionProfile {
+
+    private final WhiletranProgram program;
+    private final WhiletranParser.ParseResult parse;
+    private final List<LmcInstruction> instructions;
+    private final long[] counts;
+
+    public ExecutionProfile(WhiletranParser.ParseResult parse, LmcImage image, long[] counts) {
+        this.program = parse.program();
+        this.parse = parse;
+        this.instructions = image.instructions();
+        this.counts = counts;
+    }
+
+    /**
+     * Compiles and runs the source with origins recorded and profiling on. The simplifier is skipped,
+     * as it replaces statements and so would lose their source lines.
+     */
+    public static ExecutionProfile profile(String src, long maxSteps, int... inputs) {
+        WhiletranParser.ParseResult parse = new WhiletranParser().parseWithLines(src);
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        codeGen.setRecordOrigins(true);
+        List<LmcInstruction> code = new PeepholeOptimizer().optimize(codeGen.generateInstructions(parse.program())).instructions();
+        LmcImage image = new LmcImageWriter().write(code);
+
+        LmcMachine machine = new LmcMachine();
+        machine.enableProfiling();
+        machine.load(image.mailboxes());
+        machine.pushInputs(inputs);
+        machine.run(maxSteps);
+        return new ExecutionProfile(parse, image, machine.getExecutionCounts());
+    }
+
+    public long countAt(int address) {
+        return counts[address];
+    }
+
+    public long totalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public SortedMap<Integer, Long> countsByLine() {
+        SortedMap<Integer, Long> byLine = new TreeMap<>();
+        for (int address = 0; address < instructions.size(); address++) {
+            WhiletranStatement origin = instructions.get(address).origin();
+            if (origin != null && counts[address] > 0) {
+                byLine.merge(parse.lineOf(origin), counts[address], Long::sum);
+            }
+        }
+        return byLine;
+    }
+
+    /**
+     * Instructions executed inside each DO loop, including its condition and any nested statements,
+     * keyed by the line the loop starts on.
+     */
+    public SortedMap<Integer, Long> countsByLoop() {
+        SortedMap<Integer, Long> byLoop = new TreeMap<>();
+        countLoops(program.children(), byLoop);
+        return byLoop;
+    }
+
+    private void countLoops(List<WhiletranStatement> statements, SortedMap<Integer, Long> byLoop) {
+        for (WhiletranStatement statement : statements) {
+            if (statement instanceof DoWhileLoopStatement dl) {
+                Set<WhiletranStatement> inside = Collections.newSetFromMap(new IdentityHashMap<>());
+                collect(dl, inside);
+                long total = 0;
+                for (int address = 0; address < instructions.size(); address++) {
+                    if (inside.contains(instructions.get(address).origin())) {
+                        total += counts[address];
+                    }
+                }
+                byLoop.put(parse.lineOf(dl), total);
+                countLoops(dl.body(), byLoop);
+            } else if (statement instanceof IfStatement is) {
+                countLoops(is.thenBody(), byLoop);
+                if (is.elseBody() != null) {
+                    countLoops(is.elseBody(), byLoop);
+                }
+            }
+        }
+    }
+
+    private static void collect(WhiletranStatement statement, Set<WhiletranStatement> into) {
+        into.add(statement);
+        if (statement instanceof DoWhileLoopStatement dl) {
+            for (WhiletranStatement child : dl.body()) {
+                collect(child, into);
+            }
+        } else if (statement instanceof IfStatement is) {
+            for (WhiletranStatement child : is.thenBody()) {
+                collect(child, into);
+            }
+            if (is.elseBody() != null) {
+                for (WhiletranStatement child : is.elseBody()) {
+                    collect(child, into);
+                }
+            }
+        }
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("total: ").append(totalCount()).append("\n");
+        for (Map.Entry<Integer, Long> entry : countsByLine().entrySet()) {
+            sb.append("line ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        for (Map.Entry<Integer, Long> entry : countsByLoop().entrySet()) {
+            sb.append("loop at line ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        return sb.toString();
+    }
+}
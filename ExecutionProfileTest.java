@@ -0,0 +1,49 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionProfileTest {
+
+    @Test
+    public void testCountsByLine() {
+        ExecutionProfile profile = ExecutionProfile.profile(LmcMachineTest.DIVISION, 10_000, 50, 10);
+        SortedMap<Integer, Long> byLine = profile.countsByLine();
+
+        assertEquals(2, byLine.get(1)); // INP, STA
+        assertEquals(2, byLine.get(3)); // LDA, STA
+        assertEquals(6, byLine.get(4)); // the loop's BRP, once per iteration
+        assertEquals(18, byLine.get(5)); // LDA, ADD, STA six times
+        assertEquals(18, byLine.get(6)); // LDA, SUB, STA six times
+        assertEquals(2, byLine.get(9)); // LDA, OUT
+        assertNull(byLine.get(7));
+    }
+
+    @Test
+    public void testCountsByLoop() {
+        ExecutionProfile profile = ExecutionProfile.profile(LmcMachineTest.DIVISION, 10_000, 50, 10);
+        assertEquals(42, profile.countsByLoop().get(4));
+        assertEquals(51, profile.totalCount()); // including the final HLT
+    }
+
+    @Test
+    public void testNestedLoopsCountTowardsOuterLoop() {
+        ExecutionProfile profile = ExecutionProfile.profile("""
+                I = 2
+                DO
+                  J = 2
+                  DO
+                    J = J - 1
+                  WHILE J - 1
+                  ENDDO
+                  I = I - 1
+                WHILE I - 1
+                ENDDO""", 10_000);
+        SortedMap<Integer, Long> byLoop = profile.countsByLoop();
+        assertTrue(byLoop.get(2) > byLoop.get(4));
+        assertEquals(profile.totalCount() - 3, byLoop.get(2)); // everything but I = 2 and HLT
+    }
+}
@@ -0,0 +1,213 @@
+package csci366.lmc.whiletran;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * A fixed size queue of ints for streaming values into and out of an {@link LmcMachine} while it
+ * runs, without boxing. One thread may add values and one other thread take them at the same time;
+ * neither takes a lock; the indexes are volatile and a side that has to wait parks until the other
+ * side wakes it.
+ *
+ * offer and poll never wait, put and take wait for space or a value. Once the producer calls
+ * close(), a take on the empty buffer fails the same way an INP with no input does.
+ */
+public final class IntRingBuffer {
+
+    private final int[] values;
+    private final int mask;
+    // head is only written by the consumer and tail only by the producer
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile boolean closed = false;
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    // capacity is rounded up to a power of two
+    public IntRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be 1 to 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        values = new int[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public boolean isFull() {
+        return tail - head == values.length;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // no more values will be added, a consumer waiting on the empty buffer is woken to fail
+    public void close() {
+        closed = true;
+        wake(waitingConsumer);
+    }
+
+    public boolean offer(int value) {
+        if (closed) {
+            throw new IllegalStateException("Buffer is closed");
+        }
+        long t = tail;
+        if (t - head == values.length) {
+            return false;
+        }
+        values[(int) t & mask] = value;
+        // the volatile write publishes the value along with the new tail
+        tail = t + 1;
+        wake(waitingConsumer);
+        return true;
+    }
+
+    // adds as many of the values as there's room for, and returns how many that was
+    public int offer(int[] from, int offset, int count) {
+        if (closed) {
+            throw new IllegalStateException("Buffer is closed");
+        }
+        long t = tail;
+        int n = (int) Math.min(count, values.length - (t - head));
+        int start = (int) t & mask;
+        int first = Math.min(n, values.length - start);
+        System.arraycopy(from, offset, values, start, first);
+        System.arraycopy(from, offset + first, values, 0, n - first);
+        tail = t + n;
+        if (n > 0) {
+            wake(waitingConsumer);
+        }
+        return n;
+    }
+
+    public void put(int value) throws InterruptedException {
+        while (!offer(value)) {
+            awaitSpace();
+        }
+    }
+
+    public void put(int[] from, int offset, int count) throws InterruptedException {
+        while (count > 0) {
+            int n = offer(from, offset, count);
+            offset += n;
+            count -= n;
+            if (count > 0) {
+                awaitSpace();
+            }
+        }
+    }
+
+    public int poll() {
+        long h = head;
+        if (h == tail) {
+            throw new IllegalStateException("No input available");
+        }
+        int value = values[(int) h & mask];
+        head = h + 1;
+        wake(waitingProducer);
+        return value;
+    }
+
+    // takes up to max values without waiting, and returns how many that was
+    public int drainTo(int[] into, int offset, int max) {
+        long h = head;
+        int n = (int) Math.min(max, tail - h);
+        int start = (int) h & mask;
+        int first = Math.min(n, values.length - start);
+        System.arraycopy(values, start, into, offset, first);
+        System.arraycopy(values, 0, into, offset + first, n - first);
+        head = h + n;
+        if (n > 0) {
+            wake(waitingProducer);
+        }
+        return n;
+    }
+
+    public int take() throws InterruptedException {
+        if (isEmpty()) {
+            awaitValue();
+        }
+        return poll();
+    }
+
+    // for LmcMachine.setInput, an INP waits for a value and fails if interrupted or the buffer is closed
+    public IntSupplier blockingReader() {
+        return () -> {
+            try {
+                return take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for input", e);
+            }
+        };
+    }
+
+    // for LmcMachine.setOutput, an OUT waits for space and fails if interrupted
+    public IntConsumer blockingWriter() {
+        return value -> {
+            try {
+                put(value);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for output space", e);
+            }
+        };
+    }
+
+    /*
+     * The waiting thread is published before the buffer is checked again, and the other side
+     * updates its index before it looks for a waiting thread, so one of them always sees the other.
+     */
+    private void awaitValue() throws InterruptedException {
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (isEmpty()) {
+                if (closed && isEmpty()) {
+                    return; // poll reports the missing input
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    private void awaitSpace() throws InterruptedException {
+        waitingProducer = Thread.currentThread();
+        try {
+            while (isFull()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingProducer = null;
+        }
+    }
+
+    private static void wake(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntRingBufferTest {
+
+    @Test
+    public void testOfferAndPollWrapAround() {
+        IntRingBuffer buffer = new IntRingBuffer(3);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.offer(2 * i));
+            assertTrue(buffer.offer(2 * i + 1));
+            assertEquals(2, buffer.size());
+            assertEquals(2 * i, buffer.poll());
+            assertEquals(2 * i + 1, buffer.poll());
+        }
+        assertTrue(buffer.isEmpty());
+        assertThrows(IllegalStateException.class, buffer::poll);
+    }
+
+    @Test
+    public void testFull() {
+        IntRingBuffer buffer = new IntRingBuffer(2);
+        assertTrue(buffer.offer(1));
+        assertTrue(buffer.offer(2));
+        assertTrue(buffer.isFull());
+        assertFalse(buffer.offer(3));
+        assertEquals(1, buffer.poll());
+        assertTrue(buffer.offer(3));
+    }
+
+    @Test
+    public void testBulkOfferAndDrain() {
+        IntRingBuffer buffer = new IntRingBuffer(8);
+        int[] into = new int[8];
+        buffer.offer(new int[]{0, 1, 2, 3, 4, 5}, 0, 6);
+        assertEquals(4, buffer.drainTo(into, 0, 4));
+        // wraps past the end of the array
+        assertEquals(6, buffer.offer(new int[]{6, 7, 8, 9, 10, 11, 12}, 0, 7));
+        assertEquals(8, buffer.drainTo(into, 0, 8));
+        assertArrayEquals(new int[]{4, 5, 6, 7, 8, 9, 10, 11}, into);
+        assertEquals(0, buffer.drainTo(into, 0, 8));
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        IntRingBuffer buffer = new IntRingBuffer(4);
+        buffer.offer(1);
+        buffer.close();
+        assertThrows(IllegalStateException.class, () -> buffer.offer(2));
+        assertEquals(1, buffer.take());
+        assertThrows(IllegalStateException.class, buffer::take);
+    }
+
+    @Test
+    public void testCloseWakesWaitingConsumer() throws InterruptedException {
+        IntRingBuffer buffer = new IntRingBuffer(4);
+        Throwable[] failure = new Throwable[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                buffer.take();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        });
+        consumer.start();
+        Thread.sleep(20);
+        buffer.close();
+        consumer.join();
+        assertInstanceOf(IllegalStateException.class, failure[0]);
+    }
+
+    @Test
+    public void testBlockingTransferKeepsOrder() throws InterruptedException {
+        int count = 1_000_000;
+        IntRingBuffer buffer = new IntRingBuffer(64);
+        Thread producer = new Thread(() -> {
+            try {
+                int[] chunk = new int[10];
+                for (int i = 0; i < count; i += chunk.length) {
+                    for (int j = 0; j < chunk.length; j++) {
+                        chunk[j] = i + j;
+                    }
+                    buffer.put(chunk, 0, chunk.length);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, buffer.take());
+        }
+        producer.join();
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,214 @@
+package csci366.lmc.whiletran;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lays a program too big for one bank out over several, for {@link LmcImageWriter} in banked mode.
+ * Code starts at mailbox 0 and runs straight on from one bank into the next, data is packed at the
+ * top of memory and the unused mailboxes in between are filled with DAT 0. Two instructions are
+ * added where they're needed:
+ *
+ * - DBK b before an LDA, STA, ADD or SUB whose mailbox isn't in the data bank already selected on
+ *   every path there. Which bank that is gets worked out over the flow graph, so a DBK is only
+ *   added where the bank can actually differ.
+ * - CBK b before a branch whose target is in a different bank from the branch. Adding one moves
+ *   everything after it along, which can push other branches across a bank boundary, so this is
+ *   repeated until nothing changes.
+ *
+ * Either takes over the label of the instruction it's added before, so jumps there run it too.
+ */
+final class LmcBankLayout {
+
+    // data bank states, besides a bank number
+    private static final int UNREACHED = -2;
+    private static final int UNKNOWN = -1;
+
+    private final int banks;
+
+    LmcBankLayout(int banks) {
+        this.banks = banks;
+    }
+
+    List<LmcInstruction> layout(List<LmcInstruction> instructions) {
+        List<LmcInstruction> code = new ArrayList<>();
+        List<LmcInstruction> data = new ArrayList<>();
+        for (LmcInstruction instruction : instructions) {
+            (instruction.isData() ? data : code).add(instruction);
+        }
+
+        int size = banks * LmcImageWriter.MAILBOXES;
+        int dataStart = size - data.size();
+        Map<String, Integer> dataAddresses = new HashMap<>();
+        for (int i = 0; i < data.size(); i++) {
+            if (data.get(i).label() != null) {
+                dataAddresses.put(data.get(i).label(), dataStart + i);
+            }
+        }
+
+        code = selectDataBanks(code, dataAddresses);
+        code = selectCodeBanks(code);
+        if (code.size() > dataStart) {
+            throw new IllegalStateException("Program needs " + (code.size() + data.size()) + " mailboxes, only "
+                    + size + " available");
+        }
+
+        List<LmcInstruction> out = new ArrayList<>(size);
+        out.addAll(code);
+        while (out.size() < dataStart) {
+            out.add(new LmcInstruction(null, "DAT", null));
+        }
+        out.addAll(data);
+        return out;
+    }
+
+    private List<LmcInstruction> selectDataBanks(List<LmcInstruction> code, Map<String, Integer> dataAddresses) {
+        Map<String, Integer> labels = labelIndexes(code);
+        int[] banksIn = new int[code.size()];
+        Arrays.fill(banksIn, UNREACHED);
+
+        // a worklist over the flow graph, the machine starts with bank 0 selected
+        Deque<Integer> work = new ArrayDeque<>();
+        if (!code.isEmpty()) {
+            banksIn[0] = 0;
+            work.add(0);
+        }
+        while (!work.isEmpty()) {
+            int i = work.poll();
+            LmcInstruction instruction = code.get(i);
+            int out = banksIn[i];
+            if (isMemoryAccess(instruction)) {
+                out = dataBank(instruction, dataAddresses);
+            } else if (instruction.mnemonic().equals("DBK")) {
+                out = Integer.parseInt(instruction.operand());
+            }
+            for (int successor : successors(code, labels, i)) {
+                int merged = merge(banksIn[successor], out);
+                if (merged != banksIn[successor]) {
+                    banksIn[successor] = merged;
+                    work.add(successor);
+                }
+            }
+        }
+
+        List<LmcInstruction> out = new ArrayList<>(code.size());
+        for (int i = 0; i < code.size(); i++) {
+            LmcInstruction instruction = code.get(i);
+            if (isMemoryAccess(instruction)) {
+                int bank = dataBank(instruction, dataAddresses);
+                if (banksIn[i] != bank) {
+                    out.add(new LmcInstruction(instruction.label(), "DBK", String.valueOf(bank), instruction.origin()));
+                    instruction = instruction.withLabel(null);
+                }
+            }
+            out.add(instruction);
+        }
+        return out;
+    }
+
+    private List<LmcInstruction> selectCodeBanks(List<LmcInstruction> code) {
+        Map<String, Integer> labels = labelIndexes(code);
+        boolean[] far = new boolean[code.size()];
+        int[] addresses = new int[code.size()];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int address = 0;
+            for (int i = 0; i < code.size(); i++) {
+                addresses[i] = address;
+                address += far[i] ? 2 : 1;
+            }
+            for (int i = 0; i < code.size(); i++) {
+                Integer target = branchTarget(code.get(i), labels);
+                if (target == null || far[i]) {
+                    continue;
+                }
+                // a CBK goes before the branch, the branch's own bank is where it ends up after that
+                if (bankOf(addresses[i]) != bankOf(addresses[target])) {
+                    far[i] = true;
+                    changed = true;
+                }
+            }
+        }
+
+        List<LmcInstruction> out = new ArrayList<>(code.size());
+        for (int i = 0; i < code.size(); i++) {
+            LmcInstruction instruction = code.get(i);
+            if (far[i]) {
+                int target = addresses[labels.get(instruction.operand())];
+                out.add(new LmcInstruction(instruction.label(), "CBK", String.valueOf(bankOf(target)), instruction.origin()));
+                instruction = instruction.withLabel(null);
+            }
+            out.add(instruction);
+        }
+        return out;
+    }
+
+    private static int bankOf(int address) {
+        return address / LmcImageWriter.MAILBOXES;
+    }
+
+    private int dataBank(LmcInstruction instruction, Map<String, Integer> dataAddresses) {
+        Integer address = dataAddresses.get(instruction.operand());
+        if (address == null) {
+            throw new IllegalStateException("Banked code can only load and store data labels: " + instruction);
+        }
+        return bankOf(address);
+    }
+
+    private static int merge(int a, int b) {
+        if (a == UNREACHED) {
+            return b;
+        }
+        return a == b ? a : UNKNOWN;
+    }
+
+    private static boolean isMemoryAccess(LmcInstruction instruction) {
+        return switch (instruction.mnemonic()) {
+            case "LDA", "STA", "ADD", "SUB" -> true;
+            default -> false;
+        };
+    }
+
+    private static Integer branchTarget(LmcInstruction instruction, Map<String, Integer> labels) {
+        return switch (instruction.mnemonic()) {
+            case "BRA", "BRZ", "BRP" -> {
+                Integer target = labels.get(instruction.operand());
+                if (target == null) {
+                    throw new IllegalStateException("Undefined label: " + instruction.operand());
+                }
+                yield target;
+            }
+            default -> null;
+        };
+    }
+
+    private static List<Integer> successors(List<LmcInstruction> code, Map<String, Integer> labels, int i) {
+        LmcInstruction instruction = code.get(i);
+        List<Integer> successors = new ArrayList<>(2);
+        Integer target = branchTarget(instruction, labels);
+        if (target != null) {
+            successors.add(target);
+        }
+        boolean fallsThrough = !instruction.mnemonic().equals("HLT") && !instruction.mnemonic().equals("BRA");
+        if (fallsThrough && i + 1 < code.size()) {
+            successors.add(i + 1);
+        }
+        return successors;
+    }
+
+    private static Map<String, Integer> labelIndexes(List<LmcInstruction> code) {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i).label() != null) {
+                labels.put(code.get(i).label(), i);
+            }
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,101 @@
+package csci366.lmc.whiletran;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one compiled image against many input vectors in parallel, one {@link LmcMachine} per
+ * vector. Results come back in the same order as the inputs. Everything the program does before
+ * its first INP is the same for every vector, so that runs once and each vector's machine is
+ * forked from a snapshot taken there.
+ *
+ * A vector that makes the program fail (a value out of range, running out of input) doesn't stop the
+ * others: its Run holds the error, with the output and steps up to the failure.
+ */
+public class LmcBatchRunner {
+
+    // error is what the run failed with, or null. halted is false for a failed run
+    public record Run(int[] output, long steps, boolean halted, RuntimeException error) {
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final long maxSteps;
+
+    public LmcBatchRunner() {
+        this(ForkJoinPool.commonPool(), Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSteps the most instructions a single run may execute, a run that hits it comes
+     *                 back with halted == false
+     */
+    public LmcBatchRunner(ForkJoinPool pool, long maxSteps) {
+        this.pool = pool;
+        this.maxSteps = maxSteps;
+    }
+
+    public List<Run> runAll(int[] image, List<int[]> inputVectors) {
+        if (inputVectors.isEmpty()) {
+            return new ArrayList<>();
+        }
+        LmcMachine prefix = new LmcMachine();
+        prefix.load(image);
+        prefix.setWaitForInput(true);
+        try {
+            prefix.run(maxSteps);
+        } catch (RuntimeException e) {
+            // it failed before reading anything, so it fails the same way for every vector
+            List<Run> results = new ArrayList<>(inputVectors.size());
+            for (int i = 0; i < inputVectors.size(); i++) {
+                results.add(new Run(prefix.getOutput(), prefix.getSteps(), false, e));
+            }
+            return results;
+        }
+        LmcMachine.Snapshot snapshot = prefix.snapshot();
+
+        List<Callable<Run>> tasks = new ArrayList<>(inputVectors.size());
+        for (int[] inputs : inputVectors) {
+            tasks.add(() -> run(snapshot, inputs));
+        }
+
+        List<Run> results = new ArrayList<>(inputVectors.size());
+        for (Future<Run> future : pool.invokeAll(tasks)) {
+            results.add(result(future));
+        }
+        return results;
+    }
+
+    // run() catches what a vector can throw, so a failure here is an Error or an interrupt
+    private static Run result(Future<Run> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Run run(LmcMachine.Snapshot snapshot, int[] inputs) {
+        LmcMachine machine = snapshot.fork();
+        machine.pushInputs(inputs);
+        try {
+            boolean halted = machine.run(maxSteps - machine.getSteps());
+            return new Run(machine.getOutput(), machine.getSteps(), halted, null);
+        } catch (RuntimeException e) {
+            return new Run(machine.getOutput(), machine.getSteps(), false, e);
+        }
+    }
+}
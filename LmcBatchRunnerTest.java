@@ -0,0 +1,84 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LmcBatchRunnerTest {
+
+    @Test
+    public void testResultsAreInInputOrder() {
+        int[] image = new WhiletranCompiler().compile(LmcMachineTest.FIB).mailboxes();
+        List<int[]> inputs = new ArrayList<>();
+        for (int n = 1; n <= 12; n++) {
+            inputs.add(new int[]{n});
+        }
+
+        List<LmcBatchRunner.Run> runs = new LmcBatchRunner().runAll(image, inputs);
+
+        int[] fib = {1, 1, 2, 3, 5, 8, 13, 21, 34, 55, 89, 144};
+        assertEquals(12, runs.size());
+        for (int i = 0; i < runs.size(); i++) {
+            assertArrayEquals(new int[]{fib[i]}, runs.get(i).output());
+            assertTrue(runs.get(i).halted());
+        }
+        // more iterations means more steps
+        assertTrue(runs.get(11).steps() > runs.get(0).steps());
+    }
+
+    @Test
+    public void testStepBudgetStopsRunawayPrograms() {
+        int[] image = new WhiletranCompiler().compile("X = READ DO X = X WHILE X ENDDO WRITE X").mailboxes();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            LmcBatchRunner runner = new LmcBatchRunner(pool, 10_000);
+
+            List<LmcBatchRunner.Run> runs = runner.runAll(image, List.of(new int[]{0}, new int[]{-1}));
+
+            assertFalse(runs.get(0).halted());
+            assertTrue(runs.get(0).succeeded());
+            assertEquals(10_000, runs.get(0).steps());
+            assertTrue(runs.get(1).halted());
+            assertArrayEquals(new int[]{-1}, runs.get(1).output());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAFailingVectorKeepsTheOthers() {
+        // doubles its input twice, so 300 goes out of range
+        int[] image = new WhiletranCompiler().compile("""
+                X = READ
+                X = X + X
+                WRITE X
+                X = X + X
+                WRITE X
+                Y = READ
+                WRITE Y""").mailboxes();
+
+        List<LmcBatchRunner.Run> runs = new LmcBatchRunner().runAll(image,
+                List.of(new int[]{1, 7}, new int[]{300, 7}, new int[]{2}, new int[]{3, 8}));
+
+        assertTrue(runs.get(0).succeeded());
+        assertArrayEquals(new int[]{2, 4, 7}, runs.get(0).output());
+
+        assertFalse(runs.get(1).succeeded());
+        assertFalse(runs.get(1).halted());
+        assertEquals("Value out of range: 1200", runs.get(1).error().getMessage());
+        assertArrayEquals(new int[]{600}, runs.get(1).output());
+
+        // out of input comes back as the machine's own exception, not wrapped
+        assertEquals(IllegalStateException.class, runs.get(2).error().getClass());
+        assertEquals("No input available", runs.get(2).error().getMessage());
+        assertArrayEquals(new int[]{4, 8}, runs.get(2).output());
+        assertTrue(runs.get(2).steps() > 0);
+
+        assertTrue(runs.get(3).succeeded());
+        assertArrayEquals(new int[]{6, 12, 8}, runs.get(3).output());
+    }
+}
@@ -0,0 +1,29 @@
+package csci366.lmc.whiletran;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An assembled program, ready to be passed to {@code LittleManComputer.load}, along with the
+ * address of every label. The assembly listing is only rendered if asked for.
+ */
+public record LmcImage(int[] mailboxes, Map<String, Integer> symbols, List<LmcInstruction> instructions) {
+
+    public int addressOf(String label) {
+        Integer address = symbols.get(label);
+        if (address == null) {
+            throw new IllegalArgumentException("Unknown label: " + label);
+        }
+        return address;
+    }
+
+    // the mailboxes are the only mutable part, so this is enough to hand out an image that can be
+    // loaded and modified independently
+    public LmcImage copy() {
+        return new LmcImage(mailboxes.clone(), symbols, instructions);
+    }
+
+    public String listing() {
+        return LmcInstruction.toListing(instructions);
+    }
+}
@@ -0,0 +1,131 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes generated instructions straight into a mailbox image, skipping the text assembly round
+ * trip through {@code LittleManAssembler}. Labels are resolved in a single pass: references to
+ * labels that are already placed are resolved immediately, forward references are recorded in a
+ * backpatch table and filled in once every label has an address.
+ *
+ * An operand is always the address within its bank, the extended machine adds the bank.
+ */
+public class LmcImageWriter {
+
+    public static final int MAILBOXES = 100;
+    // the bank number is a single digit of the DBK and CBK operands
+    public static final int MAX_BANKS = 10;
+
+    private final int banks;
+
+    public LmcImageWriter() {
+        this(1);
+    }
+
+    /**
+     * Writes for the extended machine, {@code new LmcMachine(banks)}, when the program doesn't fit in
+     * one bank. See {@link LmcBankLayout} for how it's spread over the banks. A program that fits is
+     * written exactly as for the classic machine, which the extended machine runs unchanged.
+     */
+    public LmcImageWriter(int banks) {
+        this.banks = checkBanks(banks);
+    }
+
+    static int checkBanks(int banks) {
+        if (banks < 1 || banks > MAX_BANKS) {
+            throw new IllegalArgumentException("Banks must be 1 to " + MAX_BANKS + ": " + banks);
+        }
+        return banks;
+    }
+
+    public LmcImage write(List<LmcInstruction> instructions) {
+        int size = MAILBOXES;
+        if (banks > 1 && instructions.size() > MAILBOXES) {
+            instructions = new LmcBankLayout(banks).layout(instructions);
+            size = banks * MAILBOXES;
+        }
+        if (instructions.size() > size) {
+            throw new IllegalStateException("Program needs " + instructions.size() + " mailboxes, only " + size + " available");
+        }
+
+        int[] mailboxes = new int[size];
+        Map<String, Integer> symbols = new HashMap<>();
+        List<Integer> fixupAddresses = new ArrayList<>();
+        List<String> fixupLabels = new ArrayList<>();
+
+        for (int address = 0; address < instructions.size(); address++) {
+            LmcInstruction instruction = instructions.get(address);
+            if (instruction.label() != null && symbols.put(instruction.label(), address) != null) {
+                throw new IllegalStateException("Duplicate label: " + instruction.label());
+            }
+
+            if (instruction.isData()) {
+                mailboxes[address] = dataValue(instruction);
+                continue;
+            }
+
+            mailboxes[address] = opcodeFor(instruction.mnemonic());
+            String operand = instruction.operand();
+            if (isBankSelect(instruction)) {
+                mailboxes[address] += Integer.parseInt(operand);
+            } else if (operand != null) {
+                Integer target = symbols.get(operand);
+                if (target != null) {
+                    mailboxes[address] += target % MAILBOXES;
+                } else {
+                    fixupAddresses.add(address);
+                    fixupLabels.add(operand);
+                }
+            }
+        }
+
+        for (int i = 0; i < fixupAddresses.size(); i++) {
+            Integer target = symbols.get(fixupLabels.get(i));
+            if (target == null) {
+                throw new IllegalStateException("Undefined label: " + fixupLabels.get(i));
+            }
+            mailboxes[fixupAddresses.get(i)] += target % MAILBOXES;
+        }
+
+        return new LmcImage(mailboxes, Collections.unmodifiableMap(symbols), List.copyOf(instructions));
+    }
+
+    private static int dataValue(LmcInstruction instruction) {
+        if (instruction.operand() == null) {
+            return 0;
+        }
+        int value = Integer.parseInt(instruction.operand());
+        if (value < LittleManComputer.MIN_VALUE || LittleManComputer.MAX_VALUE < value) {
+            throw new IllegalStateException("Value out of range: " + instruction);
+        }
+        return value;
+    }
+
+    private static boolean isBankSelect(LmcInstruction instruction) {
+        return instruction.mnemonic().equals("DBK") || instruction.mnemonic().equals("CBK");
+    }
+
+    static int opcodeFor(String mnemonic) {
+        return switch (mnemonic) {
+            case "HLT" -> 0;
+            case "ADD" -> 100;
+            case "SUB" -> 200;
+            case "STA" -> 300;
+            case "DBK" -> 400;
+            case "CBK" -> 410;
+            case "LDA" -> 500;
+            case "BRA" -> 600;
+            case "BRZ" -> 700;
+            case "BRP" -> 800;
+            case "INP" -> 901;
+            case "OUT" -> 902;
+            default -> throw new IllegalArgumentException("Unknown instruction: " + mnemonic);
+        };
+    }
+}
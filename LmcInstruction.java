@@ -0,0 +1,55 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.WhiletranStatement;
+
+import java.util.List;
+
+/**
+ * A single line of LMC assembly: an optional label, the mnemonic and an optional operand. For
+ * DAT the operand is the initial value, for everything else it is a label. The origin is the
+ * statement the instruction was generated for, when the code generator was asked to record it.
+ */
+public record LmcInstruction(String label, String mnemonic, String operand, WhiletranStatement origin) {
+
+    public LmcInstruction(String label, String mnemonic, String operand) {
+        this(label, mnemonic, operand, null);
+    }
+
+    public LmcInstruction withLabel(String newLabel) {
+        return new LmcInstruction(newLabel, mnemonic, operand, origin);
+    }
+
+    public LmcInstruction withOperand(String newOperand) {
+        return new LmcInstruction(label, mnemonic, newOperand, origin);
+    }
+
+    public boolean isData() {
+        return mnemonic.equals("DAT");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    private void appendTo(StringBuilder sb) {
+        if (label != null) {
+            sb.append(label).append(" ");
+        }
+        sb.append(mnemonic);
+        if (operand != null) {
+            sb.append(" ").append(operand);
+        }
+    }
+
+    public static String toListing(List<LmcInstruction> instructions) {
+        StringBuilder sb = new StringBuilder();
+        for (LmcInstruction instruction : instructions) {
+            instruction.appendTo(sb);
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
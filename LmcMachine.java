@@ -0,0 +1,597 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * A Little Man Computer that runs the images produced by {@link LmcImageWriter} with the same
+ * instruction semantics as {@code LittleManComputer}, but keeps its inputs and outputs in primitive
+ * arrays and counts the instructions it executes. Accumulator values are limited to
+ * {@code LittleManComputer.MIN_VALUE..MAX_VALUE}, leaving that range is an error.
+ *
+ * With {@link #enablePredecoding()} run() splits the code into basic blocks as it reaches them,
+ * decodes each block once into parallel opcode and operand arrays, and runs a whole block in one
+ * tight loop before going on to the next. An STA into a decoded mailbox re-decodes it and drops
+ * every block containing it, so self-modifying code behaves as it would one step at a time. Output,
+ * step and execution counts are the same in both modes.
+ *
+ * {@code new LmcMachine(banks)} is an extended machine with several banks of 100 mailboxes, laid
+ * out one after the other, for programs written by {@code new LmcImageWriter(banks)}. Code runs
+ * straight on from one bank into the next. LDA, STA, ADD and SUB use the mailbox in the selected data
+ * bank and a branch jumps within its own bank, with two more instructions to change that:
+ *
+ * - DBK b (40b) selects data bank b, which starts as bank 0
+ * - CBK b (41b) makes the next branch instruction, whether it jumps or not, target bank b instead
+ *
+ * With one bank, the default, neither exists and the machine is the classic one.
+ *
+ * INP and OUT can be connected to ports instead of the input and output arrays, so another thread
+ * can feed and drain a program while it runs. A plain IntSupplier or IntConsumer port is called
+ * directly and the machine waits if it blocks. A non-blocking {@link IntRingBuffer} port never
+ * waits: when it can't take the INP or OUT yet, run() stops in front of that instruction and
+ * {@link #isWaitingForIO()} says so, and the next run() tries it again.
+ *
+ * {@link #snapshot()} captures everything but the ports: memory, registers, counts, pending input,
+ * output so far and any decoded blocks. Snapshot.fork() makes any number of independent machines
+ * that carry on from there, and restore() puts a machine back. Together with
+ * {@link #setWaitForInput(boolean)} a program can run up to its first INP once, and each set of
+ * inputs start from there.
+ *
+ * With {@link #setMetrics(WhiletranMetrics)} every run() is timed and its steps counted.
+ */
+public class LmcMachine {
+
+    final int banks;
+    int[] memory;
+    int accumulator = 0;
+    int programCounter = 0;
+    boolean halted = false;
+    long steps = 0;
+    long[] executionCounts;
+    // the first mailbox of the selected data bank, and the bank CBK picked for the next branch or -1
+    int dataBase = 0;
+    int farBank = -1;
+
+    // predecoding state, null unless enabled. blockEnds[a] is the last mailbox of the block starting
+    // at a, or -1 if that block hasn't been decoded yet
+    int[] opcodes;
+    int[] operands;
+    int[] blockEnds;
+    boolean[] decoded;
+
+    int[] inputs = new int[8];
+    int inputHead = 0;
+    int inputTail = 0;
+
+    int[] outputs = new int[8];
+    int outputCount = 0;
+
+    // ports used instead of the arrays above when set, at most one of each pair
+    IntSupplier inputPort;
+    IntRingBuffer inputBuffer;
+    IntConsumer outputPort;
+    IntRingBuffer outputBuffer;
+    boolean waitForInput = false;
+    boolean waiting = false;
+    WhiletranMetrics metrics;
+
+    public LmcMachine() {
+        this(1);
+    }
+
+    public LmcMachine(int banks) {
+        this.banks = LmcImageWriter.checkBanks(banks);
+        this.memory = new int[banks * LmcImageWriter.MAILBOXES];
+    }
+
+    private LmcMachine(LmcMachine from) {
+        this(from.banks);
+        copyState(from);
+    }
+
+    /**
+     * A copy of a machine's state, see the class comment. Nothing a machine does afterwards changes
+     * it, so it can be forked or restored from any number of threads.
+     */
+    public static final class Snapshot {
+        private final LmcMachine state;
+
+        private Snapshot(LmcMachine state) {
+            this.state = state;
+        }
+
+        // a new machine in the snapshot's state, with no ports set
+        public LmcMachine fork() {
+            return new LmcMachine(state);
+        }
+
+        public long getSteps() {
+            return state.steps;
+        }
+
+        public int getProgramCounter() {
+            return state.programCounter;
+        }
+
+        public boolean isHalted() {
+            return state.halted;
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(new LmcMachine(this));
+    }
+
+    // puts this machine back in the snapshot's state, its ports stay as they are
+    public void restore(Snapshot snapshot) {
+        if (snapshot.state.banks != banks) {
+            throw new IllegalArgumentException("Snapshot has " + snapshot.state.banks + " banks, this machine " + banks);
+        }
+        copyState(snapshot.state);
+    }
+
+    private void copyState(LmcMachine from) {
+        System.arraycopy(from.memory, 0, memory, 0, memory.length);
+        accumulator = from.accumulator;
+        programCounter = from.programCounter;
+        halted = from.halted;
+        steps = from.steps;
+        dataBase = from.dataBase;
+        farBank = from.farBank;
+        waiting = from.waiting;
+        executionCounts = from.executionCounts == null ? null : from.executionCounts.clone();
+        if (from.opcodes == null) {
+            opcodes = operands = blockEnds = null;
+            decoded = null;
+        } else {
+            opcodes = from.opcodes.clone();
+            operands = from.operands.clone();
+            blockEnds = from.blockEnds.clone();
+            decoded = from.decoded.clone();
+        }
+        inputs = Arrays.copyOfRange(from.inputs, from.inputHead, from.inputTail);
+        inputHead = 0;
+        inputTail = inputs.length;
+        outputs = Arrays.copyOf(from.outputs, Math.max(8, from.outputCount));
+        outputCount = from.outputCount;
+    }
+
+    public void load(int[] image) {
+        if (image.length > memory.length) {
+            throw new IllegalArgumentException("Image has " + image.length + " mailboxes, only " + memory.length + " available");
+        }
+        System.arraycopy(image, 0, memory, 0, image.length);
+        if (opcodes != null) {
+            resetDecoding();
+        }
+    }
+
+    public void pushInputs(int... values) {
+        if (inputTail + values.length > inputs.length) {
+            inputs = Arrays.copyOf(inputs, Math.max(inputs.length * 2, inputTail + values.length));
+        }
+        System.arraycopy(values, 0, inputs, inputTail, values.length);
+        inputTail += values.length;
+    }
+
+    public void run() {
+        run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs until the machine halts, has executed maxSteps more instructions or is waiting on a
+     * non-blocking port.
+     *
+     * @return true if the machine halted
+     */
+    public boolean run(long maxSteps) {
+        long limit = steps + maxSteps < 0 ? Long.MAX_VALUE : steps + maxSteps;
+        waiting = false;
+        WhiletranMetrics metrics = this.metrics;
+        LmcRunEvent event = new LmcRunEvent();
+        event.begin();
+        long before = steps;
+        long start = metrics == null ? 0 : System.nanoTime();
+        try {
+            return opcodes != null ? runBlocks(limit) : runSteps(limit);
+        } finally {
+            if (metrics != null) {
+                WhiletranMetrics.record(metrics, WhiletranMetrics.Phase.RUN, start);
+                metrics.addRun(steps - before);
+            }
+            if (event.shouldCommit()) {
+                event.steps = steps - before;
+                event.halted = halted;
+                event.predecoded = opcodes != null;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean runSteps(long limit) {
+        while (!halted && !waiting && steps < limit) {
+            step();
+        }
+        return halted;
+    }
+
+    // null, the default, records nothing. Not part of a snapshot
+    public void setMetrics(WhiletranMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void step() {
+        if (halted) {
+            return;
+        }
+        if (programCounter < 0 || programCounter >= memory.length) {
+            throw new IllegalStateException("Program counter out of range: " + programCounter);
+        }
+        waiting = wouldBlock(memory[programCounter]);
+        if (waiting) {
+            return;
+        }
+        if (executionCounts != null) {
+            executionCounts[programCounter]++;
+        }
+        int at = programCounter++;
+        int instruction = memory[at];
+        int opcode = instruction / 100;
+        int address = instruction % 100;
+        steps++;
+        switch (opcode) {
+            case 0 -> halted = true;
+            case 1 -> accumulator = checkRange(accumulator + memory[dataBase + address]);
+            case 2 -> accumulator = checkRange(accumulator - memory[dataBase + address]);
+            case 3 -> store(dataBase + address, accumulator);
+            case 4 -> {
+                int bank = selectedBank(instruction, at);
+                if (address < 10) {
+                    dataBase = bank * LmcImageWriter.MAILBOXES;
+                } else {
+                    farBank = bank;
+                }
+            }
+            case 5 -> accumulator = memory[dataBase + address];
+            case 6 -> programCounter = branchTarget(at, address);
+            case 7 -> {
+                int target = branchTarget(at, address);
+                if (accumulator == 0) {
+                    programCounter = target;
+                }
+            }
+            case 8 -> {
+                int target = branchTarget(at, address);
+                if (accumulator >= 0) {
+                    programCounter = target;
+                }
+            }
+            case 9 -> {
+                if (address == 1) {
+                    accumulator = readInput();
+                } else if (address == 2) {
+                    writeOutput(accumulator);
+                } else {
+                    throw new IllegalStateException("Bad instruction " + instruction + " at " + at);
+                }
+            }
+            default -> throw new IllegalStateException("Bad instruction " + instruction + " at " + at);
+        }
+    }
+
+    // the bank a DBK or CBK selects, anything else starting with 4 is as bad as it is on the classic machine
+    private int selectedBank(int instruction, int at) {
+        int operand = instruction % 100;
+        if (banks == 1 || operand >= 20 || operand % 10 >= banks) {
+            throw new IllegalStateException("Bad instruction " + instruction + " at " + at);
+        }
+        return operand % 10;
+    }
+
+    // uses up a pending CBK
+    private int branchTarget(int at, int address) {
+        int bank = farBank < 0 ? at / LmcImageWriter.MAILBOXES : farBank;
+        farBank = -1;
+        return bank * LmcImageWriter.MAILBOXES + address;
+    }
+
+    private void store(int address, int value) {
+        memory[address] = value;
+        if (decoded != null && decoded[address]) {
+            invalidate(address);
+        }
+    }
+
+    // decode and run whole blocks, see the class comment
+    public void enablePredecoding() {
+        if (opcodes == null) {
+            opcodes = new int[memory.length];
+            operands = new int[memory.length];
+            blockEnds = new int[memory.length];
+            decoded = new boolean[memory.length];
+            resetDecoding();
+        }
+    }
+
+    private void resetDecoding() {
+        Arrays.fill(blockEnds, -1);
+        Arrays.fill(decoded, false);
+    }
+
+    /*
+     * The same instructions as step(), with the accumulator, step count and program counter kept in
+     * locals and one block chaining straight into the next. Only the last instruction of a block can
+     * be a branch. An STA into decoded code ends the block early, so the rest runs from a fresh decode.
+     */
+    private boolean runBlocks(long limit) {
+        int[] memory = this.memory;
+        int[] opcodes = this.opcodes;
+        int[] operands = this.operands;
+        long[] executionCounts = this.executionCounts;
+        int acc = accumulator;
+        int dataBase = this.dataBase;
+        int far = farBank;
+        long count = steps;
+        int pc = programCounter;
+        int end = pc - 1;
+        int i = end;
+        try {
+            while (!halted && !waiting && count < limit) {
+                // so a failure here leaves the program counter and steps where they are, like step()
+                i = end = pc - 1;
+                if (pc < 0 || pc >= memory.length) {
+                    throw new IllegalStateException("Program counter out of range: " + pc);
+                }
+                end = blockEnds[pc];
+                if (end < 0) {
+                    end = decodeBlock(pc);
+                }
+                // a block never runs past the step limit
+                if (end - pc >= limit - count) {
+                    end = pc + (int) (limit - count) - 1;
+                }
+                int next = end + 1;
+                // counted up front, a block that stops early takes back the rest
+                count += end - pc + 1;
+                block:
+                for (i = pc; i <= end; i++) {
+                    if (executionCounts != null) {
+                        executionCounts[i]++;
+                    }
+                    int address = operands[i];
+                    switch (opcodes[i]) {
+                        case 0 -> halted = true;
+                        case 1 -> acc = checkRange(acc + memory[dataBase + address]);
+                        case 2 -> acc = checkRange(acc - memory[dataBase + address]);
+                        case 3 -> {
+                            memory[dataBase + address] = acc;
+                            if (decoded[dataBase + address]) {
+                                invalidate(dataBase + address);
+                                count -= end - i;
+                                next = i + 1;
+                                break block;
+                            }
+                        }
+                        case 4 -> {
+                            int bank = selectedBank(memory[i], i);
+                            if (address < 10) {
+                                dataBase = bank * LmcImageWriter.MAILBOXES;
+                            } else {
+                                far = bank;
+                            }
+                        }
+                        case 5 -> acc = memory[dataBase + address];
+                        // branch operands are decoded to addresses in the branch's own bank
+                        case 6 -> {
+                            next = far < 0 ? address : far * LmcImageWriter.MAILBOXES + address % LmcImageWriter.MAILBOXES;
+                            far = -1;
+                        }
+                        case 7 -> {
+                            if (acc == 0) {
+                                next = far < 0 ? address : far * LmcImageWriter.MAILBOXES + address % LmcImageWriter.MAILBOXES;
+                            }
+                            far = -1;
+                        }
+                        case 8 -> {
+                            if (acc >= 0) {
+                                next = far < 0 ? address : far * LmcImageWriter.MAILBOXES + address % LmcImageWriter.MAILBOXES;
+                            }
+                            far = -1;
+                        }
+                        case 9 -> {
+                            if (wouldBlock(memory[i])) {
+                                // not run after all, the machine waits in front of it
+                                if (executionCounts != null) {
+                                    executionCounts[i]--;
+                                }
+                                waiting = true;
+                                count -= end - i + 1;
+                                next = i;
+                                break block;
+                            }
+                            if (address == 1) {
+                                acc = readInput();
+                            } else if (address == 2) {
+                                writeOutput(acc);
+                            } else {
+                                throw new IllegalStateException("Bad instruction " + memory[i] + " at " + i);
+                            }
+                        }
+                        default -> throw new IllegalStateException("Bad instruction " + memory[i] + " at " + i);
+                    }
+                }
+                pc = next;
+            }
+        } catch (RuntimeException e) {
+            // leave the machine as step() would have, i is the instruction that failed
+            accumulator = acc;
+            this.dataBase = dataBase;
+            farBank = far;
+            steps = count - (end - i);
+            programCounter = i + 1;
+            throw e;
+        }
+        accumulator = acc;
+        this.dataBase = dataBase;
+        farBank = far;
+        steps = count;
+        programCounter = pc;
+        return halted;
+    }
+
+    // a block runs up to and including the first HLT or branch
+    private int decodeBlock(int start) {
+        int address = start;
+        while (true) {
+            decode(address);
+            int opcode = opcodes[address];
+            if (opcode == 0 || opcode == 6 || opcode == 7 || opcode == 8 || address == memory.length - 1) {
+                break;
+            }
+            address++;
+        }
+        blockEnds[start] = address;
+        return address;
+    }
+
+    private void decode(int address) {
+        int opcode = memory[address] / 100;
+        opcodes[address] = opcode;
+        operands[address] = memory[address] % 100;
+        if (opcode == 6 || opcode == 7 || opcode == 8) {
+            operands[address] += address - address % LmcImageWriter.MAILBOXES;
+        }
+        decoded[address] = true;
+    }
+
+    // re-decode the mailbox and drop every block that contains it, blocks only run forwards so
+    // those all start at or before it
+    private void invalidate(int address) {
+        decode(address);
+        for (int start = 0; start <= address; start++) {
+            if (blockEnds[start] >= address) {
+                blockEnds[start] = -1;
+            }
+        }
+    }
+
+    // counts how many times each mailbox is executed from here on, see getExecutionCounts()
+    public void enableProfiling() {
+        if (executionCounts == null) {
+            executionCounts = new long[memory.length];
+        }
+    }
+
+    public long[] getExecutionCounts() {
+        return executionCounts;
+    }
+
+    public static int checkRange(int value) {
+        if (value < LittleManComputer.MIN_VALUE || LittleManComputer.MAX_VALUE < value) {
+            throw new IllegalStateException("Value out of range: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * INP calls input instead of taking the values given to pushInputs, e.g. with
+     * {@link IntRingBuffer#blockingReader()} to wait for a producer thread. null goes back to those.
+     */
+    public void setInput(IntSupplier input) {
+        inputPort = input;
+        inputBuffer = null;
+    }
+
+    /**
+     * OUT calls output instead of adding to getOutput(), e.g. with
+     * {@link IntRingBuffer#blockingWriter()} to wait for a consumer thread. null goes back to that.
+     */
+    public void setOutput(IntConsumer output) {
+        outputPort = output;
+        outputBuffer = null;
+    }
+
+    // INP takes from input, waiting while it's empty as in the class comment. Once it's closed and
+    // empty an INP fails like one with no input
+    public void setNonBlockingInput(IntRingBuffer input) {
+        inputBuffer = input;
+        inputPort = null;
+    }
+
+    // OUT adds to output, waiting while it's full as in the class comment
+    public void setNonBlockingOutput(IntRingBuffer output) {
+        outputBuffer = output;
+        outputPort = null;
+    }
+
+    // with no input port, an INP with no pushed input left waits as a non-blocking port would instead of failing
+    public void setWaitForInput(boolean waitForInput) {
+        this.waitForInput = waitForInput;
+    }
+
+    // true if the last run() or step() stopped in front of an INP or OUT its non-blocking port can't take yet
+    public boolean isWaitingForIO() {
+        return waiting;
+    }
+
+    private boolean wouldBlock(int instruction) {
+        if (instruction == 901) {
+            if (inputBuffer != null) {
+                return inputBuffer.isEmpty() && !inputBuffer.isClosed();
+            }
+            return waitForInput && inputPort == null && inputHead == inputTail;
+        }
+        return instruction == 902 && outputBuffer != null && outputBuffer.isFull();
+    }
+
+    private int readInput() {
+        if (inputBuffer != null) {
+            return inputBuffer.poll();
+        }
+        if (inputPort != null) {
+            return inputPort.getAsInt();
+        }
+        if (inputHead == inputTail) {
+            throw new IllegalStateException("No input available");
+        }
+        return inputs[inputHead++];
+    }
+
+    private void writeOutput(int value) {
+        if (outputBuffer != null) {
+            outputBuffer.offer(value);
+            return;
+        }
+        if (outputPort != null) {
+            outputPort.accept(value);
+            return;
+        }
+        if (outputCount == outputs.length) {
+            outputs = Arrays.copyOf(outputs, outputs.length * 2);
+        }
+        outputs[outputCount++] = value;
+    }
+
+    public int[] getOutput() {
+        return Arrays.copyOf(outputs, outputCount);
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public int getAccumulator() {
+        return accumulator;
+    }
+
+    public int getProgramCounter() {
+        return programCounter;
+    }
+}
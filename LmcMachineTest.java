@@ -0,0 +1,433 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LmcMachineTest {
+
+    static final String DIVISION = """
+            A = READ
+            B = READ
+            DIV = -1
+            DO
+                DIV = DIV + 1
+                A = A - B
+            WHILE A
+            ENDDO
+            WRITE DIV""";
+
+    static final String FIB = """
+            N = READ
+            F1 = 0
+            F2 = 1
+            DO
+              TMP = F1 + F2
+              F2 = F1
+              F1 = TMP
+              N = N - 1
+            WHILE N - 1
+            ENDDO
+            WRITE F1""";
+
+    // echoes each input plus one, up to and including the first negative one
+    static final String ECHO = """
+            DO
+              X = READ
+              WRITE X + 1
+            WHILE X
+            ENDDO""";
+
+    @Test
+    public void testMatchesLittleManComputer() {
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        for (int a = 0; a < 60; a += 7) {
+            assertSameOutput(compiler.compile(DIVISION).mailboxes(), a, 10);
+        }
+        for (int n = 1; n < 12; n++) {
+            assertSameOutput(compiler.compile(FIB).mailboxes(), n);
+        }
+    }
+
+    @Test
+    public void testStepsAreCounted() {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCompiler().compile("WRITE 1").mailboxes());
+        machine.run();
+        assertTrue(machine.isHalted());
+        assertEquals(3, machine.getSteps()); // LDA, OUT, HLT
+        assertArrayEquals(new int[]{1}, machine.getOutput());
+    }
+
+    @Test
+    public void testStepBudget() {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCompiler().compile("DO X = X + 1 WHILE 1 ENDDO").mailboxes());
+        assertFalse(machine.run(1000));
+        assertEquals(1000, machine.getSteps());
+    }
+
+    @Test
+    public void testOutOfRange() {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCompiler().compile("X = READ WRITE X + 999").mailboxes());
+        machine.pushInputs(1);
+        assertThrows(IllegalStateException.class, machine::run);
+    }
+
+    @Test
+    public void testMissingInput() {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCompiler().compile("X = READ").mailboxes());
+        assertThrows(IllegalStateException.class, machine::run);
+    }
+
+    @Test
+    public void testPredecodedMatchesStepping() {
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        int[] division = compiler.compile(DIVISION).mailboxes();
+        for (int a = 0; a < 200; a += 13) {
+            assertSameState(division, Long.MAX_VALUE, a, 7);
+        }
+        int[] fib = compiler.compile(FIB).mailboxes();
+        for (int n = 1; n < 15; n++) {
+            assertSameState(fib, Long.MAX_VALUE, n);
+        }
+        // stopping partway through a block
+        for (long maxSteps = 0; maxSteps < 40; maxSteps++) {
+            assertSameState(division, maxSteps, 50, 7);
+        }
+    }
+
+    @Test
+    public void testPredecodedFailuresMatchStepping() {
+        int[] image = new WhiletranCompiler().compile("X = READ WRITE X Y = READ WRITE X + 999").mailboxes();
+        LmcMachine stepped = new LmcMachine();
+        stepped.load(image);
+        stepped.pushInputs(1);
+        LmcMachine predecoded = new LmcMachine();
+        predecoded.enablePredecoding();
+        predecoded.load(image);
+        predecoded.pushInputs(1);
+
+        assertThrows(IllegalStateException.class, stepped::run);
+        assertThrows(IllegalStateException.class, predecoded::run);
+        assertEquals(stepped.getSteps(), predecoded.getSteps());
+        assertEquals(stepped.getProgramCounter(), predecoded.getProgramCounter());
+        assertArrayEquals(stepped.getOutput(), predecoded.getOutput());
+    }
+
+    @Test
+    public void testSelfModifyingCodeAhead() {
+        // overwrites the HLT at 3 with the OUT at 6 before reaching it, in the same block
+        int[] image = {506, 303, 507, 0, 0, 0, 902, 42};
+        assertSameState(image, Long.MAX_VALUE);
+        LmcMachine machine = new LmcMachine();
+        machine.enablePredecoding();
+        machine.load(image);
+        machine.run();
+        assertArrayEquals(new int[]{42}, machine.getOutput());
+    }
+
+    @Test
+    public void testSelfModifyingCodeInLoop() {
+        // bumps the address of the STA at 1 each time round, filling mailboxes 30, 31 and 32
+        int[] image = new int[40];
+        int[] code = {520, 330, 501, 121, 301, 522, 221, 322, 800, 0};
+        System.arraycopy(code, 0, image, 0, code.length);
+        image[20] = 7;
+        image[21] = 1;
+        image[22] = 2;
+        LmcMachine machine = assertSameState(image, Long.MAX_VALUE);
+        assertEquals(7, machine.memory[30]);
+        assertEquals(7, machine.memory[31]);
+        assertEquals(7, machine.memory[32]);
+        assertEquals(0, machine.memory[33]);
+    }
+
+    @Test
+    public void testClassicMachineHasNoBankSelect() {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new int[]{401, 0});
+        assertThrows(IllegalStateException.class, machine::run);
+        assertThrows(IllegalArgumentException.class, () -> new LmcMachine(11));
+    }
+
+    @Test
+    public void testBankSelect() {
+        int[] image = new int[300];
+        int[] bank0 = {
+                401, // DBK 1
+                505, // LDA 5, from bank 1
+                902, // OUT
+                412, // CBK 2
+                710, // BRZ 10, not taken but still uses up the CBK
+                608, // BRA 8, stays in bank 0
+                0,
+                0,
+                412, // CBK 2
+                600, // BRA 0, to 200
+        };
+        System.arraycopy(bank0, 0, image, 0, bank0.length);
+        image[105] = 42;
+        image[200] = 105; // ADD 5, still from bank 1
+        image[201] = 902; // OUT
+        image[202] = 604; // BRA 4, to 204
+        LmcMachine machine = assertSameState(3, image, Long.MAX_VALUE);
+        assertArrayEquals(new int[]{42, 84}, machine.getOutput());
+        assertEquals(205, machine.getProgramCounter());
+        for (long maxSteps = 0; maxSteps < 14; maxSteps++) {
+            assertSameState(3, image, maxSteps);
+        }
+    }
+
+    @Test
+    public void testBankedProgram() {
+        // 50 variables live at once, which doesn't fit in one bank
+        StringBuilder src = new StringBuilder("C = READ\nDO\n  V0 = C\n");
+        for (int i = 1; i < 50; i++) {
+            src.append("  V").append(i).append(" = V").append(i - 1).append(" + 1\n");
+        }
+        for (int i = 0; i < 50; i++) {
+            src.append("  WRITE V").append(i).append("\n");
+        }
+        src.append("  C = C - 1\nWHILE C - 1\nENDDO\n");
+        assertThrows(IllegalStateException.class, () -> new WhiletranCompiler().compile(src.toString()));
+
+        LmcImage image = new WhiletranCompiler(16, 3).compile(src.toString());
+        assertEquals(300, image.mailboxes().length);
+        // the data all fits in the last bank and the loop's jump back is the only one between banks
+        String listing = image.listing();
+        assertEquals(1, listing.split("DBK").length - 1, listing);
+        assertEquals(1, listing.split("CBK").length - 1, listing);
+
+        int[] expected = new WhiletranInterpreter().compile(new WhiletranParser().parse(src.toString())).run(3);
+        LmcMachine machine = assertSameState(3, image.mailboxes(), Long.MAX_VALUE, 3);
+        assertArrayEquals(expected, machine.getOutput());
+    }
+
+    @Test
+    public void testProgramThatFitsIsTheSameBanked() {
+        assertArrayEquals(new WhiletranCompiler().compile(DIVISION).mailboxes(),
+                new WhiletranCompiler(16, 3).compile(DIVISION).mailboxes());
+    }
+
+    @Test
+    public void testNonBlockingPortsWaitForIO() {
+        int[] image = new WhiletranCompiler().compile(ECHO).mailboxes();
+        int[] inputs = {5, 0, 7, 998, 3, -1};
+        LmcMachine expected = new LmcMachine();
+        expected.enableProfiling();
+        expected.load(image);
+        expected.pushInputs(inputs);
+        expected.run();
+
+        for (boolean predecoding : new boolean[]{false, true}) {
+            LmcMachine machine = new LmcMachine();
+            machine.enableProfiling();
+            if (predecoding) {
+                machine.enablePredecoding();
+            }
+            machine.load(image);
+            IntRingBuffer in = new IntRingBuffer(2);
+            IntRingBuffer out = new IntRingBuffer(1);
+            machine.setNonBlockingInput(in);
+            machine.setNonBlockingOutput(out);
+
+            assertFalse(machine.run(Long.MAX_VALUE));
+            assertTrue(machine.isWaitingForIO());
+            assertEquals(0, machine.getSteps());
+
+            int fed = 0;
+            int[] output = new int[inputs.length];
+            int count = 0;
+            while (!machine.run(Long.MAX_VALUE)) {
+                assertTrue(machine.isWaitingForIO());
+                fed += in.offer(inputs, fed, inputs.length - fed);
+                count += out.drainTo(output, count, output.length - count);
+            }
+            count += out.drainTo(output, count, output.length - count);
+            assertFalse(machine.isWaitingForIO());
+            assertArrayEquals(expected.getOutput(), Arrays.copyOf(output, count));
+            assertEquals(expected.getSteps(), machine.getSteps());
+            assertArrayEquals(expected.getExecutionCounts(), machine.getExecutionCounts());
+        }
+    }
+
+    @Test
+    public void testClosedInputFails() {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCompiler().compile(ECHO).mailboxes());
+        IntRingBuffer in = new IntRingBuffer(4);
+        machine.setNonBlockingInput(in);
+        in.offer(1);
+        in.close();
+        assertThrows(IllegalStateException.class, machine::run);
+        assertArrayEquals(new int[]{2}, machine.getOutput());
+    }
+
+    @Test
+    public void testBlockingPortsWithOtherThreads() throws InterruptedException {
+        int count = 20_000;
+        IntRingBuffer in = new IntRingBuffer(16);
+        IntRingBuffer out = new IntRingBuffer(16);
+        int[] output = new int[count + 1];
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    in.put(i % 900);
+                }
+                in.put(-1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i <= count; i++) {
+                    output[i] = out.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        consumer.start();
+
+        LmcMachine machine = new LmcMachine();
+        machine.enablePredecoding();
+        machine.load(new WhiletranCompiler().compile(ECHO).mailboxes());
+        machine.setInput(in.blockingReader());
+        machine.setOutput(out.blockingWriter());
+        assertTrue(machine.run(Long.MAX_VALUE));
+        producer.join();
+        consumer.join();
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 900 + 1, output[i]);
+        }
+        assertEquals(0, output[count]);
+        assertEquals(0, machine.getOutput().length);
+    }
+
+    @Test
+    public void testForkAfterInputIndependentPrefix() {
+        int[] image = new WhiletranCompiler().compile("""
+                S = 0
+                I = 30
+                DO
+                  S = S + I
+                  I = I - 1
+                WHILE I - 1
+                ENDDO
+                X = READ
+                WRITE S - X""").mailboxes();
+        for (boolean predecoding : new boolean[]{false, true}) {
+            LmcMachine prefix = new LmcMachine();
+            prefix.enableProfiling();
+            if (predecoding) {
+                prefix.enablePredecoding();
+            }
+            prefix.load(image);
+            prefix.setWaitForInput(true);
+            assertFalse(prefix.run(Long.MAX_VALUE));
+            assertTrue(prefix.isWaitingForIO());
+            LmcMachine.Snapshot snapshot = prefix.snapshot();
+
+            for (int x = 0; x < 400; x += 37) {
+                LmcMachine expected = new LmcMachine();
+                expected.enableProfiling();
+                expected.load(image);
+                expected.pushInputs(x);
+                expected.run();
+
+                LmcMachine fork = snapshot.fork();
+                fork.pushInputs(x);
+                assertTrue(fork.run(Long.MAX_VALUE));
+                assertArrayEquals(expected.getOutput(), fork.getOutput());
+                assertEquals(expected.getSteps(), fork.getSteps());
+                assertArrayEquals(expected.memory, fork.memory);
+                assertArrayEquals(expected.getExecutionCounts(), fork.getExecutionCounts());
+            }
+            assertFalse(snapshot.isHalted());
+        }
+    }
+
+    @Test
+    public void testRestore() {
+        int[] image = new WhiletranCompiler().compile(DIVISION).mailboxes();
+        LmcMachine machine = new LmcMachine();
+        machine.enablePredecoding();
+        machine.load(image);
+        machine.pushInputs(100, 7);
+        machine.run(20);
+        LmcMachine.Snapshot snapshot = machine.snapshot();
+        assertEquals(20, snapshot.getSteps());
+
+        machine.run();
+        int[] output = machine.getOutput();
+        long steps = machine.getSteps();
+
+        machine.restore(snapshot);
+        assertEquals(20, machine.getSteps());
+        assertEquals(0, machine.getOutput().length);
+        machine.run();
+        assertArrayEquals(output, machine.getOutput());
+        assertEquals(steps, machine.getSteps());
+        assertThrows(IllegalArgumentException.class, () -> new LmcMachine(2).restore(snapshot));
+    }
+
+    private static LmcMachine assertSameState(int[] image, long maxSteps, int... inputs) {
+        return assertSameState(1, image, maxSteps, inputs);
+    }
+
+    // runs the image both ways with profiling on and checks they end up in the same state
+    private static LmcMachine assertSameState(int banks, int[] image, long maxSteps, int... inputs) {
+        LmcMachine stepped = new LmcMachine(banks);
+        stepped.enableProfiling();
+        stepped.load(image);
+        stepped.pushInputs(inputs);
+        stepped.run(maxSteps);
+
+        LmcMachine predecoded = new LmcMachine(banks);
+        predecoded.enableProfiling();
+        predecoded.enablePredecoding();
+        predecoded.load(image);
+        predecoded.pushInputs(inputs);
+        predecoded.run(maxSteps);
+
+        assertEquals(stepped.isHalted(), predecoded.isHalted());
+        assertEquals(stepped.getSteps(), predecoded.getSteps());
+        assertEquals(stepped.getProgramCounter(), predecoded.getProgramCounter());
+        assertEquals(stepped.getAccumulator(), predecoded.getAccumulator());
+        assertArrayEquals(stepped.getOutput(), predecoded.getOutput());
+        assertArrayEquals(stepped.memory, predecoded.memory);
+        assertArrayEquals(stepped.getExecutionCounts(), predecoded.getExecutionCounts());
+        return predecoded;
+    }
+
+    private static void assertSameOutput(int[] image, Integer... inputs) {
+        LittleManComputer computer = new LittleManComputer();
+        computer.load(image);
+        computer.pushInputs(inputs);
+        computer.run();
+
+        LmcMachine machine = new LmcMachine();
+        machine.load(image);
+        for (Integer input : inputs) {
+            machine.pushInputs(input);
+        }
+        machine.run();
+
+        LinkedList<Integer> expected = computer.getOutput();
+        int[] actual = machine.getOutput();
+        assertEquals(expected.size(), actual.length);
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals((int) expected.get(i), actual[i]);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package csci366.lmc.whiletran;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// one LmcMachine.run call, see WhiletranMetrics
+@Name("csci366.lmc.whiletran.Run")
+@Label("LMC Run")
+@Category("Whiletran")
+@Description("Running a Little Man Computer image on an LmcMachine")
+final class LmcRunEvent extends Event {
+
+    @Label("Steps")
+    long steps;
+
+    @Label("Halted")
+    boolean halted;
+
+    @Label("Predecoded")
+    boolean predecoded;
+}
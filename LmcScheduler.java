@@ -0,0 +1,205 @@
+package csci366.lmc.whiletran;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs many {@link LmcMachine}s on a fixed number of worker threads, a quantum of steps at a time.
+ * A worker takes the machine at the head of the queue, runs it for one quantum and, unless it's
+ * finished, puts it back at the tail, so every machine gets its turn however long the others run.
+ * A job finishes when its machine halts or fails, has used up its step budget, is still running at
+ * its deadline, or is cancelled. The deadline and cancellation are checked between quanta.
+ *
+ * A machine waiting on a non-blocking port just goes back in the queue. Machines with blocking
+ * ports hold a worker while they wait, so they shouldn't be run here.
+ */
+public class LmcScheduler implements AutoCloseable {
+
+    public enum Status {
+        RUNNING, HALTED, FAILED, OUT_OF_STEPS, TIMED_OUT, CANCELLED
+    }
+
+    public final class Job {
+        private final LmcMachine machine;
+        private final long stepLimit;
+        private final long deadline;
+        private final CompletableFuture<Status> completion = new CompletableFuture<>();
+        private volatile boolean cancelled = false;
+        private volatile Status status = Status.RUNNING;
+        private volatile RuntimeException failure;
+
+        private Job(LmcMachine machine, long maxSteps, long deadline) {
+            this.machine = machine;
+            this.stepLimit = machine.getSteps() + maxSteps < 0 ? Long.MAX_VALUE : machine.getSteps() + maxSteps;
+            this.deadline = deadline;
+        }
+
+        // only look at the machine once the job is finished, a worker may be running it until then
+        public LmcMachine machine() {
+            return machine;
+        }
+
+        public Status status() {
+            return status;
+        }
+
+        // what the machine threw when the status is FAILED
+        public RuntimeException failure() {
+            return failure;
+        }
+
+        public CompletableFuture<Status> completion() {
+            return completion;
+        }
+
+        // stops the job before its next quantum
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void finish(Status status) {
+            this.status = status;
+            pending.decrement();
+            completion.complete(status);
+        }
+    }
+
+    private final long quantum;
+    private final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final LongAdder totalSteps = new LongAdder();
+    private final LongAdder pending = new LongAdder();
+    private final long startTime = System.nanoTime();
+    private volatile boolean shutDown = false;
+
+    /**
+     * @param quantum the most steps a machine runs before the next one gets a turn
+     */
+    public LmcScheduler(int workerCount, long quantum) {
+        if (workerCount < 1 || quantum < 1) {
+            throw new IllegalArgumentException("Need at least one worker and a quantum of at least one step");
+        }
+        this.quantum = quantum;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "lmc-scheduler-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public Job submit(LmcMachine machine, long maxSteps) {
+        return submit(machine, maxSteps, null);
+    }
+
+    /**
+     * @param maxSteps the most instructions the machine may execute from here on
+     * @param timeout  how long the job may take in total, null for no limit
+     */
+    public Job submit(LmcMachine machine, long maxSteps, Duration timeout) {
+        if (shutDown) {
+            throw new IllegalStateException("Scheduler is shut down");
+        }
+        long deadline = timeout == null ? Long.MAX_VALUE : System.nanoTime() + timeout.toNanos();
+        Job job = new Job(machine, maxSteps, deadline);
+        pending.increment();
+        queue.add(job);
+        return job;
+    }
+
+    // jobs waiting for their next quantum
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // jobs submitted but not yet finished
+    public long getPendingJobs() {
+        return pending.sum();
+    }
+
+    public long getTotalSteps() {
+        return totalSteps.sum();
+    }
+
+    // steps run by every worker together per second since the scheduler started
+    public double getStepsPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed == 0 ? 0 : getTotalSteps() * 1e9 / elapsed;
+    }
+
+    // stops the workers, jobs that haven't finished are cancelled
+    @Override
+    public void close() {
+        shutDown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Job job;
+        while ((job = queue.poll()) != null) {
+            job.finish(Status.CANCELLED);
+        }
+    }
+
+    private void work() {
+        while (!shutDown) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (runQuantum(job)) {
+                queue.add(job);
+            }
+        }
+    }
+
+    // returns true if the job needs another quantum
+    private boolean runQuantum(Job job) {
+        if (job.cancelled) {
+            job.finish(Status.CANCELLED);
+            return false;
+        }
+        LmcMachine machine = job.machine;
+        long before = machine.getSteps();
+        boolean halted;
+        try {
+            halted = machine.run(Math.min(quantum, job.stepLimit - before));
+        } catch (RuntimeException e) {
+            totalSteps.add(machine.getSteps() - before);
+            job.failure = e;
+            job.finish(Status.FAILED);
+            return false;
+        }
+        long ran = machine.getSteps() - before;
+        totalSteps.add(ran);
+        if (halted) {
+            job.finish(Status.HALTED);
+        } else if (machine.getSteps() >= job.stepLimit) {
+            job.finish(Status.OUT_OF_STEPS);
+        } else if (job.deadline != Long.MAX_VALUE && System.nanoTime() - job.deadline >= 0) {
+            job.finish(Status.TIMED_OUT);
+        } else if (job.cancelled) {
+            job.finish(Status.CANCELLED);
+        } else {
+            if (ran == 0) {
+                // waiting for I/O, let the thread feeding it run
+                Thread.yield();
+            }
+            return true;
+        }
+        return false;
+    }
+}
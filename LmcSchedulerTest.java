@@ -0,0 +1,93 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LmcSchedulerTest {
+
+    static final String FOREVER = "DO X = X + 0 WHILE 1 ENDDO";
+
+    @Test
+    public void testRunsEveryMachine() {
+        int[] image = new WhiletranCompiler().compile(LmcMachineTest.DIVISION).mailboxes();
+        try (LmcScheduler scheduler = new LmcScheduler(4, 7)) {
+            List<LmcScheduler.Job> jobs = new ArrayList<>();
+            for (int a = 0; a < 500; a++) {
+                jobs.add(scheduler.submit(machine(image, a % 300, 7), Long.MAX_VALUE));
+            }
+            long steps = 0;
+            for (int a = 0; a < jobs.size(); a++) {
+                LmcScheduler.Job job = jobs.get(a);
+                assertEquals(LmcScheduler.Status.HALTED, job.completion().join());
+                LmcMachine expected = machine(image, a % 300, 7);
+                expected.run();
+                assertArrayEquals(expected.getOutput(), job.machine().getOutput());
+                assertEquals(expected.getSteps(), job.machine().getSteps());
+                steps += expected.getSteps();
+            }
+            assertEquals(steps, scheduler.getTotalSteps());
+            assertEquals(0, scheduler.getQueueDepth());
+            assertEquals(0, scheduler.getPendingJobs());
+            assertTrue(scheduler.getStepsPerSecond() > 0);
+        }
+    }
+
+    @Test
+    public void testLoopsDontStarveTheRest() {
+        int[] forever = new WhiletranCompiler().compile(FOREVER).mailboxes();
+        int[] division = new WhiletranCompiler().compile(LmcMachineTest.DIVISION).mailboxes();
+        try (LmcScheduler scheduler = new LmcScheduler(1, 100)) {
+            LmcScheduler.Job loop = scheduler.submit(machine(forever), Long.MAX_VALUE);
+            LmcScheduler.Job budgeted = scheduler.submit(machine(forever), 12_345);
+            LmcScheduler.Job timed = scheduler.submit(machine(forever), Long.MAX_VALUE, Duration.ofMillis(50));
+            LmcScheduler.Job fine = scheduler.submit(machine(division, 100, 7), Long.MAX_VALUE);
+
+            assertEquals(LmcScheduler.Status.HALTED, fine.completion().join());
+            assertEquals(LmcScheduler.Status.OUT_OF_STEPS, budgeted.completion().join());
+            assertEquals(12_345, budgeted.machine().getSteps());
+            assertEquals(LmcScheduler.Status.TIMED_OUT, timed.completion().join());
+
+            assertEquals(LmcScheduler.Status.RUNNING, loop.status());
+            loop.cancel();
+            assertEquals(LmcScheduler.Status.CANCELLED, loop.completion().join());
+        }
+    }
+
+    @Test
+    public void testFailure() {
+        try (LmcScheduler scheduler = new LmcScheduler(2, 10)) {
+            LmcScheduler.Job job = scheduler.submit(machine(new WhiletranCompiler().compile("X = READ").mailboxes()),
+                    Long.MAX_VALUE);
+            assertEquals(LmcScheduler.Status.FAILED, job.completion().join());
+            assertInstanceOf(IllegalStateException.class, job.failure());
+        }
+    }
+
+    @Test
+    public void testCloseCancelsWhatsLeft() {
+        int[] forever = new WhiletranCompiler().compile(FOREVER).mailboxes();
+        LmcScheduler scheduler = new LmcScheduler(2, 50);
+        List<LmcScheduler.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(scheduler.submit(machine(forever), Long.MAX_VALUE));
+        }
+        scheduler.close();
+        for (LmcScheduler.Job job : jobs) {
+            assertEquals(LmcScheduler.Status.CANCELLED, job.completion().join());
+        }
+        assertThrows(IllegalStateException.class, () -> scheduler.submit(machine(forever), 1));
+    }
+
+    private static LmcMachine machine(int[] image, int... inputs) {
+        LmcMachine machine = new LmcMachine();
+        machine.enablePredecoding();
+        machine.load(image);
+        machine.pushInputs(inputs);
+        return machine;
+    }
+}
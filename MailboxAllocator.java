@@ -0,0 +1,310 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which mailbox each variable lives in, so variables whose values are never needed at the
+ * same time can share one.
+ *
+ * Every read and write is numbered in evaluation order and a variable is live from its first to its
+ * last access. That's widened where straight line order isn't enough:
+ *
+ * - a variable that may be read before it's assigned reads the initial 0 of its DAT, so it's live
+ *   from the start of the program
+ * - a variable used anywhere in a DO loop is live for the whole loop, since a later iteration may
+ *   read what an earlier one wrote
+ *
+ * Expressions are walked in the code generator's {@link EvaluationOrder}, and every spill of a right
+ * side to a temporary is live from its STA to the operation that uses it. Spills are packed together
+ * with the variables, so a temporary can reuse the mailbox of a variable that's dead by then, and
+ * spills of different statements share mailboxes the same way variables do.
+ *
+ * The walk goes over a {@link WhiletranArena} with per variable arrays, so it stays cheap for very
+ * large programs.
+ *
+ * Live ranges are then packed into mailboxes greedily in order of their start, which for intervals
+ * uses the fewest mailboxes possible. A variable that is read but never written is always 0, so it
+ * shares the zero constant instead of getting a mailbox.
+ */
+public class MailboxAllocator {
+
+    // cellIds is the same as cells by arena variable id, with -1 for a variable that's always 0. tempCells
+    // is by the arena node that spills, the id of the variable whose mailbox it reuses or -1 - n for T_n.
+    // cellCount counts the mailboxes holding variables, tempCellCount the ones holding only temporaries
+    public record Allocation(Map<String, String> cells, Set<String> constantZero, int cellCount, int peakLive,
+                             int[] cellIds, int[] tempCells, int tempCellCount) {
+
+        // the label of the mailbox the variable lives in, which is the name of the first variable put there
+        public String cellFor(String variable) {
+            return cells.getOrDefault(variable, variable);
+        }
+
+        // the id of the first variable put in the same mailbox, for the arena that was allocated
+        public int cellFor(int variable) {
+            return cellIds[variable];
+        }
+
+        // the id of the variable whose mailbox the node's temporary goes in, or -1 if it has its own
+        public int tempSharesWith(int node) {
+            return Math.max(tempCells[node], -1);
+        }
+
+        // n for the node's temporary T_n, or -1 if it goes in a variable's mailbox
+        public int tempMailbox(int node) {
+            return tempCells[node] < 0 ? -1 - tempCells[node] : -1;
+        }
+
+        public boolean isConstantZero(String variable) {
+            return constantZero.contains(variable);
+        }
+
+        public int variableCount() {
+            return cells.size() + constantZero.size();
+        }
+
+        public int mailboxesSaved() {
+            return variableCount() - cellCount;
+        }
+    }
+
+    // indexed by arena variable id, with -1 for a variable not touched yet
+    private int[] starts;
+    private int[] ends;
+    private int[] touchOrder;
+    private int touched;
+    private boolean[] written;
+    private boolean[] readsInitial;
+    // per spill, the node that spills and its live range
+    private int[] tempNodes;
+    private int[] tempStarts;
+    private int[] tempEnds;
+    private int temps;
+    private WhiletranArena arena;
+    private EvaluationOrder order;
+    private int position;
+
+    public Allocation allocate(WhiletranProgram program) {
+        return allocate(WhiletranArena.from(program));
+    }
+
+    public Allocation allocate(WhiletranArena arena) {
+        this.arena = arena;
+        this.order = new EvaluationOrder(arena);
+        int variableCount = arena.variableCount();
+        starts = new int[variableCount];
+        ends = new int[variableCount];
+        Arrays.fill(starts, -1);
+        touchOrder = new int[variableCount];
+        touched = 0;
+        written = new boolean[variableCount];
+        readsInitial = new boolean[variableCount];
+        tempNodes = new int[16];
+        tempStarts = new int[16];
+        tempEnds = new int[16];
+        temps = 0;
+        position = 0;
+
+        walk(arena.root(), new BitSet(variableCount));
+
+        // variables are numbered by their id and spills after them, by the order they were walked
+        List<Integer> byStart = new ArrayList<>();
+        Set<String> constantZero = new HashSet<>();
+        int[] cellIds = new int[variableCount];
+        for (int variable = 0; variable < variableCount; variable++) {
+            cellIds[variable] = variable;
+        }
+        for (int i = 0; i < touched; i++) {
+            int variable = touchOrder[i];
+            if (!written[variable]) {
+                constantZero.add(arena.name(variable));
+                cellIds[variable] = -1;
+                continue;
+            }
+            if (readsInitial[variable]) {
+                starts[variable] = 0;
+            }
+            byStart.add(variable);
+        }
+        for (int temp = 0; temp < temps; temp++) {
+            byStart.add(variableCount + temp);
+        }
+        byStart.sort((a, b) -> Integer.compare(start(a), start(b)));
+
+        // per mailbox the first variable put there, or -1 while it only holds temporaries
+        List<Integer> cellOwners = new ArrayList<>();
+        List<Integer> cellFreeAfter = new ArrayList<>();
+        int[] cellOf = new int[variableCount + temps];
+        int peakLive = 0;
+        for (int member : byStart) {
+            int cell = -1;
+            int live = 0;
+            for (int i = 0; i < cellOwners.size(); i++) {
+                if (cellFreeAfter.get(i) < start(member)) {
+                    if (cell < 0) {
+                        cell = i;
+                    }
+                } else {
+                    live++;
+                }
+            }
+            if (cell < 0) {
+                cell = cellOwners.size();
+                cellOwners.add(-1);
+                cellFreeAfter.add(end(member));
+            } else {
+                cellFreeAfter.set(cell, end(member));
+            }
+            if (member < variableCount && cellOwners.get(cell) < 0) {
+                cellOwners.set(cell, member);
+            }
+            cellOf[member] = cell;
+            peakLive = Math.max(peakLive, live + 1);
+        }
+
+        Map<String, String> cells = new HashMap<>();
+        int[] tempCells = new int[arena.nodeCount()];
+        int[] tempMailboxes = new int[cellOwners.size()];
+        int tempCellCount = 0;
+        for (int member : byStart) {
+            int owner = cellOwners.get(cellOf[member]);
+            if (member < variableCount) {
+                cellIds[member] = owner;
+                cells.put(arena.name(member), arena.name(owner));
+            } else if (owner >= 0) {
+                tempCells[tempNodes[member - variableCount]] = owner;
+            } else {
+                if (tempMailboxes[cellOf[member]] == 0) {
+                    tempMailboxes[cellOf[member]] = ++tempCellCount;
+                }
+                tempCells[tempNodes[member - variableCount]] = -tempMailboxes[cellOf[member]];
+            }
+        }
+        this.arena = null;
+        this.order = null;
+        return new Allocation(Collections.unmodifiableMap(cells), Collections.unmodifiableSet(constantZero),
+                cellOwners.size() - tempCellCount, peakLive, cellIds, tempCells, tempCellCount);
+    }
+
+    private int start(int member) {
+        return member < starts.length ? starts[member] : tempStarts[member - starts.length];
+    }
+
+    private int end(int member) {
+        return member < ends.length ? ends[member] : tempEnds[member - ends.length];
+    }
+
+    // assigned holds the variables that are definitely assigned at this point
+    private void walk(int list, BitSet assigned) {
+        for (int i = 0; i < arena.size(list); i++) {
+            walkStatement(arena.statement(list, i), assigned);
+        }
+    }
+
+    private void walkStatement(int node, BitSet assigned) {
+        switch (arena.kind(node)) {
+            case WhiletranArena.WRITE -> read(arena.expression(node), assigned);
+            case WhiletranArena.ASSIGN -> {
+                read(arena.expression(node), assigned);
+                int variable = arena.variable(node);
+                touch(variable);
+                written[variable] = true;
+                assigned.set(variable);
+            }
+            case WhiletranArena.IF -> {
+                read(arena.condition(node), assigned);
+                BitSet thenAssigned = (BitSet) assigned.clone();
+                walk(arena.thenBody(node), thenAssigned);
+                BitSet elseAssigned = (BitSet) assigned.clone();
+                if (arena.elseBody(node) >= 0) {
+                    walk(arena.elseBody(node), elseAssigned);
+                }
+                thenAssigned.and(elseAssigned);
+                assigned.or(thenAssigned);
+            }
+            case WhiletranArena.DO -> {
+                int loopStart = position;
+                // the body always runs at least once, so what it assigns is assigned for the condition and after
+                walk(arena.body(node), assigned);
+                read(arena.condition(node), assigned);
+                int loopEnd = position;
+
+                // positions only grow, so anything last accessed at or after loopStart was accessed in the loop
+                for (int i = 0; i < touched; i++) {
+                    int variable = touchOrder[i];
+                    if (ends[variable] >= loopStart) {
+                        starts[variable] = Math.min(starts[variable], loopStart);
+                        ends[variable] = Math.max(ends[variable], loopEnd);
+                    }
+                }
+            }
+            default -> throw new IllegalArgumentException("Don't know how to allocate for node " + node);
+        }
+    }
+
+    private void read(int node, BitSet assigned) {
+        switch (arena.kind(node)) {
+            case WhiletranArena.VARIABLE -> {
+                int variable = arena.variable(node);
+                touch(variable);
+                if (!assigned.get(variable)) {
+                    readsInitial[variable] = true;
+                }
+            }
+            case WhiletranArena.ADD, WhiletranArena.SUB -> readOperation(node, assigned);
+            case WhiletranArena.GREATER_EQUAL, WhiletranArena.EQUAL -> {
+                if (order.isZero(arena.rhs(node))) {
+                    read(arena.lhs(node), assigned);
+                } else {
+                    readOperation(node, assigned);
+                }
+            }
+            default -> { }
+        }
+    }
+
+    // the same order the code generator works the operation out in, see EvaluationOrder
+    private void readOperation(int node, BitSet assigned) {
+        int lhs = arena.lhs(node);
+        int rhs = arena.rhs(node);
+        if (order.commutes(node) && order.swaps(lhs, rhs)) {
+            int swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        }
+        if (order.isOperand(rhs)) {
+            read(lhs, assigned);
+            read(rhs, assigned);
+            return;
+        }
+        read(rhs, assigned);
+        if (temps == tempNodes.length) {
+            tempNodes = Arrays.copyOf(tempNodes, temps * 2);
+            tempStarts = Arrays.copyOf(tempStarts, temps * 2);
+            tempEnds = Arrays.copyOf(tempEnds, temps * 2);
+        }
+        int temp = temps++;
+        tempNodes[temp] = node;
+        tempStarts[temp] = position++;
+        read(lhs, assigned);
+        tempEnds[temp] = position++;
+    }
+
+    private void touch(int variable) {
+        int at = position++;
+        if (starts[variable] < 0) {
+            starts[variable] = at;
+            touchOrder[touched++] = variable;
+        }
+        ends[variable] = at;
+    }
+}
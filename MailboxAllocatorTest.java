@@ -0,0 +1,148 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.WhiletranProgram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MailboxAllocatorTest {
+
+    @Test
+    public void testNonOverlappingVariablesShare() {
+        MailboxAllocator.Allocation allocation = allocate("""
+                A = READ
+                WRITE A
+                B = READ
+                WRITE B""");
+        assertEquals("A", allocation.cellFor("B"));
+        // by arena id, A is 0 and B is 1
+        assertEquals(0, allocation.cellFor(1));
+        assertEquals(1, allocation.cellCount());
+        assertEquals(1, allocation.mailboxesSaved());
+    }
+
+    @Test
+    public void testOverlappingVariablesDontShare() {
+        MailboxAllocator.Allocation allocation = allocate("""
+                A = READ
+                B = READ
+                WRITE A + B""");
+        assertEquals("A", allocation.cellFor("A"));
+        assertEquals("B", allocation.cellFor("B"));
+        assertEquals(2, allocation.peakLive());
+    }
+
+    @Test
+    public void testLastReadAndFirstWriteInOneStatementShare() {
+        MailboxAllocator.Allocation allocation = allocate("""
+                A = READ
+                B = A + 1
+                WRITE B""");
+        assertEquals("A", allocation.cellFor("B"));
+    }
+
+    @Test
+    public void testVariablesUsedInALoopLiveForTheWholeLoop() {
+        MailboxAllocator.Allocation allocation = allocate(LmcMachineTest.FIB);
+        assertEquals(4, allocation.cellCount());
+    }
+
+    @Test
+    public void testReadBeforeAssignmentIsLiveFromTheStart() {
+        MailboxAllocator.Allocation allocation = allocate("""
+                A = READ
+                WRITE A
+                IF A THEN
+                    B = 1
+                ENDIF
+                WRITE B""");
+        assertNotEquals(allocation.cellFor("A"), allocation.cellFor("B"));
+    }
+
+    @Test
+    public void testNeverWrittenIsConstantZero() {
+        MailboxAllocator.Allocation allocation = allocate("WRITE X + 1");
+        assertTrue(allocation.isConstantZero("X"));
+        assertEquals(0, allocation.cellCount());
+    }
+
+    @Test
+    public void testSharedProgramsRunTheSame() {
+        String src = """
+                A = READ
+                B = A + 1
+                WRITE B
+                C = READ
+                D = C - B
+                WRITE D
+                WRITE Z""";
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranCodeGenerator shared = new WhiletranCodeGenerator();
+        WhiletranCodeGenerator.Generation generation = shared.generate(parser.parse(src));
+        LmcImage sharedImage = new LmcImageWriter().write(generation.instructions());
+        WhiletranCodeGenerator unshared = new WhiletranCodeGenerator();
+        unshared.setShareMailboxes(false);
+        LmcImage unsharedImage = unshared.generateImage(parser.parse(src));
+
+        // A, B and D share a mailbox, C gets its own and Z becomes a new N_0 constant: 3 mailboxes instead of 5
+        assertEquals(unsharedImage.instructions().size() - 2, sharedImage.instructions().size());
+        assertEquals(2, generation.allocation().cellCount());
+        assertArrayEquals(run(unsharedImage, 4, 9), run(sharedImage, 4, 9));
+        assertArrayEquals(new int[]{5, 4, 0}, run(sharedImage, 4, 9));
+    }
+
+    @Test
+    public void testTemporariesShareWithDeadVariables() {
+        String src = """
+                A = READ
+                B = READ
+                C = READ
+                D = READ
+                X = (A + B) - (C + D)
+                WRITE X""";
+        WhiletranArena arena = WhiletranArena.from(new WhiletranParser().parse(src));
+        MailboxAllocator.Allocation allocation = new MailboxAllocator().allocate(arena);
+        // C + D is spilled once both are read for the last time, so the temporary reuses C's mailbox
+        int spill = arena.expression(arena.statement(arena.root(), 4));
+        // by arena id, C is 2
+        assertEquals(2, allocation.tempSharesWith(spill));
+        assertEquals(-1, allocation.tempMailbox(spill));
+        assertEquals(0, allocation.tempCellCount());
+
+        WhiletranCodeGenerator unshared = new WhiletranCodeGenerator();
+        unshared.setShareMailboxes(false);
+        LmcImage unsharedImage = unshared.generateImage(arena);
+        LmcImage sharedImage = new WhiletranCodeGenerator().generateImage(arena);
+        // A, B, C and D, with X in A's mailbox and T_0 in C's, instead of six
+        assertEquals(unsharedImage.instructions().size() - 2, sharedImage.instructions().size());
+        assertArrayEquals(new int[]{(1 + 2) - (3 + 4)}, run(sharedImage, 1, 2, 3, 4));
+    }
+
+    @Test
+    public void testTemporariesInsideALoopDontShareWithItsVariables() {
+        String src = """
+                A = READ
+                B = READ
+                DO
+                    WRITE A - (B + 1)
+                    A = A - 1
+                WHILE A - B ENDDO""";
+        WhiletranArena arena = WhiletranArena.from(new WhiletranParser().parse(src));
+        MailboxAllocator.Allocation allocation = new MailboxAllocator().allocate(arena);
+        assertEquals(1, allocation.tempCellCount());
+        assertArrayEquals(new int[]{0, -1}, run(new WhiletranCodeGenerator().generateImage(arena), 3, 2));
+    }
+
+    private static MailboxAllocator.Allocation allocate(String src) {
+        WhiletranProgram program = new WhiletranParser().parse(src);
+        return new MailboxAllocator().allocate(program);
+    }
+
+    private static int[] run(LmcImage image, int... inputs) {
+        LmcMachine machine = new LmcMachine();
+        machine.load(image.mailboxes());
+        machine.pushInputs(inputs);
+        machine.run();
+        return machine.getOutput();
+    }
+}
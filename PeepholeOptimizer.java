@@ -0,0 +1,183 @@
+package csci366.lmc.whiletran;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes provably redundant instructions from generated code, before it is assembled. Each rule
+ * looks at a small window of neighbouring instructions; rules are applied repeatedly until none of
+ * them fires. When a labelled instruction is removed the label moves onto the following instruction
+ * (or, if that one already has a label, every reference is redirected to it).
+ */
+public class PeepholeOptimizer {
+
+    public enum Rule {
+        /** STA X followed by LDA X - the accumulator already holds X */
+        STORE_LOAD,
+        /** ADD of a zero constant, which the generator emits to carry labels */
+        ADD_ZERO,
+        /** BRA to the instruction that follows it */
+        BRANCH_TO_NEXT,
+        /** DAT that nothing refers to anymore */
+        UNUSED_DATA
+    }
+
+    // original is the code as it was handed in, kept to compare runs against
+    public record Result(List<LmcInstruction> instructions, Map<Rule, Integer> hits, List<LmcInstruction> original) {
+
+        public int instructionsSaved() {
+            int saved = 0;
+            for (Map.Entry<Rule, Integer> entry : hits.entrySet()) {
+                if (entry.getKey() != Rule.UNUSED_DATA) {
+                    saved += entry.getValue();
+                }
+            }
+            return saved;
+        }
+
+        public int mailboxesSaved() {
+            int saved = 0;
+            for (Integer count : hits.values()) {
+                saved += count;
+            }
+            return saved;
+        }
+
+        /*
+         * How many fewer instructions the optimized code executes than the original on these inputs.
+         * The static counts above don't say whether a removed instruction was in a loop or never ran, so
+         * both versions are run on an LmcMachine and their step counts compared. Each run may take at
+         * most maxSteps, one that doesn't halt by then throws IllegalStateException, since its count
+         * would say nothing about the other.
+         */
+        public long cyclesSaved(long maxSteps, int... inputs) {
+            return steps(original, "original", maxSteps, inputs) - steps(instructions, "optimized", maxSteps, inputs);
+        }
+
+        private static long steps(List<LmcInstruction> code, String version, long maxSteps, int[] inputs) {
+            LmcMachine machine = new LmcMachine();
+            machine.load(new LmcImageWriter().write(code).mailboxes());
+            machine.pushInputs(inputs);
+            if (!machine.run(maxSteps)) {
+                throw new IllegalStateException("The " + version + " code didn't halt within " + maxSteps + " steps");
+            }
+            return machine.getSteps();
+        }
+    }
+
+    private final Set<Rule> rules;
+
+    public PeepholeOptimizer() {
+        this(EnumSet.allOf(Rule.class));
+    }
+
+    public PeepholeOptimizer(Set<Rule> rules) {
+        this.rules = EnumSet.copyOf(rules);
+    }
+
+    public Result optimize(List<LmcInstruction> instructions) {
+        List<LmcInstruction> code = new ArrayList<>(instructions);
+        Map<Rule, Integer> hits = new EnumMap<>(Rule.class);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Set<String> zeroLabels = zeroConstants(code);
+            for (int i = 0; i < code.size(); i++) {
+                Rule rule = match(code, i, zeroLabels);
+                if (rule != null) {
+                    remove(code, rule == Rule.STORE_LOAD ? i + 1 : i);
+                    hits.merge(rule, 1, Integer::sum);
+                    changed = true;
+                    i--;
+                }
+            }
+            if (rules.contains(Rule.UNUSED_DATA)) {
+                int removed = removeUnusedData(code);
+                if (removed > 0) {
+                    hits.merge(Rule.UNUSED_DATA, removed, Integer::sum);
+                    changed = true;
+                }
+            }
+        }
+        return new Result(code, Collections.unmodifiableMap(hits), List.copyOf(instructions));
+    }
+
+    private Rule match(List<LmcInstruction> code, int i, Set<String> zeroLabels) {
+        LmcInstruction current = code.get(i);
+        if (current.isData() || i + 1 >= code.size()) {
+            return null;
+        }
+        LmcInstruction next = code.get(i + 1);
+        if (next.isData()) {
+            // never move a label onto data, the jump would then execute it
+            return null;
+        }
+
+        if (rules.contains(Rule.STORE_LOAD) && current.mnemonic().equals("STA")
+                && next.mnemonic().equals("LDA") && next.label() == null
+                && current.operand().equals(next.operand())) {
+            return Rule.STORE_LOAD;
+        }
+        if (rules.contains(Rule.ADD_ZERO) && current.mnemonic().equals("ADD")
+                && zeroLabels.contains(current.operand())) {
+            return Rule.ADD_ZERO;
+        }
+        if (rules.contains(Rule.BRANCH_TO_NEXT) && current.mnemonic().equals("BRA")
+                && current.operand().equals(next.label())) {
+            return Rule.BRANCH_TO_NEXT;
+        }
+        return null;
+    }
+
+    private static Set<String> zeroConstants(List<LmcInstruction> code) {
+        Set<String> labels = new HashSet<>();
+        Set<String> stored = new HashSet<>();
+        for (LmcInstruction instruction : code) {
+            if (instruction.isData() && instruction.label() != null && "0".equals(instruction.operand())) {
+                labels.add(instruction.label());
+            } else if (instruction.mnemonic().equals("STA")) {
+                stored.add(instruction.operand());
+            }
+        }
+        // a zero cell that is written to is a variable, not a constant
+        labels.removeAll(stored);
+        return labels;
+    }
+
+    private static void remove(List<LmcInstruction> code, int index) {
+        LmcInstruction removed = code.remove(index);
+        String label = removed.label();
+        if (label == null) {
+            return;
+        }
+        LmcInstruction next = code.get(index);
+        if (next.label() == null) {
+            code.set(index, next.withLabel(label));
+        } else {
+            for (int i = 0; i < code.size(); i++) {
+                if (label.equals(code.get(i).operand()) && !code.get(i).isData()) {
+                    code.set(i, code.get(i).withOperand(next.label()));
+                }
+            }
+        }
+    }
+
+    private static int removeUnusedData(List<LmcInstruction> code) {
+        Set<String> referenced = new HashSet<>();
+        for (LmcInstruction instruction : code) {
+            if (!instruction.isData() && instruction.operand() != null) {
+                referenced.add(instruction.operand());
+            }
+        }
+        int before = code.size();
+        code.removeIf(instruction -> instruction.isData() && !referenced.contains(instruction.label()));
+        return before - code.size();
+    }
+}
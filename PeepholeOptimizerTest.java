@@ -0,0 +1,271 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PeepholeOptimizerTest {
+
+    @Test
+    public void testStoreLoadIsRemoved() {
+        PeepholeOptimizer.Result result = optimize("""
+                LDA N_11
+                STA X
+                LDA X
+                OUT
+                HLT
+                N_11 DAT 11
+                X DAT 0
+                """);
+        assertEquals("""
+                LDA N_11
+                STA X
+                OUT
+                HLT
+                N_11 DAT 11
+                X DAT 0
+                """, LmcInstruction.toListing(result.instructions()));
+        assertEquals(1, result.hits().get(PeepholeOptimizer.Rule.STORE_LOAD));
+    }
+
+    @Test
+    public void testLabelledLoadIsKept() {
+        String src = """
+                STA X
+                LOOP LDA X
+                BRA LOOP
+                X DAT 0
+                """;
+        assertEquals(src, LmcInstruction.toListing(optimize(src).instructions()));
+    }
+
+    @Test
+    public void testIfWithoutElseCollapses() {
+        PeepholeOptimizer.Result result = optimize("""
+                LDA N_1
+                BRZ LABEL_0
+                LDA N_1
+                OUT
+                BRA LABEL_1
+                LABEL_0 ADD N_0
+                LABEL_1 ADD N_0
+                HLT
+                N_1 DAT 1
+                N_0 DAT 0
+                """);
+        assertEquals("""
+                LDA N_1
+                BRZ LABEL_1
+                LDA N_1
+                OUT
+                LABEL_1 HLT
+                N_1 DAT 1
+                """, LmcInstruction.toListing(result.instructions()));
+        assertEquals(2, result.hits().get(PeepholeOptimizer.Rule.ADD_ZERO));
+        assertEquals(1, result.hits().get(PeepholeOptimizer.Rule.BRANCH_TO_NEXT));
+        assertEquals(3, result.instructionsSaved());
+        assertEquals(4, result.mailboxesSaved());
+    }
+
+    @Test
+    public void testRulesCanBeDisabled() {
+        String src = """
+                LABEL_0 ADD N_0
+                BRA LABEL_1
+                LABEL_1 HLT
+                N_0 DAT 0
+                """;
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(EnumSet.of(PeepholeOptimizer.Rule.BRANCH_TO_NEXT));
+        PeepholeOptimizer.Result result = optimizer.optimize(parse(src));
+        assertEquals("""
+                LABEL_0 ADD N_0
+                LABEL_1 HLT
+                N_0 DAT 0
+                """, LmcInstruction.toListing(result.instructions()));
+    }
+
+    @Test
+    public void testZeroVariableIsNotAConstant() {
+        String src = """
+                ADD X
+                STA X
+                HLT
+                X DAT 0
+                """;
+        assertEquals(src, LmcInstruction.toListing(optimize(src).instructions()));
+    }
+
+    @Test
+    public void testOptimizedProgramRunsTheSame() {
+        WhiletranParser parser = new WhiletranParser();
+        String src = """
+                A = READ
+                B = READ
+                DIV = -1
+                DO
+                    DIV = DIV + 1
+                    A = A - B
+                WHILE A
+                ENDDO
+                IF DIV THEN
+                    WRITE DIV
+                ENDIF""";
+        List<LmcInstruction> code = new WhiletranCodeGenerator().generateInstructions(parser.parse(src));
+        PeepholeOptimizer.Result result = new PeepholeOptimizer().optimize(code);
+        assertEquals(code.size() - result.mailboxesSaved(), result.instructions().size());
+
+        LmcImage image = new LmcImageWriter().write(result.instructions());
+        LittleManComputer computer = new LittleManComputer();
+        computer.load(image.mailboxes());
+        computer.pushInputs(50, 10);
+        computer.run();
+        assertEquals(5, computer.getOutput().poll());
+    }
+
+    // LmcMachineTest.DIVISION without the generator's own clean up: A is stored and loaded again for the
+    // condition and the loop's exit label is carried by an ADD N_0
+    private static final String DIVISION = """
+            INP
+            STA A
+            INP
+            STA B
+            LDA N_NEG_1
+            STA DIV
+            LABEL_0 LDA DIV
+            ADD N_1
+            STA DIV
+            LDA A
+            SUB B
+            STA A
+            LDA A
+            BRP LABEL_0
+            LABEL_1 ADD N_0
+            LDA DIV
+            OUT
+            HLT
+            N_NEG_1 DAT -1
+            N_1 DAT 1
+            N_0 DAT 0
+            A DAT 0
+            B DAT 0
+            DIV DAT 0
+            """;
+
+    // LmcMachineTest.FIB the same way, N is stored and loaded again for the condition
+    private static final String FIB = """
+            INP
+            STA N
+            LDA N_0
+            STA F1
+            LDA N_1
+            STA F2
+            LABEL_0 LDA F1
+            ADD F2
+            STA TMP
+            LDA F1
+            STA F2
+            LDA TMP
+            STA F1
+            LDA N
+            SUB N_1
+            STA N
+            LDA N
+            SUB N_1
+            BRP LABEL_0
+            LABEL_1 ADD N_0
+            LDA F1
+            OUT
+            HLT
+            N_0 DAT 0
+            N_1 DAT 1
+            N DAT 0
+            F1 DAT 0
+            F2 DAT 0
+            TMP DAT 0
+            """;
+
+    private static final long STEPS = 10_000;
+
+    @Test
+    public void testDivisionCyclesSaved() {
+        PeepholeOptimizer.Result result = optimize(DIVISION);
+        assertEquals(2, result.instructionsSaved());
+        // 50 / 7 goes round the loop 8 times, each one skipping the LDA A, plus the ADD N_0 once
+        assertEquals(8 + 1, result.cyclesSaved(STEPS, 50, 7));
+        // A only leaves the loop below 0, so 43 / 1 goes round 44 times
+        assertEquals(44 + 1, result.cyclesSaved(STEPS, 43, 1));
+        assertEquals(steps(DIVISION, 50, 7) - 9, steps(LmcInstruction.toListing(result.instructions()), 50, 7));
+    }
+
+    @Test
+    public void testFibCyclesSaved() {
+        PeepholeOptimizer.Result result = optimize(FIB);
+        assertEquals(2, result.instructionsSaved());
+        // the loop runs n times, each one skipping the LDA N, plus the ADD N_0 once
+        assertEquals(10 + 1, result.cyclesSaved(STEPS, 10));
+        assertEquals(1 + 1, result.cyclesSaved(STEPS, 1));
+        assertEquals(steps(FIB, 10) - 11, steps(LmcInstruction.toListing(result.instructions()), 10));
+    }
+
+    @Test
+    public void testGeneratedCodeSavesNoCycles() {
+        // the generator already tracks the accumulator and removes branches to the next instruction
+        List<LmcInstruction> code = new WhiletranCodeGenerator().generateInstructions(
+                new WhiletranParser().parse(LmcMachineTest.DIVISION));
+        assertEquals(0, new PeepholeOptimizer().optimize(code).cyclesSaved(STEPS, 50, 7));
+    }
+
+    @Test
+    public void testRunawayProgramHitsTheStepBudget() {
+        PeepholeOptimizer.Result result = optimize("""
+                INP
+                STA X
+                LOOP LDA X
+                BRA LOOP
+                HLT
+                X DAT 0
+                """);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> result.cyclesSaved(STEPS, 1));
+        assertEquals("The original code didn't halt within 10000 steps", e.getMessage());
+    }
+
+    private static long steps(String src, int... inputs) {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new LmcImageWriter().write(parse(src)).mailboxes());
+        machine.pushInputs(inputs);
+        machine.run();
+        return machine.getSteps();
+    }
+
+    private static PeepholeOptimizer.Result optimize(String src) {
+        return new PeepholeOptimizer().optimize(parse(src));
+    }
+
+    // the listings used here are simple enough to split on whitespace; a first word that isn't a
+    // mnemonic is a label
+    private static List<LmcInstruction> parse(String src) {
+        List<LmcInstruction> instructions = new ArrayList<>();
+        for (String line : src.split("\n")) {
+            String[] words = line.trim().split("\\s+");
+            int i = 0;
+            String label = null;
+            if (words.length > 1 && !isMnemonic(words[0])) {
+                label = words[i++];
+            }
+            String mnemonic = words[i++];
+            String operand = i < words.length ? words[i] : null;
+            instructions.add(new LmcInstruction(label, mnemonic, operand));
+        }
+        return instructions;
+    }
+
+    private static boolean isMnemonic(String word) {
+        return word.equals("DAT") || List.of("HLT", "ADD", "SUB", "STA", "LDA", "BRA", "BRZ", "BRP", "INP", "OUT").contains(word);
+    }
+}
@@ -0,0 +1,515 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.WhiletranStatement;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * An immutable list of statements kept as a balanced tree of short runs, so a list with a few
+ * statements replaced shares every untouched run with the list it was made from. Cutting and joining
+ * take time logarithmic in the size of the list, plus the statements added.
+ *
+ * It's a LinkedList because that's what {@link csci366.lmc.whiletran.tree.WhiletranProgram} holds,
+ * but none of LinkedList's own nodes are used: everything that reads the list is answered from the
+ * tree and everything that would change it throws UnsupportedOperationException.
+ */
+final class StatementRope extends LinkedList<WhiletranStatement> {
+
+    private static final long serialVersionUID = 1L;
+    // statements per leaf when a rope is built from a list
+    private static final int LEAF = 32;
+
+    /*
+     * A leaf holds a run of statements in an array, a branch the runs of its two sides. Depth is 0 for a
+     * leaf, and the depths of a branch's sides differ by at most one, as in an AVL tree.
+     */
+    private static final class Segment {
+        final Segment left;
+        final Segment right;
+        final WhiletranStatement[] items;
+        final int size;
+        final int depth;
+
+        Segment(WhiletranStatement[] items) {
+            this.left = null;
+            this.right = null;
+            this.items = items;
+            this.size = items.length;
+            this.depth = 0;
+        }
+
+        Segment(Segment left, Segment right) {
+            this.left = left;
+            this.right = right;
+            this.items = null;
+            this.size = left.size + right.size;
+            this.depth = Math.max(left.depth, right.depth) + 1;
+        }
+    }
+
+    // null for an empty list, there's no empty segment
+    private final transient Segment root;
+
+    private StatementRope(Segment root) {
+        this.root = root;
+    }
+
+    static StatementRope of(List<WhiletranStatement> statements) {
+        return new StatementRope(build(statements.toArray(new WhiletranStatement[0]), 0, statements.size()));
+    }
+
+    // the statements from up to but not including to
+    StatementRope slice(int from, int to) {
+        checkSlice(from, to);
+        return new StatementRope(suffix(prefix(root, to), from));
+    }
+
+    StatementRope append(StatementRope other) {
+        return new StatementRope(concat(root, other.root));
+    }
+
+    private static Segment build(WhiletranStatement[] statements, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        if (to - from <= LEAF) {
+            return new Segment(Arrays.copyOfRange(statements, from, to));
+        }
+        int mid = (from + to) >>> 1;
+        return new Segment(build(statements, from, mid), build(statements, mid, to));
+    }
+
+    // the first count statements of segment
+    private static Segment prefix(Segment segment, int count) {
+        if (count == 0) {
+            return null;
+        }
+        if (count == segment.size) {
+            return segment;
+        }
+        if (segment.items != null) {
+            return new Segment(Arrays.copyOf(segment.items, count));
+        }
+        if (count <= segment.left.size) {
+            return prefix(segment.left, count);
+        }
+        return concat(segment.left, prefix(segment.right, count - segment.left.size));
+    }
+
+    // the statements of segment from from on
+    private static Segment suffix(Segment segment, int from) {
+        if (segment == null || from == segment.size) {
+            return null;
+        }
+        if (from == 0) {
+            return segment;
+        }
+        if (segment.items != null) {
+            return new Segment(Arrays.copyOfRange(segment.items, from, segment.size));
+        }
+        if (from >= segment.left.size) {
+            return suffix(segment.right, from - segment.left.size);
+        }
+        return concat(suffix(segment.left, from), segment.right);
+    }
+
+    // joins two balanced trees by walking down the side of the deeper one, rebalancing on the way up
+    private static Segment concat(Segment left, Segment right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.depth > right.depth + 1) {
+            return balance(left.left, concat(left.right, right));
+        }
+        if (right.depth > left.depth + 1) {
+            return balance(concat(left, right.left), right.right);
+        }
+        return new Segment(left, right);
+    }
+
+    private static Segment balance(Segment left, Segment right) {
+        if (left.depth > right.depth + 1) {
+            if (left.left.depth >= left.right.depth) {
+                return new Segment(left.left, new Segment(left.right, right));
+            }
+            return new Segment(new Segment(left.left, left.right.left), new Segment(left.right.right, right));
+        }
+        if (right.depth > left.depth + 1) {
+            if (right.right.depth >= right.left.depth) {
+                return new Segment(new Segment(left, right.left), right.right);
+            }
+            return new Segment(new Segment(left, right.left.left), new Segment(right.left.right, right.right));
+        }
+        return new Segment(left, right);
+    }
+
+    // the leaf holding index, with the index of its first statement in leafStart[0]
+    private Segment leafAt(int index, int[] leafStart) {
+        Segment segment = root;
+        int start = 0;
+        while (segment.items == null) {
+            if (index - start < segment.left.size) {
+                segment = segment.left;
+            } else {
+                start += segment.left.size;
+                segment = segment.right;
+            }
+        }
+        leafStart[0] = start;
+        return segment;
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    @Override
+    public WhiletranStatement get(int index) {
+        checkIndex(index, size());
+        int[] leafStart = new int[1];
+        Segment leaf = leafAt(index, leafStart);
+        return leaf.items[index - leafStart[0]];
+    }
+
+    @Override
+    public WhiletranStatement getFirst() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        return get(0);
+    }
+
+    @Override
+    public WhiletranStatement getLast() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        return get(size() - 1);
+    }
+
+    @Override
+    public WhiletranStatement element() {
+        return getFirst();
+    }
+
+    @Override
+    public WhiletranStatement peek() {
+        return root == null ? null : get(0);
+    }
+
+    @Override
+    public WhiletranStatement peekFirst() {
+        return peek();
+    }
+
+    @Override
+    public WhiletranStatement peekLast() {
+        return root == null ? null : get(size() - 1);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        ListIterator<WhiletranStatement> it = listIterator(0);
+        while (it.hasNext()) {
+            int index = it.nextIndex();
+            if (Objects.equals(o, it.next())) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        ListIterator<WhiletranStatement> it = listIterator(size());
+        while (it.hasPrevious()) {
+            int index = it.previousIndex();
+            if (Objects.equals(o, it.previous())) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toArray(new WhiletranStatement[0]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        int size = size();
+        T[] array = a.length >= size ? a : Arrays.copyOf(a, size);
+        int i = 0;
+        for (WhiletranStatement statement : this) {
+            array[i++] = (T) statement;
+        }
+        if (array.length > size) {
+            array[size] = null;
+        }
+        return array;
+    }
+
+    @Override
+    public ListIterator<WhiletranStatement> listIterator(int index) {
+        checkIndex(index, size() + 1);
+        return new Cursor(index);
+    }
+
+    @Override
+    public Iterator<WhiletranStatement> descendingIterator() {
+        ListIterator<WhiletranStatement> it = listIterator(size());
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasPrevious();
+            }
+
+            @Override
+            public WhiletranStatement next() {
+                return it.previous();
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<WhiletranStatement> spliterator() {
+        return Spliterators.spliterator(this, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+
+    // a copy that's an ordinary, changeable LinkedList
+    @Override
+    public Object clone() {
+        return new LinkedList<>(this);
+    }
+
+    // the tree isn't serializable, a plain LinkedList with the same statements is written instead
+    private Object writeReplace() {
+        return new LinkedList<>(this);
+    }
+
+    /*
+     * Walks the list a leaf at a time, so going through the whole list is linear and only stepping
+     * into another leaf looks it up from the root.
+     */
+    private final class Cursor implements ListIterator<WhiletranStatement> {
+
+        private int index;
+        private Segment leaf;
+        private final int[] leafStart = new int[1];
+
+        Cursor(int index) {
+            this.index = index;
+        }
+
+        private WhiletranStatement at(int i) {
+            if (leaf == null || i < leafStart[0] || i >= leafStart[0] + leaf.size) {
+                leaf = leafAt(i, leafStart);
+            }
+            return leaf.items[i - leafStart[0]];
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < size();
+        }
+
+        @Override
+        public WhiletranStatement next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return at(index++);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return index > 0;
+        }
+
+        @Override
+        public WhiletranStatement previous() {
+            if (!hasPrevious()) {
+                throw new NoSuchElementException();
+            }
+            return at(--index);
+        }
+
+        @Override
+        public int nextIndex() {
+            return index;
+        }
+
+        @Override
+        public int previousIndex() {
+            return index - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw immutable();
+        }
+
+        @Override
+        public void set(WhiletranStatement statement) {
+            throw immutable();
+        }
+
+        @Override
+        public void add(WhiletranStatement statement) {
+            throw immutable();
+        }
+    }
+
+    private void checkSlice(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("Slice " + from + ".." + to + " of " + size());
+        }
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + bound);
+        }
+    }
+
+    private static UnsupportedOperationException immutable() {
+        return new UnsupportedOperationException("Statements of an incrementally parsed program can't be changed");
+    }
+
+    // everything below would change the list
+
+    @Override
+    public boolean add(WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public void add(int index, WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends WhiletranStatement> c) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends WhiletranStatement> c) {
+        throw immutable();
+    }
+
+    @Override
+    public void addFirst(WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public void addLast(WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean offer(WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean offerFirst(WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean offerLast(WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public void push(WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement set(int index, WhiletranStatement statement) {
+        throw immutable();
+    }
+
+    @Override
+    public void clear() {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement remove() {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement remove(int index) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement removeFirst() {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement removeLast() {
+        throw immutable();
+    }
+
+    @Override
+    public boolean removeFirstOccurrence(Object o) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean removeLastOccurrence(Object o) {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement poll() {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement pollFirst() {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement pollLast() {
+        throw immutable();
+    }
+
+    @Override
+    public WhiletranStatement pop() {
+        throw immutable();
+    }
+}
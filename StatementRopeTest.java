@@ -0,0 +1,66 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.NumberExpression;
+import csci366.lmc.whiletran.tree.WhiletranStatement;
+import csci366.lmc.whiletran.tree.WriteStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatementRopeTest {
+
+    @Test
+    public void testRandomSlicesMatchAList() {
+        Random random = new Random(9);
+        List<WhiletranStatement> expected = new ArrayList<>(statements(0, 500));
+        StatementRope rope = StatementRope.of(expected);
+        int next = 500;
+        for (int i = 0; i < 300; i++) {
+            int from = random.nextInt(expected.size() + 1);
+            int to = from + random.nextInt(Math.min(40, expected.size() - from) + 1);
+            List<WhiletranStatement> inserted = statements(next, random.nextInt(60));
+            next += inserted.size();
+
+            rope = rope.slice(0, from).append(StatementRope.of(inserted)).append(rope.slice(to, rope.size()));
+            expected.subList(from, to).clear();
+            expected.addAll(from, inserted);
+            assertEquals(expected, rope);
+            assertEquals(expected.size(), rope.size());
+        }
+        ListIterator<WhiletranStatement> backwards = rope.listIterator(rope.size());
+        for (int i = expected.size() - 1; i >= 0; i--) {
+            assertSame(expected.get(i), backwards.previous());
+        }
+        assertEquals(expected, new LinkedList<>(rope.stream().toList()));
+        assertEquals(expected.size() - 1, rope.indexOf(expected.get(expected.size() - 1)));
+    }
+
+    @Test
+    public void testCantBeChanged() {
+        StatementRope rope = StatementRope.of(statements(0, 3));
+        assertThrows(UnsupportedOperationException.class, () -> rope.add(new WriteStatement(new NumberExpression(1))));
+        assertThrows(UnsupportedOperationException.class, () -> rope.remove(0));
+        assertThrows(UnsupportedOperationException.class, rope::clear);
+        assertThrows(UnsupportedOperationException.class, () -> rope.iterator().remove());
+        // a clone is an ordinary list that can
+        @SuppressWarnings("unchecked")
+        LinkedList<WhiletranStatement> copy = (LinkedList<WhiletranStatement>) rope.clone();
+        copy.removeFirst();
+        assertEquals(2, copy.size());
+        assertEquals(3, rope.size());
+    }
+
+    private static List<WhiletranStatement> statements(int first, int count) {
+        List<WhiletranStatement> statements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            statements.add(new WriteStatement(new NumberExpression(first + i)));
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,443 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.*;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A program stored flat in int arrays instead of as a tree of records, for machine generated
+ * programs big enough that the records' pointer chasing and garbage start to matter.
+ *
+ * A node is an int handle. Each has a kind and up to three operands, whose meaning depends on the kind:
+ *
+ * - WRITE: the expression
+ * - ASSIGN: the variable id and the expression
+ * - IF: the condition, the THEN list and the ELSE list, or -1 when there's no ELSE
+ * - DO: the body list and the condition
+ * - NUMBER and BOOLEAN: the value, with TRUE as 1
+ * - VARIABLE: the variable id
+ * - ADD, SUB, GREATER_EQUAL and EQUAL: the left and right sides
+ *
+ * A list is also an int handle, naming a run of statement handles stored next to each other, and
+ * variables are interned to ids numbered from 0 in order of first appearance. The accessors below are
+ * the cursor: a pass switches on {@link #kind(int)} and follows the handles it needs, or implements
+ * {@link Visitor} and lets {@link #walk(int, Visitor)} go through every node in evaluation order.
+ */
+public final class WhiletranArena {
+
+    public static final int WRITE = 0;
+    public static final int ASSIGN = 1;
+    public static final int IF = 2;
+    public static final int DO = 3;
+    public static final int READ = 4;
+    public static final int NUMBER = 5;
+    public static final int BOOLEAN = 6;
+    public static final int VARIABLE = 7;
+    public static final int ADD = 8;
+    public static final int SUB = 9;
+    public static final int GREATER_EQUAL = 10;
+    public static final int EQUAL = 11;
+
+    /**
+     * Called for every node by {@link #walk(int, Visitor)}, children before the statement or
+     * expression that uses them except that an IF or DO is announced before its parts, so a pass can
+     * set up its state for the branches or the loop.
+     */
+    public interface Visitor {
+        default void enterIf(int node) { }
+
+        default void enterElse(int node) { }
+
+        default void leaveIf(int node) { }
+
+        default void enterDo(int node) { }
+
+        default void leaveDo(int node) { }
+
+        default void visitStatement(int node) { }
+
+        default void visitExpression(int node) { }
+    }
+
+    private final int[] kinds;
+    private final int[] first;
+    private final int[] second;
+    private final int[] third;
+    private final int nodeCount;
+    private final int[] listStarts;
+    private final int[] listSizes;
+    private final int listCount;
+    private final int[] children;
+    private final String[] names;
+    private final WhiletranStatement[] origins;
+    private final int root;
+
+    private WhiletranArena(Builder builder, int root) {
+        this.nodeCount = builder.nodeCount;
+        this.kinds = Arrays.copyOf(builder.kinds, nodeCount);
+        this.first = Arrays.copyOf(builder.first, nodeCount);
+        this.second = Arrays.copyOf(builder.second, nodeCount);
+        this.third = Arrays.copyOf(builder.third, nodeCount);
+        this.listCount = builder.listCount;
+        this.listStarts = Arrays.copyOf(builder.listStarts, listCount);
+        this.listSizes = Arrays.copyOf(builder.listSizes, listCount);
+        this.children = Arrays.copyOf(builder.children, builder.childCount);
+        this.names = builder.names.names();
+        this.origins = builder.origins == null ? null : Arrays.copyOf(builder.origins, nodeCount);
+        this.root = root;
+    }
+
+    public static WhiletranArena from(WhiletranProgram program) {
+        return from(program, false);
+    }
+
+    // keepOrigins remembers the record each statement came from, see origin(int)
+    public static WhiletranArena from(WhiletranProgram program, boolean keepOrigins) {
+        return from(program, new WhiletranSymbols(), keepOrigins);
+    }
+
+    /**
+     * Numbers the variables the way variables does, such as the ones {@link WhiletranParser} found,
+     * so ids stay the same from the parse on. A variable that's since been simplified away keeps its id
+     * and is never used.
+     */
+    public static WhiletranArena from(WhiletranProgram program, WhiletranSymbols variables, boolean keepOrigins) {
+        Builder builder = new Builder(keepOrigins, new WhiletranSymbols(variables));
+        return builder.build(builder.convert(program.children()));
+    }
+
+    // the list of top level statements
+    public int root() {
+        return root;
+    }
+
+    public int kind(int node) {
+        return kinds[node];
+    }
+
+    public boolean isStatement(int node) {
+        return kinds[node] <= DO;
+    }
+
+    public int size(int list) {
+        return listSizes[list];
+    }
+
+    public int statement(int list, int index) {
+        return children[listStarts[list] + index];
+    }
+
+    // of a WRITE or an ASSIGN
+    public int expression(int node) {
+        return kinds[node] == WRITE ? first[node] : second[node];
+    }
+
+    // of an ASSIGN or a VARIABLE
+    public int variable(int node) {
+        return first[node];
+    }
+
+    // of an IF or a DO
+    public int condition(int node) {
+        return kinds[node] == IF ? first[node] : second[node];
+    }
+
+    public int thenBody(int node) {
+        return second[node];
+    }
+
+    // -1 when the IF has no ELSE
+    public int elseBody(int node) {
+        return third[node];
+    }
+
+    public int body(int node) {
+        return first[node];
+    }
+
+    public int lhs(int node) {
+        return first[node];
+    }
+
+    public int rhs(int node) {
+        return second[node];
+    }
+
+    // of a NUMBER or a BOOLEAN
+    public int value(int node) {
+        return first[node];
+    }
+
+    public String name(int variable) {
+        return names[variable];
+    }
+
+    public int variableCount() {
+        return names.length;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int listCount() {
+        return listCount;
+    }
+
+    // the record a statement was converted from, or null if origins weren't kept
+    public WhiletranStatement origin(int node) {
+        return origins == null ? null : origins[node];
+    }
+
+    public void walk(int list, Visitor visitor) {
+        for (int i = 0; i < size(list); i++) {
+            walkStatement(statement(list, i), visitor);
+        }
+    }
+
+    private void walkStatement(int node, Visitor visitor) {
+        switch (kinds[node]) {
+            case WRITE, ASSIGN -> walkExpression(expression(node), visitor);
+            case IF -> {
+                visitor.enterIf(node);
+                walkExpression(condition(node), visitor);
+                walk(thenBody(node), visitor);
+                if (elseBody(node) >= 0) {
+                    visitor.enterElse(node);
+                    walk(elseBody(node), visitor);
+                }
+                visitor.leaveIf(node);
+            }
+            case DO -> {
+                visitor.enterDo(node);
+                walk(body(node), visitor);
+                walkExpression(condition(node), visitor);
+                visitor.leaveDo(node);
+            }
+            default -> throw new IllegalArgumentException("Not a statement: " + node);
+        }
+        visitor.visitStatement(node);
+    }
+
+    private void walkExpression(int node, Visitor visitor) {
+        if (kinds[node] >= ADD) {
+            walkExpression(lhs(node), visitor);
+            walkExpression(rhs(node), visitor);
+        }
+        visitor.visitExpression(node);
+    }
+
+    // back to records, mainly so the other backends can run a program built as an arena
+    public WhiletranProgram toProgram() {
+        return new WhiletranProgram(toStatements(root));
+    }
+
+    private LinkedList<WhiletranStatement> toStatements(int list) {
+        LinkedList<WhiletranStatement> statements = new LinkedList<>();
+        for (int i = 0; i < size(list); i++) {
+            statements.add(toStatement(statement(list, i)));
+        }
+        return statements;
+    }
+
+    private WhiletranStatement toStatement(int node) {
+        return switch (kinds[node]) {
+            case WRITE -> new WriteStatement(toExpression(expression(node)));
+            case ASSIGN -> new AssignmentStatement(name(variable(node)), toExpression(expression(node)));
+            case IF -> new IfStatement(toExpression(condition(node)), toStatements(thenBody(node)),
+                    elseBody(node) < 0 ? null : toStatements(elseBody(node)));
+            case DO -> new DoWhileLoopStatement(toStatements(body(node)), toExpression(condition(node)));
+            default -> throw new IllegalArgumentException("Not a statement: " + node);
+        };
+    }
+
+    private WhiletranExpression toExpression(int node) {
+        return switch (kinds[node]) {
+            case READ -> new ReadExpression();
+            case NUMBER -> new NumberExpression(value(node));
+            case BOOLEAN -> new BooleanExpression(value(node) != 0);
+            case VARIABLE -> new VariableExpression(name(variable(node)));
+            case ADD -> new AdditiveExpression("+", toExpression(lhs(node)), toExpression(rhs(node)));
+            case SUB -> new AdditiveExpression("-", toExpression(lhs(node)), toExpression(rhs(node)));
+            case GREATER_EQUAL -> new ConditionalExpression(">=", toExpression(lhs(node)), toExpression(rhs(node)));
+            case EQUAL -> new ConditionalExpression("==", toExpression(lhs(node)), toExpression(rhs(node)));
+            default -> throw new IllegalArgumentException("Not an expression: " + node);
+        };
+    }
+
+    /**
+     * Appends nodes to growing arrays. Children are built before their parents, and a list's
+     * statements are copied in one run when the list is made, so the statements can be built in any
+     * order before that.
+     */
+    public static final class Builder {
+
+        private int[] kinds = new int[64];
+        private int[] first = new int[64];
+        private int[] second = new int[64];
+        private int[] third = new int[64];
+        private int nodeCount = 0;
+        private int[] listStarts = new int[16];
+        private int[] listSizes = new int[16];
+        private int listCount = 0;
+        private int[] children = new int[64];
+        private int childCount = 0;
+        private final WhiletranSymbols names;
+        private WhiletranStatement[] origins;
+
+        public Builder() {
+            this(false, new WhiletranSymbols());
+        }
+
+        private Builder(boolean keepOrigins, WhiletranSymbols names) {
+            this.names = names;
+            if (keepOrigins) {
+                origins = new WhiletranStatement[64];
+            }
+        }
+
+        public int read() {
+            return node(READ, 0, 0, 0);
+        }
+
+        public int number(int value) {
+            return node(NUMBER, value, 0, 0);
+        }
+
+        public int bool(boolean value) {
+            return node(BOOLEAN, value ? 1 : 0, 0, 0);
+        }
+
+        public int variable(String name) {
+            return node(VARIABLE, names.intern(name), 0, 0);
+        }
+
+        // kind is one of ADD, SUB, GREATER_EQUAL or EQUAL
+        public int binary(int kind, int lhs, int rhs) {
+            if (kind < ADD || EQUAL < kind) {
+                throw new IllegalArgumentException("Not a binary kind: " + kind);
+            }
+            return node(kind, lhs, rhs, 0);
+        }
+
+        public int write(int expression) {
+            return node(WRITE, expression, 0, 0);
+        }
+
+        public int assign(String variable, int expression) {
+            return node(ASSIGN, names.intern(variable), expression, 0);
+        }
+
+        // elseBody is -1 for no ELSE
+        public int ifStatement(int condition, int thenBody, int elseBody) {
+            return node(IF, condition, thenBody, elseBody);
+        }
+
+        public int doWhile(int body, int condition) {
+            return node(DO, body, condition, 0);
+        }
+
+        public int list(int[] statements, int from, int count) {
+            if (childCount + count > children.length) {
+                children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + count));
+            }
+            System.arraycopy(statements, from, children, childCount, count);
+            if (listCount == listStarts.length) {
+                listStarts = Arrays.copyOf(listStarts, listCount * 2);
+                listSizes = Arrays.copyOf(listSizes, listCount * 2);
+            }
+            listStarts[listCount] = childCount;
+            listSizes[listCount] = count;
+            childCount += count;
+            return listCount++;
+        }
+
+        public int list(int... statements) {
+            return list(statements, 0, statements.length);
+        }
+
+        public WhiletranArena build(int root) {
+            return new WhiletranArena(this, root);
+        }
+
+        private int node(int kind, int a, int b, int c) {
+            if (nodeCount == kinds.length) {
+                int capacity = nodeCount * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+                third = Arrays.copyOf(third, capacity);
+                if (origins != null) {
+                    origins = Arrays.copyOf(origins, capacity);
+                }
+            }
+            kinds[nodeCount] = kind;
+            first[nodeCount] = a;
+            second[nodeCount] = b;
+            third[nodeCount] = c;
+            return nodeCount++;
+        }
+
+        private int convert(List<WhiletranStatement> statements) {
+            int[] nodes = new int[statements.size()];
+            int i = 0;
+            for (WhiletranStatement statement : statements) {
+                nodes[i++] = convert(statement);
+            }
+            return list(nodes, 0, nodes.length);
+        }
+
+        private int convert(WhiletranStatement statement) {
+            int node;
+            if (statement instanceof WriteStatement ws) {
+                node = write(convert(ws.expression()));
+            } else if (statement instanceof AssignmentStatement as) {
+                node = assign(as.variable(), convert(as.expression()));
+            } else if (statement instanceof IfStatement is) {
+                int condition = convert(is.condition());
+                int thenBody = convert(is.thenBody());
+                int elseBody = is.elseBody() == null ? -1 : convert(is.elseBody());
+                node = ifStatement(condition, thenBody, elseBody);
+            } else if (statement instanceof DoWhileLoopStatement dl) {
+                int body = convert(dl.body());
+                node = doWhile(body, convert(dl.condition()));
+            } else {
+                throw new IllegalArgumentException("Don't know how to convert " + statement);
+            }
+            if (origins != null) {
+                origins[node] = statement;
+            }
+            return node;
+        }
+
+        private int convert(WhiletranExpression expression) {
+            if (expression instanceof ReadExpression) {
+                return read();
+            } else if (expression instanceof NumberExpression ne) {
+                return number(ne.num());
+            } else if (expression instanceof BooleanExpression be) {
+                return bool(be.value());
+            } else if (expression instanceof VariableExpression ve) {
+                return variable(ve.name());
+            } else if (expression instanceof AdditiveExpression ae) {
+                int lhs = convert(ae.lhs());
+                return binary(ae.op().equals("+") ? ADD : SUB, lhs, convert(ae.rhs()));
+            } else if (expression instanceof ConditionalExpression ce) {
+                int kind;
+                if (ce.op().equals("==")) {
+                    kind = EQUAL;
+                } else if (ce.op().equals(">=")) {
+                    kind = GREATER_EQUAL;
+                } else {
+                    throw new IllegalArgumentException("Don't know how to convert " + ce);
+                }
+                int lhs = convert(ce.lhs());
+                return binary(kind, lhs, convert(ce.rhs()));
+            } else {
+                throw new IllegalArgumentException("Don't know how to convert " + expression);
+            }
+        }
+    }
+}
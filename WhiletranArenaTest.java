@@ -0,0 +1,135 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.WhiletranProgram;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranArenaTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(17);
+        for (int i = 0; i < 100; i++) {
+            StringBuilder src = new StringBuilder();
+            WhiletranJvmCompilerTest.generateStatements(random, src, 3, 0);
+            WhiletranProgram program = new WhiletranParser().parse(src.toString());
+            assertEquals(program, WhiletranArena.from(program).toProgram(), src.toString());
+        }
+    }
+
+    @Test
+    public void testGeneratesTheSameCodeAsTheTree() {
+        Random random = new Random(18);
+        for (int i = 0; i < 100; i++) {
+            StringBuilder src = new StringBuilder();
+            WhiletranJvmCompilerTest.generateStatements(random, src, 3, 0);
+            WhiletranProgram program = new WhiletranParser().parse(src.toString());
+            WhiletranArena arena = WhiletranArena.from(program);
+            assertEquals(new WhiletranCodeGenerator().generateCode(program),
+                    new WhiletranCodeGenerator().generateCode(arena), src.toString());
+        }
+    }
+
+    @Test
+    public void testVariablesKeepTheirParseIds() {
+        WhiletranParser.ParseResult parse = new WhiletranParser().parseWithLines(
+                "IF FALSE THEN X = 1 ENDIF B = 1 A = B + B C = A WRITE C + B");
+        // once each, a variable assigned from itself after the ones it reads
+        assertEquals(List.of("X", "B", "A", "C"), List.of(parse.variables().names()));
+
+        WhiletranProgram simplified = new WhiletranSimplifier().simplify(parse.program());
+        WhiletranArena arena = WhiletranArena.from(simplified, parse.variables(), false);
+        assertEquals(4, arena.variableCount());
+        for (int variable = 0; variable < arena.variableCount(); variable++) {
+            assertEquals(parse.variables().name(variable), arena.name(variable));
+        }
+        assertEquals(new WhiletranCodeGenerator().generateCode(simplified), new WhiletranCodeGenerator().generateCode(arena));
+    }
+
+    @Test
+    public void testBuilder() {
+        // X = READ  DO X = X - 1  WRITE X  WHILE X - 1 ENDDO
+        WhiletranArena.Builder builder = new WhiletranArena.Builder();
+        int read = builder.assign("X", builder.read());
+        int decrement = builder.assign("X", builder.binary(WhiletranArena.SUB, builder.variable("X"), builder.number(1)));
+        int write = builder.write(builder.variable("X"));
+        int condition = builder.binary(WhiletranArena.SUB, builder.variable("X"), builder.number(1));
+        int loop = builder.doWhile(builder.list(decrement, write), condition);
+        WhiletranArena arena = builder.build(builder.list(read, loop));
+
+        assertEquals(1, arena.variableCount());
+        assertEquals("X", arena.name(0));
+        assertEquals(2, arena.size(arena.root()));
+        assertEquals(WhiletranArena.DO, arena.kind(arena.statement(arena.root(), 1)));
+        assertEquals(new WhiletranParser().parse("X = READ DO X = X - 1 WRITE X WHILE X - 1 ENDDO"),
+                arena.toProgram());
+
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCodeGenerator().generateImage(arena).mailboxes());
+        machine.pushInputs(4);
+        machine.run();
+        assertArrayEquals(new int[]{3, 2, 1, 0}, machine.getOutput());
+    }
+
+    @Test
+    public void testWalkVisitsEveryNodeInOrder() {
+        WhiletranArena arena = WhiletranArena.from(new WhiletranParser().parse("""
+                A = READ
+                IF A == 1 THEN WRITE A ELSE WRITE 2 ENDIF
+                DO A = A - 1 WHILE A ENDDO"""));
+        StringBuilder trace = new StringBuilder();
+        arena.walk(arena.root(), new WhiletranArena.Visitor() {
+            @Override
+            public void enterIf(int node) {
+                trace.append("if ");
+            }
+
+            @Override
+            public void enterElse(int node) {
+                trace.append("else ");
+            }
+
+            @Override
+            public void enterDo(int node) {
+                trace.append("do ");
+            }
+
+            @Override
+            public void visitStatement(int node) {
+                trace.append("s").append(arena.kind(node)).append(' ');
+            }
+
+            @Override
+            public void visitExpression(int node) {
+                trace.append("e").append(arena.kind(node)).append(' ');
+            }
+        });
+        assertEquals("e4 s1 if e7 e5 e11 e7 s0 else e5 s0 s2 do e7 e5 e9 s1 e7 s3 ", trace.toString());
+        assertEquals(arena.nodeCount(), trace.toString().split("[es]\\d").length - 1);
+    }
+
+    @Test
+    public void testLargeProgram() {
+        // far more statements than fit in memory, only the generator and allocator's walks are checked
+        WhiletranArena.Builder builder = new WhiletranArena.Builder();
+        int count = 200_000;
+        int[] statements = new int[count];
+        for (int i = 0; i < count; i++) {
+            String variable = "V" + (i % 50);
+            statements[i] = builder.assign(variable,
+                    builder.binary(WhiletranArena.ADD, builder.variable(variable), builder.number(1)));
+        }
+        WhiletranArena arena = builder.build(builder.list(statements, 0, count));
+        assertEquals(count * 4, arena.nodeCount());
+        assertEquals(50, arena.variableCount());
+
+        WhiletranCodeGenerator generator = new WhiletranCodeGenerator();
+        WhiletranCodeGenerator.Generation generation = generator.generate(arena);
+        assertEquals(count * 3 + 1 + 1 + 50, generation.instructions().size());
+        assertEquals(50, generation.allocation().cellCount());
+    }
+}
@@ -0,0 +1,71 @@
+package csci366.lmc.whiletran;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles many sources in parallel through one shared {@link WhiletranCompiler}, so repeated
+ * sources hit its cache. Results come back in the same order as the sources, with a source that
+ * fails to compile (usually a {@link WhiletranParseException}) getting its error instead of an image.
+ */
+public class WhiletranBatchCompiler {
+
+    public record Result(LmcImage image, RuntimeException error) {
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final WhiletranCompiler compiler;
+
+    public WhiletranBatchCompiler() {
+        this(ForkJoinPool.commonPool(), new WhiletranCompiler());
+    }
+
+    public WhiletranBatchCompiler(ForkJoinPool pool, WhiletranCompiler compiler) {
+        this.pool = pool;
+        this.compiler = compiler;
+    }
+
+    public List<Result> compileAll(List<String> sources) {
+        List<Callable<Result>> tasks = new ArrayList<>(sources.size());
+        for (String src : sources) {
+            tasks.add(() -> compile(src));
+        }
+
+        List<Result> results = new ArrayList<>(sources.size());
+        for (Future<Result> future : pool.invokeAll(tasks)) {
+            results.add(result(future));
+        }
+        return results;
+    }
+
+    private Result compile(String src) {
+        try {
+            return new Result(compiler.compile(src), null);
+        } catch (RuntimeException e) {
+            return new Result(null, e);
+        }
+    }
+
+    // compile() catches what a source can throw, so a failure here is an Error or an interrupt
+    private static Result result(Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
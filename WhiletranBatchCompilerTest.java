@@ -0,0 +1,75 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.WhiletranProgram;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranBatchCompilerTest {
+
+    @Test
+    public void testResultsAreInSourceOrder() {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            sources.add(i % 10 == 9 ? "WRITE" : "X = READ WRITE X + " + (i % 500));
+        }
+
+        List<WhiletranBatchCompiler.Result> results = new WhiletranBatchCompiler().compileAll(sources);
+
+        assertEquals(2000, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            WhiletranBatchCompiler.Result result = results.get(i);
+            if (i % 10 == 9) {
+                assertFalse(result.succeeded());
+                assertInstanceOf(WhiletranParseException.class, result.error());
+            } else {
+                assertTrue(result.succeeded());
+                LmcMachine machine = new LmcMachine();
+                machine.load(result.image().mailboxes());
+                machine.pushInputs(1);
+                machine.run();
+                assertArrayEquals(new int[]{1 + i % 500}, machine.getOutput());
+            }
+        }
+    }
+
+    @Test
+    public void testRepeatedSourcesShareTheCache() {
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        WhiletranBatchCompiler batch = new WhiletranBatchCompiler(new ForkJoinPool(4), compiler);
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            sources.add(i % 2 == 0 ? LmcMachineTest.DIVISION : LmcMachineTest.FIB);
+        }
+
+        List<WhiletranBatchCompiler.Result> results = batch.compileAll(sources);
+
+        assertEquals(400, compiler.getHits() + compiler.getMisses());
+        // each source can miss once per thread that reached it before the first compile finished
+        assertTrue(compiler.getHits() >= 400 - 2 * 4);
+        for (WhiletranBatchCompiler.Result result : results) {
+            assertTrue(result.succeeded());
+        }
+    }
+
+    @Test
+    public void testParserAndGeneratorCanBeShared() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        String[] sources = {LmcMachineTest.DIVISION, LmcMachineTest.FIB, "X = READ IF X == 1 THEN WRITE 2 ELSE WRITE 3 ENDIF"};
+        String[] expected = new String[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            expected[i] = new WhiletranCodeGenerator().generateCode(new WhiletranParser().parse(sources[i]));
+        }
+
+        IntStream.range(0, 3000).parallel().forEach(i -> {
+            WhiletranProgram program = parser.parse(sources[i % sources.length]);
+            assertEquals(expected[i % sources.length], codeGen.generateCode(program));
+        });
+    }
+}
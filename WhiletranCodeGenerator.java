@@ -1,121 +1,577 @@
 package csci366.lmc.whiletran;
 
+import csci366.lmc.emulator.LittleManComputer;
 import csci366.lmc.whiletran.tree.*;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Generates from a {@link WhiletranArena}, converting record trees to one first.
+ *
+ * Everything one run of the generator needs lives in its own Context, so a generator can be reused
+ * and shared between threads once its options are set. Labels and operands are int symbols while the
+ * code is generated and laid out, and only get their names when the instructions are handed back.
+ */
 public class WhiletranCodeGenerator {
 
-    int labelNum = 0;
-    Set<String> variables = new LinkedHashSet<>();
-    Set<Integer> numbers = new LinkedHashSet<>();
+    boolean recordOrigins = false;
+    boolean shareMailboxes = true;
+    int banks = 1;
+
+    // the code and which mailbox each variable went in, null when mailboxes aren't shared
+    public record Generation(List<LmcInstruction> instructions, MailboxAllocator.Allocation allocation) {
+    }
+
+    // tag every generated instruction with the statement it came from, for source mapped profiling
+    public void setRecordOrigins(boolean recordOrigins) {
+        this.recordOrigins = recordOrigins;
+    }
 
     public String generateCode(WhiletranProgram program) {
-        StringBuilder code = new StringBuilder();
-        generateCode(program, code);
-        code.append("HLT\n");
-        generateData(code);
-        return code.toString();
+        return LmcInstruction.toListing(generateInstructions(program));
     }
 
-    private void generateCode(WhiletranElement elt, StringBuilder code) {
-        if(elt instanceof WhiletranProgram zp) {
-            for (WhiletranStatement child : zp.children()) {
-                generateCode(child, code);
-            }
-        } else if(elt instanceof WriteStatement ws) {
-            generateCode(ws.expression(), code);
-            code.append("OUT\n");
-        } else if(elt instanceof AssignmentStatement as) {
-            generateCode(as.expression(), code);
-            variables.add(as.variable());
-            code.append("STA ").append(as.variable()).append("\n");
-
-        } else if(elt instanceof IfStatement is) {
-            String elseLabel = nextLabel();
-            String endLabel = nextLabel();
-            generateCode(is.condition(), code);
-            code.append("BRZ ").append(elseLabel).append("\n");
-            generateCode(is.thenBody(), code);
-            code.append("BRA ").append(endLabel).append("\n");
-            code.append(elseLabel).append(" ").append(genNoOp()).append("\n");
-            if (is.elseBody() != null) {
-                generateCode(is.elseBody(), code);
-            }
-            code.append(endLabel).append(" ").append(genNoOp()).append("\n");
-
-        } else if(elt instanceof DoWhileLoopStatement dl) {
-            String startLabel = nextLabel();
-            String endLabel = nextLabel();
-            code.append(startLabel).append(" ").append(genNoOp()).append("\n");
-            generateCode(dl.body(), code);
-            generateCode(dl.condition(), code);
-            code.append("BRP ").append(startLabel).append("\n");
-            code.append(endLabel).append(" ").append(genNoOp()).append("\n");
-
-        } else if(elt instanceof ConditionalExpression ce) {
-            generateCode(ce.lhs(), code);
-            code.append("SUB ").append(getLabelFor(ce.rhs())).append("\n");
-
-        } else if(elt instanceof ReadExpression) {
-            code.append("INP\n");
-
-        } else if(elt instanceof NumberExpression ne) {
-            code.append("LDA ").append(getLabelFor(ne.num())).append("\n");
-
-        } else if(elt instanceof BooleanExpression be) {
-            int val = be.value() ? 1 : 0;
-            code.append("LDA ").append(getLabelFor(val)).append("\n");
-
-        } else if(elt instanceof VariableExpression ie) {
-            variables.add(ie.name());
-            code.append("LDA ").append(ie.name()).append("\n");
-
-        } else if(elt instanceof AdditiveExpression ae) {
-            generateCode(ae.lhs(), code);
-            if (ae.op().equals("+")) {
-                code.append("ADD ").append(getLabelFor(ae.rhs())).append("\n");
-            } else {
-                code.append("SUB ").append(getLabelFor(ae.rhs())).append("\n");
-            }
-        } else {
-            throw new IllegalArgumentException("Don't know how to generate code for " + elt);
-        }
+    // assembles directly into mailboxes, the text listing is still available from the image
+    public LmcImage generateImage(WhiletranProgram program) {
+        return new LmcImageWriter(banks).write(generateInstructions(program));
     }
 
-    // adding zero is a no-op, used for labels
-    private String genNoOp() {
-        return " ADD " + getLabelFor(0);
+    // images for the extended machine with this many banks, see LmcImageWriter(int)
+    public void setBanks(int banks) {
+        this.banks = LmcImageWriter.checkBanks(banks);
     }
 
-    private String getLabelFor(int num) {
-        numbers.add(num);
-        return "N_" + ((num < 0) ? "NEG_" : "") + Math.abs(num);
+    // let variables whose live ranges don't overlap share a mailbox, see MailboxAllocator
+    public void setShareMailboxes(boolean shareMailboxes) {
+        this.shareMailboxes = shareMailboxes;
     }
 
-    private String getLabelFor(WhiletranExpression rhs) {
-        String label;
-        if(rhs instanceof VariableExpression ie) {
-            label = ie.name();
-        } else if (rhs instanceof NumberExpression ne) {
-            label = getLabelFor(ne.num());
-        } else {
-            throw new IllegalStateException("Bad element : " + rhs);
-        }
-        return label;
+    public List<LmcInstruction> generateInstructions(WhiletranProgram program) {
+        return generateInstructions(WhiletranArena.from(program, recordOrigins));
+    }
+
+    public String generateCode(WhiletranArena arena) {
+        return LmcInstruction.toListing(generateInstructions(arena));
+    }
+
+    public LmcImage generateImage(WhiletranArena arena) {
+        return new LmcImageWriter(banks).write(generateInstructions(arena));
+    }
+
+    // the tree is walked as an arena either way, so very large programs can skip the records altogether
+    public List<LmcInstruction> generateInstructions(WhiletranArena arena) {
+        return generate(arena).instructions();
+    }
+
+    public Generation generate(WhiletranProgram program) {
+        return generate(WhiletranArena.from(program, recordOrigins));
     }
 
-    private String nextLabel() {
-        return "LABEL_" + labelNum++;
+    public Generation generate(WhiletranArena arena) {
+        Context context = new Context(arena, shareMailboxes ? new MailboxAllocator().allocate(arena) : null);
+        context.generateList(arena.root());
+        context.emit("HLT", -1);
+        context.layout();
+        return new Generation(context.toInstructions(), context.allocation);
     }
 
-    private void generateData(StringBuilder code) {
-        for (Integer number : numbers) {
-            code.append(getLabelFor(number)).append(" DAT ").append(number).append("\n");
+    // the kinds of symbol, see Context
+    private static final int CELL = 0;
+    private static final int NUMBER = 1;
+    private static final int TEMP = 2;
+    private static final int LABEL = 3;
+
+    /*
+     * The state of a single run. Every label and operand is an int symbol: a variable's mailbox, a
+     * constant, a temporary or a branch label, numbered as they're first needed. Instructions are
+     * kept in parallel arrays of symbols until the end, so tracking the accumulator and laying out
+     * branches compare ints, and each symbol's name is built once, when the instructions are made.
+     */
+    private final class Context {
+
+        final WhiletranArena arena;
+        final MailboxAllocator.Allocation allocation;
+        int labelNum = 0;
+        WhiletranStatement origin;
+
+        // per symbol its kind, its value (the constant, the temporary's number or the label's number),
+        // its name once built and the label it was merged into, or -1
+        int[] symbolKinds = new int[64];
+        int[] symbolValues = new int[64];
+        String[] symbolNames = new String[64];
+        int[] aliases = new int[64];
+        int symbolCount = 0;
+        // symbols by constant, by arena variable id, by the id of the variable a mailbox is named after
+        // and by temporary number, -1 until needed
+        final int[] numberSymbols = new int[LittleManComputer.MAX_VALUE - LittleManComputer.MIN_VALUE + 1];
+        final int[] variableSymbols;
+        final int[] cellSymbols;
+        int[] tempSymbols = new int[4];
+        // the DAT mailboxes in order of first use
+        int[] numbers = new int[16];
+        int numberCount = 0;
+        int[] variables = new int[16];
+        int variableCount = 0;
+
+        // the generated instructions, -1 for no label or operand
+        String[] mnemonics = new String[256];
+        int[] labels = new int[256];
+        int[] operands = new int[256];
+        WhiletranStatement[] origins;
+        int count = 0;
+
+        // mailboxes known to hold the same value as the accumulator
+        int[] accumulator = new int[8];
+        int accumulatorSize = 0;
+        // labels waiting for the next instruction
+        int[] pendingLabels = new int[4];
+        int pendingCount = 0;
+        final EvaluationOrder order;
+        int tempDepth = 0;
+        int tempCount = 0;
+
+        Context(WhiletranArena arena, MailboxAllocator.Allocation allocation) {
+            this.arena = arena;
+            this.allocation = allocation;
+            this.order = new EvaluationOrder(arena);
+            this.variableSymbols = new int[arena.variableCount()];
+            this.cellSymbols = new int[arena.variableCount()];
+            Arrays.fill(variableSymbols, -1);
+            Arrays.fill(cellSymbols, -1);
+            Arrays.fill(numberSymbols, -1);
+            Arrays.fill(tempSymbols, -1);
+            if (recordOrigins) {
+                origins = new WhiletranStatement[256];
+            }
         }
-        for (String variable : variables) {
-            code.append(variable).append(" DAT 0\n");
+
+        private void generateList(int list) {
+            for (int i = 0; i < arena.size(list); i++) {
+                int statement = arena.statement(list, i);
+                WhiletranStatement outer = origin;
+                origin = arena.origin(statement);
+                generateCode(statement);
+                origin = outer;
+            }
+        }
+
+        private void generateCode(int node) {
+            switch (arena.kind(node)) {
+                case WhiletranArena.WRITE -> {
+                    generateCode(arena.expression(node));
+                    emit("OUT", -1);
+                }
+                case WhiletranArena.ASSIGN -> {
+                    generateCode(arena.expression(node));
+                    emit("STA", variableSymbol(arena.variable(node)));
+                }
+                case WhiletranArena.IF -> generateIf(node);
+                case WhiletranArena.DO -> {
+                    int startLabel = nextLabel();
+                    placeLabel(startLabel);
+                    generateList(arena.body(node));
+                    // a plain value keeps the loop going while it's >= 0
+                    generateBranch(arena.condition(node), true, startLabel, "BRP", true);
+                }
+                case WhiletranArena.GREATER_EQUAL, WhiletranArena.EQUAL -> {
+                    // as a value a comparison is 1 or 0
+                    int trueLabel = nextLabel();
+                    int endLabel = nextLabel();
+                    generateBranch(node, true, trueLabel, null, false);
+                    load(numberSymbol(0));
+                    emit("BRA", endLabel);
+                    placeLabel(trueLabel);
+                    load(numberSymbol(1));
+                    placeLabel(endLabel);
+                }
+                case WhiletranArena.READ -> emit("INP", -1);
+                case WhiletranArena.NUMBER, WhiletranArena.BOOLEAN -> load(numberSymbol(arena.value(node)));
+                case WhiletranArena.VARIABLE -> load(variableSymbol(arena.variable(node)));
+                case WhiletranArena.ADD -> generateOperation("ADD", node, arena.lhs(node), arena.rhs(node));
+                case WhiletranArena.SUB -> generateOperation("SUB", node, arena.lhs(node), arena.rhs(node));
+                default -> throw new IllegalArgumentException("Don't know how to generate code for node " + node);
+            }
+        }
+
+        // comparing with 0 needs no SUB, the left side is tested as it is
+        private void generateDifference(int comparison) {
+            int rhs = arena.rhs(comparison);
+            if (order.isZero(rhs)) {
+                generateCode(arena.lhs(comparison));
+            } else {
+                generateOperation("SUB", comparison, arena.lhs(comparison), rhs);
+            }
+        }
+
+        /*
+         * Leaves lhs op rhs in the accumulator, in the order described in EvaluationOrder: a right side
+         * that isn't a variable or a number is spilled to a temporary while the left side is worked out.
+         * Expressions have no side effects, so the order doesn't change the result.
+         */
+        private void generateOperation(String mnemonic, int node, int lhs, int rhs) {
+            if (order.commutes(node) && order.swaps(lhs, rhs)) {
+                int swap = lhs;
+                lhs = rhs;
+                rhs = swap;
+            }
+            if (order.isOperand(rhs)) {
+                generateCode(lhs);
+                emit(mnemonic, getOperandFor(rhs));
+                return;
+            }
+            generateCode(rhs);
+            int temp = takeTemp(node);
+            emit("STA", temp);
+            generateCode(lhs);
+            emit(mnemonic, temp);
+            tempDepth--;
+        }
+
+        /*
+         * The mailbox the node spills its right side to. When mailboxes are shared the allocator gave
+         * every spill a live range of its own, so it may reuse a variable's mailbox or a temporary of an
+         * earlier statement. Otherwise temporaries are a stack, shared by every statement, so the program
+         * has only as many as its most demanding expression.
+         */
+        private int takeTemp(int node) {
+            int depth = tempDepth++;
+            if (allocation != null) {
+                int variable = allocation.tempSharesWith(node);
+                if (variable >= 0) {
+                    return cellSymbol(variable);
+                }
+                depth = allocation.tempMailbox(node);
+            }
+            tempCount = Math.max(tempCount, depth + 1);
+            if (depth >= tempSymbols.length) {
+                int length = tempSymbols.length;
+                tempSymbols = Arrays.copyOf(tempSymbols, Math.max(length * 2, depth + 1));
+                Arrays.fill(tempSymbols, length, tempSymbols.length, -1);
+            }
+            if (tempSymbols[depth] < 0) {
+                tempSymbols[depth] = newSymbol(TEMP, depth, null);
+            }
+            return tempSymbols[depth];
+        }
+
+        /*
+         * A plain value as an IF condition is true when it isn't 0. When the condition can only jump when
+         * it's true (a comparison) and there is an ELSE, the ELSE is laid out first so that each path
+         * takes one branch instead of two.
+         */
+        private void generateIf(int node) {
+            int condition = arena.condition(node);
+            boolean hasElse = arena.elseBody(node) >= 0 && arena.size(arena.elseBody(node)) > 0;
+            if (arena.kind(condition) == WhiletranArena.BOOLEAN) {
+                if (arena.value(condition) != 0) {
+                    generateList(arena.thenBody(node));
+                } else if (hasElse) {
+                    generateList(arena.elseBody(node));
+                }
+                return;
+            }
+
+            int endLabel = nextLabel();
+            if (hasElse && order.isComparison(condition)) {
+                int thenLabel = nextLabel();
+                generateBranch(condition, true, thenLabel, "BRZ", false);
+                generateList(arena.elseBody(node));
+                emit("BRA", endLabel);
+                placeLabel(thenLabel);
+                generateList(arena.thenBody(node));
+            } else {
+                int elseLabel = hasElse ? nextLabel() : endLabel;
+                generateBranch(condition, false, elseLabel, "BRZ", false);
+                generateList(arena.thenBody(node));
+                if (hasElse) {
+                    emit("BRA", endLabel);
+                    placeLabel(elseLabel);
+                    generateList(arena.elseBody(node));
+                }
+            }
+            placeLabel(endLabel);
+        }
+
+        /*
+         * Jumps to target when the condition is jumpIf and falls through otherwise. A comparison
+         * subtracts its sides and tests the difference with BRZ (==) or BRP (>=). Anything else is
+         * tested as a plain value with plainBranch, which jumps when the value is plainJumpsIf. When the
+         * single branch jumps the wrong way it hops over a BRA instead.
+         */
+        private void generateBranch(int condition, boolean jumpIf, int target, String plainBranch, boolean plainJumpsIf) {
+            if (arena.kind(condition) == WhiletranArena.BOOLEAN) {
+                if ((arena.value(condition) != 0) == jumpIf) {
+                    emit("BRA", target);
+                }
+                return;
+            }
+
+            String branch;
+            boolean jumpsIf;
+            if (order.isComparison(condition)) {
+                generateDifference(condition);
+                branch = arena.kind(condition) == WhiletranArena.EQUAL ? "BRZ" : "BRP";
+                jumpsIf = true;
+            } else {
+                generateCode(condition);
+                branch = plainBranch;
+                jumpsIf = plainJumpsIf;
+            }
+
+            if (jumpsIf == jumpIf) {
+                emit(branch, target);
+            } else {
+                int skipLabel = nextLabel();
+                emit(branch, skipLabel);
+                emit("BRA", target);
+                placeLabel(skipLabel);
+            }
+        }
+
+        // labels that ended up on the same instruction as another are merged into the first
+        private void emit(String mnemonic, int operand) {
+            int label = -1;
+            if (pendingCount > 0) {
+                label = pendingLabels[0];
+                for (int i = 1; i < pendingCount; i++) {
+                    aliases[pendingLabels[i]] = label;
+                }
+                pendingCount = 0;
+            }
+            if (count == mnemonics.length) {
+                int capacity = count * 2;
+                mnemonics = Arrays.copyOf(mnemonics, capacity);
+                labels = Arrays.copyOf(labels, capacity);
+                operands = Arrays.copyOf(operands, capacity);
+                if (origins != null) {
+                    origins = Arrays.copyOf(origins, capacity);
+                }
+            }
+            mnemonics[count] = mnemonic;
+            labels[count] = label;
+            operands[count] = operand;
+            if (origins != null) {
+                origins[count] = origin;
+            }
+            count++;
+            trackAccumulator(mnemonic, operand);
+        }
+
+        // the label goes on the next instruction emitted
+        private void placeLabel(int label) {
+            if (pendingCount == pendingLabels.length) {
+                pendingLabels = Arrays.copyOf(pendingLabels, pendingCount * 2);
+            }
+            pendingLabels[pendingCount++] = label;
+            // other paths jump here, so nothing is known about the accumulator
+            accumulatorSize = 0;
+        }
+
+        // skips the load if the accumulator already holds that mailbox's value
+        private void load(int mailbox) {
+            for (int i = 0; i < accumulatorSize; i++) {
+                if (accumulator[i] == mailbox) {
+                    return;
+                }
+            }
+            emit("LDA", mailbox);
+        }
+
+        // only STA writes memory, and it leaves the accumulator equal to the mailbox it wrote, so that's
+        // enough to keep the set correct through straight line code
+        private void trackAccumulator(String mnemonic, int operand) {
+            switch (mnemonic) {
+                case "LDA" -> {
+                    accumulatorSize = 0;
+                    holds(operand);
+                }
+                case "STA" -> holds(operand);
+                case "OUT", "BRZ", "BRP" -> { } // the fall through path still has the same accumulator
+                default -> accumulatorSize = 0;
+            }
+        }
+
+        private void holds(int mailbox) {
+            if (accumulatorSize == accumulator.length) {
+                accumulator = Arrays.copyOf(accumulator, accumulatorSize * 2);
+            }
+            accumulator[accumulatorSize++] = mailbox;
+        }
+
+        /*
+         * Removes branches to the next instruction and then labels nothing jumps to. Going backwards,
+         * the instruction after each one is already final, so removing a branch can't leave an earlier
+         * one jumping to the next instruction unnoticed: its operand resolves through the removed
+         * branch's label, which is merged into the label of the instruction it fell through to. The
+         * kept instructions are then compacted in one pass with their branches resolved.
+         */
+        private void layout() {
+            boolean[] dropped = new boolean[count];
+            int next = -1;
+            for (int i = count - 1; i >= 0; i--) {
+                if (isBranch(mnemonics[i]) && next >= 0 && labels[next] >= 0 && resolve(operands[i]) == labels[next]) {
+                    dropped[i] = true;
+                    if (labels[i] >= 0) {
+                        aliases[labels[i]] = labels[next];
+                    }
+                } else {
+                    next = i;
+                }
+            }
+
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (dropped[i]) {
+                    continue;
+                }
+                mnemonics[kept] = mnemonics[i];
+                labels[kept] = labels[i];
+                operands[kept] = isBranch(mnemonics[i]) ? resolve(operands[i]) : operands[i];
+                if (origins != null) {
+                    origins[kept] = origins[i];
+                }
+                kept++;
+            }
+            count = kept;
+
+            boolean[] targets = new boolean[symbolCount];
+            for (int i = 0; i < count; i++) {
+                if (isBranch(mnemonics[i])) {
+                    targets[operands[i]] = true;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (labels[i] >= 0 && !targets[labels[i]]) {
+                    labels[i] = -1;
+                }
+            }
+        }
+
+        // follows merged labels to the one actually placed, pointing each one passed straight at it
+        private int resolve(int label) {
+            int placed = label;
+            while (aliases[placed] >= 0) {
+                placed = aliases[placed];
+            }
+            while (aliases[label] >= 0) {
+                int merged = aliases[label];
+                aliases[label] = placed;
+                label = merged;
+            }
+            return placed;
+        }
+
+        private static boolean isBranch(String mnemonic) {
+            return switch (mnemonic) {
+                case "BRA", "BRZ", "BRP" -> true;
+                default -> false;
+            };
+        }
+
+        private int numberSymbol(int num) {
+            if (num < LittleManComputer.MIN_VALUE || LittleManComputer.MAX_VALUE < num) {
+                throw new IllegalArgumentException("Number out of range: " + num);
+            }
+            int index = num - LittleManComputer.MIN_VALUE;
+            if (numberSymbols[index] < 0) {
+                numberSymbols[index] = newSymbol(NUMBER, num, null);
+                numbers = append(numbers, numberCount++, numberSymbols[index]);
+            }
+            return numberSymbols[index];
+        }
+
+        // a variable that's always 0 reads the zero constant, the rest their mailbox
+        private int variableSymbol(int variable) {
+            if (variableSymbols[variable] >= 0) {
+                return variableSymbols[variable];
+            }
+            int cell = allocation == null ? variable : allocation.cellFor(variable);
+            int symbol = cell < 0 ? numberSymbol(0) : cellSymbol(cell);
+            variableSymbols[variable] = symbol;
+            return symbol;
+        }
+
+        // the mailbox named after the first variable put in it
+        private int cellSymbol(int cell) {
+            if (cellSymbols[cell] < 0) {
+                cellSymbols[cell] = newSymbol(CELL, cell, arena.name(cell));
+                variables = append(variables, variableCount++, cellSymbols[cell]);
+            }
+            return cellSymbols[cell];
+        }
+
+        private int getOperandFor(int operand) {
+            return switch (arena.kind(operand)) {
+                case WhiletranArena.VARIABLE -> variableSymbol(arena.variable(operand));
+                case WhiletranArena.NUMBER, WhiletranArena.BOOLEAN -> numberSymbol(arena.value(operand));
+                default -> throw new IllegalStateException("Bad element : node " + operand);
+            };
+        }
+
+        private int nextLabel() {
+            return newSymbol(LABEL, labelNum++, null);
+        }
+
+        private int newSymbol(int kind, int value, String name) {
+            if (symbolCount == symbolKinds.length) {
+                int capacity = symbolCount * 2;
+                symbolKinds = Arrays.copyOf(symbolKinds, capacity);
+                symbolValues = Arrays.copyOf(symbolValues, capacity);
+                symbolNames = Arrays.copyOf(symbolNames, capacity);
+                aliases = Arrays.copyOf(aliases, capacity);
+            }
+            symbolKinds[symbolCount] = kind;
+            symbolValues[symbolCount] = value;
+            symbolNames[symbolCount] = name;
+            aliases[symbolCount] = -1;
+            return symbolCount++;
+        }
+
+        // built the first time it's asked for, null for no symbol
+        private String nameOf(int symbol) {
+            if (symbol < 0) {
+                return null;
+            }
+            String name = symbolNames[symbol];
+            if (name == null) {
+                int value = symbolValues[symbol];
+                name = switch (symbolKinds[symbol]) {
+                    case NUMBER -> "N_" + ((value < 0) ? "NEG_" : "") + Math.abs(value);
+                    case TEMP -> "T_" + value;
+                    default -> "LABEL_" + value;
+                };
+                symbolNames[symbol] = name;
+            }
+            return name;
+        }
+
+        // the instructions followed by the data: constants, then variables, then temporaries
+        private List<LmcInstruction> toInstructions() {
+            List<LmcInstruction> code = new ArrayList<>(count + numberCount + variableCount + tempCount);
+            for (int i = 0; i < count; i++) {
+                code.add(new LmcInstruction(nameOf(labels[i]), mnemonics[i], nameOf(operands[i]),
+                        origins == null ? null : origins[i]));
+            }
+            for (int i = 0; i < numberCount; i++) {
+                code.add(new LmcInstruction(nameOf(numbers[i]), "DAT", String.valueOf(symbolValues[numbers[i]])));
+            }
+            for (int i = 0; i < variableCount; i++) {
+                code.add(new LmcInstruction(nameOf(variables[i]), "DAT", "0"));
+            }
+            for (int i = 0; i < tempCount; i++) {
+                code.add(new LmcInstruction(nameOf(tempSymbols[i]), "DAT", "0"));
+            }
+            return code;
+        }
+
+        private static int[] append(int[] array, int size, int value) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+            }
+            array[size] = value;
+            return array;
         }
     }
 }
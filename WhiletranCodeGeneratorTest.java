@@ -1,9 +1,13 @@
 package csci366.lmc.whiletran;
 
+import csci366.lmc.asm.LittleManAssembler;
 import csci366.lmc.whiletran.tree.WhiletranProgram;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class WhiletranCodeGeneratorTest {
 
@@ -59,7 +63,6 @@ public class WhiletranCodeGeneratorTest {
         assertEquals("""
                 LDA N_11
                 STA X
-                LDA X
                 OUT
                 HLT
                 N_11 DAT 11
@@ -117,13 +120,11 @@ public class WhiletranCodeGeneratorTest {
         String asm = codeGen.generateCode(program);
         assertEquals("""
                 LDA N_1
-                SUB N_0
                 BRZ LABEL_0
                 LDA N_0
                 BRA LABEL_1
                 LABEL_0 LDA N_1
-                LABEL_1 ADD N_0
-                OUT
+                LABEL_1 OUT
                 HLT
                 N_1 DAT 1
                 N_0 DAT 0
@@ -138,13 +139,11 @@ public class WhiletranCodeGeneratorTest {
         String asm = codeGen.generateCode(program);
         assertEquals("""
                 LDA N_1
-                SUB N_0
                 BRP LABEL_0
                 LDA N_0
                 BRA LABEL_1
                 LABEL_0 LDA N_1
-                LABEL_1 ADD N_0
-                OUT
+                LABEL_1 OUT
                 HLT
                 N_1 DAT 1
                 N_0 DAT 0
@@ -168,4 +167,282 @@ public class WhiletranCodeGeneratorTest {
                 N_0 DAT 0
                 """, asm);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGenerateImage() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("X = 11 WRITE X");
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        LmcImage image = codeGen.generateImage(program);
+        assertEquals(504, image.mailboxes()[0]); // LDA N_11
+        assertEquals(305, image.mailboxes()[1]); // STA X
+        assertEquals(902, image.mailboxes()[2]); // OUT
+        assertEquals(0, image.mailboxes()[3]);   // HLT
+        assertEquals(11, image.mailboxes()[4]);  // N_11 DAT 11
+        assertEquals(5, image.addressOf("X"));
+        assertEquals("""
+                LDA N_11
+                STA X
+                OUT
+                HLT
+                N_11 DAT 11
+                X DAT 0
+                """, image.listing());
+    }
+
+    @Test
+    public void testGenerateImageMatchesAssembler() {
+        WhiletranParser parser = new WhiletranParser();
+        String src = "A = READ B = READ DIV = -1 DO DIV = DIV + 1 A = A - B WHILE A ENDDO WRITE DIV";
+        String asm = new WhiletranCodeGenerator().generateCode(parser.parse(src));
+        LmcImage image = new WhiletranCodeGenerator().generateImage(parser.parse(src));
+        assertArrayEquals(new LittleManAssembler().assemble(asm), image.mailboxes());
+    }
+
+    @Test
+    public void testAccumulatorIsTrackedAcrossStatements() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("X = READ Y = X WRITE Y WRITE X WRITE 1 WRITE 1");
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        codeGen.setShareMailboxes(false);
+        String asm = codeGen.generateCode(program);
+        assertEquals("""
+                INP
+                STA X
+                STA Y
+                OUT
+                OUT
+                LDA N_1
+                OUT
+                OUT
+                HLT
+                N_1 DAT 1
+                X DAT 0
+                Y DAT 0
+                """, asm);
+    }
+
+    @Test
+    public void testAccumulatorIsForgottenAtLabels() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("X = READ DO WRITE X X = X - 1 WHILE X ENDDO");
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        String asm = codeGen.generateCode(program);
+        assertEquals("""
+                INP
+                STA X
+                LABEL_0 LDA X
+                OUT
+                SUB N_1
+                STA X
+                BRP LABEL_0
+                HLT
+                N_1 DAT 1
+                X DAT 0
+                """, asm);
+    }
+
+    @Test
+    public void testIfWithElseFallsThroughToElseOnComparison() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("X = READ IF X >= 3 THEN WRITE 1 ELSE WRITE 0 ENDIF");
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        String asm = codeGen.generateCode(program);
+        assertEquals("""
+                INP
+                STA X
+                SUB N_3
+                BRP LABEL_1
+                LDA N_0
+                OUT
+                BRA LABEL_0
+                LABEL_1 LDA N_1
+                OUT
+                LABEL_0 HLT
+                N_3 DAT 3
+                N_0 DAT 0
+                N_1 DAT 1
+                X DAT 0
+                """, asm);
+    }
+
+    @Test
+    public void testIfWithoutElseNeedsNoEndJump() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("X = READ IF X THEN WRITE X ENDIF WRITE 9");
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        String asm = codeGen.generateCode(program);
+        assertEquals("""
+                INP
+                STA X
+                BRZ LABEL_0
+                OUT
+                LABEL_0 LDA N_9
+                OUT
+                HLT
+                N_9 DAT 9
+                X DAT 0
+                """, asm);
+    }
+
+    @Test
+    public void testEmptyBranchesLeaveNoJumpsToNext() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("X = READ IF X == 0 THEN ENDIF WRITE X");
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        String asm = codeGen.generateCode(program);
+        assertEquals("""
+                INP
+                STA X
+                LDA X
+                OUT
+                HLT
+                X DAT 0
+                """, asm);
+    }
+
+    @Test
+    public void testNoJumpsToNextInALargeProgram() {
+        // the jumps of each IF only become jumps to the next instruction once the inner ones are gone
+        String block = "IF X THEN IF X THEN ENDIF ELSE IF X == 1 THEN ENDIF ENDIF\n";
+        String src = "X = READ\n" + block.repeat(20_000) + "WRITE X";
+        String[] lines = new WhiletranCodeGenerator().generateCode(new WhiletranParser().parse(src)).split("\n");
+        for (int i = 0; i + 1 < lines.length; i++) {
+            String[] words = lines[i].split(" ");
+            if (words.length > 1 && words[words.length - 2].startsWith("BR")) {
+                assertFalse(lines[i + 1].startsWith(words[words.length - 1] + " "), lines[i] + " / " + lines[i + 1]);
+            }
+        }
+        // only a few fit in 100 mailboxes to run
+        String small = "X = READ\n" + block.repeat(5) + "WRITE X";
+        assertArrayEquals(new int[]{3}, run(small, 3));
+        assertArrayEquals(new int[]{0}, run(small, 0));
+    }
+
+    @Test
+    public void testComparisonConditionsRunCorrectly() {
+        String src = """
+                X = READ
+                IF X >= 3 THEN
+                  IF X == 4 THEN WRITE 4 ELSE WRITE 3 ENDIF
+                ELSE
+                  WRITE X == 0
+                ENDIF
+                DO X = X + 1 WHILE 5 >= X ENDDO
+                WRITE X
+                DO X = X + 1 WHILE FALSE ENDDO
+                WRITE X""";
+        assertArrayEquals(new int[]{1, 6, 7}, run(src, 0));
+        assertArrayEquals(new int[]{0, 6, 7}, run(src, 2));
+        assertArrayEquals(new int[]{3, 6, 7}, run(src, 3));
+        assertArrayEquals(new int[]{4, 6, 7}, run(src, 4));
+        assertArrayEquals(new int[]{3, 10, 11}, run(src, 9));
+    }
+
+    @Test
+    public void testNestedRightSideIsSpilledToATemporary() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("X = READ Y = READ WRITE X - (Y + 1)");
+        WhiletranCodeGenerator codeGen = new WhiletranCodeGenerator();
+        codeGen.setShareMailboxes(false);
+        String asm = codeGen.generateCode(program);
+        assertEquals("""
+                INP
+                STA X
+                INP
+                STA Y
+                ADD N_1
+                STA T_0
+                LDA X
+                SUB T_0
+                OUT
+                HLT
+                N_1 DAT 1
+                X DAT 0
+                Y DAT 0
+                T_0 DAT 0
+                """, asm);
+    }
+
+    @Test
+    public void testCommutingAvoidsTemporaries() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranProgram program = parser.parse("A = READ B = READ WRITE A + (B - 1) WRITE 1 + (A == B)");
+        String asm = new WhiletranCodeGenerator().generateCode(program);
+        assertFalse(asm.contains("T_0"), asm);
+        assertArrayEquals(new int[]{6, 1}, run("A = READ B = READ WRITE A + (B - 1) WRITE 1 + (A == B)", 3, 4));
+        assertArrayEquals(new int[]{5, 2}, run("A = READ B = READ WRITE A + (B - 1) WRITE 1 + (A == B)", 3, 3));
+    }
+
+    @Test
+    public void testTemporariesAreReusedAcrossStatements() {
+        String src = """
+                A = READ
+                B = READ
+                C = READ
+                D = READ
+                E = READ
+                WRITE (A + B) - (C - (D + E))
+                WRITE A - (B - (C - (D - E)))
+                X = (A - (B - C)) - (D - E)
+                WRITE X""";
+        WhiletranCodeGenerator unshared = new WhiletranCodeGenerator();
+        unshared.setShareMailboxes(false);
+        String asm = unshared.generateCode(new WhiletranParser().parse(src));
+        // the first two need one temporary and the last needs two, so the program only gets two
+        assertTrue(asm.contains("T_1 DAT 0"), asm);
+        assertFalse(asm.contains("T_2"), asm);
+        // with shared mailboxes the last statement's temporaries go in mailboxes of variables already dead
+        asm = new WhiletranCodeGenerator().generateCode(new WhiletranParser().parse(src));
+        assertTrue(asm.contains("T_0 DAT 0"), asm);
+        assertFalse(asm.contains("T_1"), asm);
+        assertArrayEquals(new int[]{(1 + 2) - (3 - (4 + 5)), 1 - (2 - (3 - (4 - 5))), (1 - (2 - 3)) - (4 - 5)},
+                run(src, 1, 2, 3, 4, 5));
+    }
+
+    @Test
+    public void testNestedConditions() {
+        String src = """
+                A = READ
+                IF A + 1 >= (A - 2) + A THEN WRITE 1 ELSE WRITE 0 ENDIF
+                IF (A == 3) + (A == 4) THEN WRITE 2 ENDIF
+                DO A = A - 1 WHILE A - (1 + 1) ENDDO
+                WRITE A""";
+        assertArrayEquals(new int[]{1, 0}, run(src, 1));
+        assertArrayEquals(new int[]{1, 2, 1}, run(src, 3));
+        assertArrayEquals(new int[]{0, 1}, run(src, 9));
+    }
+
+    // cycle counts with the code generator alone, to catch regressions in the control flow lowering
+    @Test
+    public void testDivisionCycleCount() {
+        // 9 instructions outside the loop, 7 per iteration
+        assertEquals(9 + 8 * 7, steps(LmcMachineTest.DIVISION, 50, 7));
+        assertEquals(9 + 15 * 7, steps(LmcMachineTest.DIVISION, 70, 5));
+    }
+
+    @Test
+    public void testFibCycleCount() {
+        // 9 instructions outside the loop, 12 per iteration
+        assertEquals(9 + 10 * 12, steps(LmcMachineTest.FIB, 10));
+        assertEquals(9 + 15 * 12, steps(LmcMachineTest.FIB, 15));
+    }
+
+    private static int[] run(String src, int... inputs) {
+        LmcMachine machine = machineFor(src, inputs);
+        return machine.getOutput();
+    }
+
+    private static long steps(String src, int... inputs) {
+        return machineFor(src, inputs).getSteps();
+    }
+
+    private static LmcMachine machineFor(String src, int... inputs) {
+        WhiletranProgram program = new WhiletranParser().parse(src);
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCodeGenerator().generateImage(program).mailboxes());
+        machine.pushInputs(inputs);
+        machine.run();
+        return machine;
+    }
+}
@@ -0,0 +1,33 @@
+package csci366.lmc.whiletran;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// one WhiletranCompiler.compile call, see WhiletranMetrics
+@Name("csci366.lmc.whiletran.Compile")
+@Label("Whiletran Compile")
+@Category("Whiletran")
+@Description("Compiling a Whiletran program to a Little Man Computer image")
+final class WhiletranCompileEvent extends Event {
+
+    @Label("Source Length")
+    int sourceLength;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Nodes")
+    int nodes;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Mailboxes")
+    int mailboxes;
+
+    @Label("Cache Hit")
+    boolean cacheHit;
+}
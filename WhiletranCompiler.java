@@ -0,0 +1,167 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.WhiletranMetrics.Phase;
+import csci366.lmc.whiletran.tree.WhiletranProgram;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the whole parse, simplify, data-flow optimize, generate, peephole optimize and assemble pipeline. Compiled images are
+ * cached by a SHA-256 hash of the normalized source (the token stream, so whitespace and comments
+ * don't matter) with least recently used eviction once the cache is full. On a hit neither the
+ * parser nor the code generator is touched.
+ *
+ * With {@link #setMetrics(WhiletranMetrics)} each phase is timed and counted, see there.
+ */
+public class WhiletranCompiler {
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final Map<String, LmcImage> cache;
+    private final int banks;
+    private volatile WhiletranMetrics metrics;
+    private long hits = 0;
+    private long misses = 0;
+
+    public WhiletranCompiler() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public WhiletranCompiler(int maxCacheEntries) {
+        this(maxCacheEntries, 1);
+    }
+
+    // compiles for the extended machine with this many banks, see LmcImageWriter(int)
+    public WhiletranCompiler(int maxCacheEntries, int banks) {
+        this.banks = LmcImageWriter.checkBanks(banks);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LmcImage> eldest) {
+                return size() > maxCacheEntries;
+            }
+        };
+    }
+
+    // null, the default, records nothing
+    public void setMetrics(WhiletranMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public LmcImage compile(String src) {
+        WhiletranMetrics metrics = this.metrics;
+        WhiletranCompileEvent event = new WhiletranCompileEvent();
+        event.begin();
+        long start = metrics == null ? 0 : System.nanoTime();
+        WhiletranLexer lexer = new WhiletranLexer(src);
+        String key = hash(normalize(lexer, src.length()));
+        WhiletranMetrics.record(metrics, Phase.LEX, start);
+        event.sourceLength = src.length();
+        event.tokens = lexer.tokensTaken();
+        if (metrics != null) {
+            metrics.addTokens(lexer.tokensTaken());
+        }
+        synchronized (this) {
+            LmcImage cached = cache.get(key);
+            if (cached != null) {
+                hits++;
+                if (metrics != null) {
+                    metrics.addCacheHit();
+                }
+                event.cacheHit = true;
+                commit(event, cached);
+                return cached.copy();
+            }
+            misses++;
+        }
+
+        LmcImage image = compileUncached(src, lexer.symbols(), event);
+        synchronized (this) {
+            cache.put(key, image);
+        }
+        commit(event, image);
+        return image.copy();
+    }
+
+    public LmcImage compileUncached(String src) {
+        return compileUncached(src, new WhiletranSymbols(), new WhiletranCompileEvent());
+    }
+
+    // fills in the event's counts, committing it is up to the caller. symbols may already hold the
+    // source's tokens from lexing it for the cache key, so the parse finds them instead of adding them
+    private LmcImage compileUncached(String src, WhiletranSymbols symbols, WhiletranCompileEvent event) {
+        WhiletranMetrics metrics = this.metrics;
+        long time = metrics == null ? 0 : System.nanoTime();
+        WhiletranParser.ParseResult parse = new WhiletranParser().parseWithLines(new WhiletranLexer(src, symbols));
+        time = WhiletranMetrics.record(metrics, Phase.PARSE, time);
+        WhiletranProgram program = new WhiletranSimplifier().simplify(parse.program());
+        time = WhiletranMetrics.record(metrics, Phase.SIMPLIFY, time);
+        WhiletranArena arena = WhiletranArena.from(program, parse.variables(), false);
+        int nodes = arena.nodeCount();
+        arena = new WhiletranIrOptimizer().optimize(arena).arena();
+        time = WhiletranMetrics.record(metrics, Phase.DATAFLOW, time);
+        List<LmcInstruction> code = new WhiletranCodeGenerator().generateInstructions(arena);
+        time = WhiletranMetrics.record(metrics, Phase.GENERATE, time);
+        code = new PeepholeOptimizer().optimize(code).instructions();
+        time = WhiletranMetrics.record(metrics, Phase.OPTIMIZE, time);
+        LmcImage image = new LmcImageWriter(banks).write(code);
+        WhiletranMetrics.record(metrics, Phase.ASSEMBLE, time);
+
+        event.nodes = nodes;
+        event.instructions = code.size();
+        event.mailboxes = image.mailboxes().length;
+        if (metrics != null) {
+            metrics.addCompilation(event.nodes, event.instructions, event.mailboxes);
+        }
+        return image;
+    }
+
+    private static void commit(WhiletranCompileEvent event, LmcImage image) {
+        if (event.shouldCommit()) {
+            event.mailboxes = image.mailboxes().length;
+            event.commit();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    static String normalize(String src) {
+        return normalize(new WhiletranLexer(src), src.length());
+    }
+
+    private static String normalize(WhiletranLexer lexer, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (lexer.hasMore()) {
+            sb.append(lexer.take().text()).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String hash(String normalized) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranCompilerTest {
+
+    // a program that fails in the interpreter, out of range or out of input, must fail on the machine too
+    static void assertMatchesInterpreter(String src, int... inputs) {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCompiler().compile(src).mailboxes());
+        machine.pushInputs(inputs);
+        WhiletranInterpreter.CompiledProgram program = new WhiletranInterpreter().compile(new WhiletranParser().parse(src));
+        int[] expected;
+        try {
+            expected = program.run(inputs);
+        } catch (IllegalStateException e) {
+            assertThrows(IllegalStateException.class, machine::run, src);
+            return;
+        }
+        machine.run();
+        assertArrayEquals(expected, machine.getOutput(), src);
+    }
+
+    @Test
+    public void testComparisonPlusZeroAsLoopCondition() {
+        // (X == 5) + 0 is 0 or 1, so the loop runs until X goes out of range, not until X is 5
+        assertMatchesInterpreter("X = 0 DO X = X + 1 WRITE X WHILE (X == 5) + 0 ENDDO");
+        assertMatchesInterpreter("X = 0 DO X = X + 1 WRITE X WHILE 0 + (X >= 5) ENDDO");
+        assertMatchesInterpreter("X = 0 DO X = X + 1 WRITE X WHILE (X == 1) - 0 ENDDO");
+        assertMatchesInterpreter("X = 0 DO X = X - 1 WRITE X WHILE (X == 0 - 3) + 0 - 1 ENDDO");
+    }
+
+    @Test
+    public void testOutOfRangeComparisonIsNotFolded() {
+        assertMatchesInterpreter("WRITE 999 >= -1");
+        assertMatchesInterpreter("WRITE -999 == 1");
+        assertMatchesInterpreter("IF 999 >= -1 THEN WRITE 1 ELSE WRITE 2 ENDIF");
+        assertMatchesInterpreter("WRITE 999 >= 0");
+        assertMatchesInterpreter("WRITE 500 >= -499");
+    }
+
+    @Test
+    public void testCacheHit() {
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        LmcImage first = compiler.compile("X = READ WRITE X");
+        LmcImage second = compiler.compile("X = READ WRITE X");
+        assertEquals(1, compiler.getMisses());
+        assertEquals(1, compiler.getHits());
+        assertArrayEquals(first.mailboxes(), second.mailboxes());
+        assertNotSame(first.mailboxes(), second.mailboxes());
+    }
+
+    @Test
+    public void testWhitespaceAndCommentsDontMatter() {
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        compiler.compile("X = READ WRITE X");
+        compiler.compile("! echo\nX = READ\n    WRITE X ! done\n");
+        assertEquals(1, compiler.getMisses());
+        assertEquals(1, compiler.getHits());
+    }
+
+    @Test
+    public void testDifferentSourcesMiss() {
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        compiler.compile("WRITE 1");
+        compiler.compile("WRITE 2");
+        assertEquals(2, compiler.getMisses());
+        assertEquals(0, compiler.getHits());
+        assertEquals(2, compiler.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        WhiletranCompiler compiler = new WhiletranCompiler(2);
+        compiler.compile("WRITE 1");
+        compiler.compile("WRITE 2");
+        compiler.compile("WRITE 1");
+        compiler.compile("WRITE 3");
+        assertEquals(2, compiler.size());
+
+        compiler.compile("WRITE 1");
+        assertEquals(2, compiler.getHits());
+        compiler.compile("WRITE 2");
+        assertEquals(4, compiler.getMisses());
+    }
+
+    @Test
+    public void testModifyingImageDoesNotAffectCache() {
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        LmcImage first = compiler.compile("WRITE 1");
+        first.mailboxes()[0] = 0;
+        LmcImage second = compiler.compile("WRITE 1");
+        assertNotEquals(0, second.mailboxes()[0]);
+    }
+}
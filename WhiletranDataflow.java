@@ -0,0 +1,295 @@
+package csci366.lmc.whiletran;
+
+import java.util.BitSet;
+
+/**
+ * Bit vector data-flow analysis over a {@link WhiletranIr}. A {@link Problem} gives the gen and
+ * kill sets of each block, a block passes on gen plus whatever reaches it that it doesn't kill, and
+ * {@link #solve(WhiletranIr, Problem)} iterates over the blocks until nothing changes. The analyses
+ * the optimizer needs are built on that:
+ *
+ * - liveness: which variables may still be read, one bit per variable id
+ * - reaching definitions: which assignments may have set each variable's value, one bit per
+ *   instruction plus one per variable for its initial 0 at {@code instructionCount() + variable}
+ * - available copies: which {@code X = Y} copies still hold on every path, one bit per copy as
+ *   {@link WhiletranIr#copy(int)} numbers them
+ * - maybe assigned: reaching definitions cut down to whether a variable can still be its initial 0
+ */
+public final class WhiletranDataflow {
+
+    public interface Problem {
+
+        boolean forward();
+
+        // true if a fact has to hold on every path into a block, false if any path is enough
+        boolean allPaths();
+
+        // how many bits a fact set has
+        int size();
+
+        BitSet gen(int block);
+
+        BitSet kill(int block);
+
+        // the facts at the entry for a forward problem, at the exit for a backward one
+        default BitSet boundary() {
+            return new BitSet();
+        }
+    }
+
+    // the facts at the start and end of each block, whichever way the problem flows
+    public record Result(BitSet[] in, BitSet[] out) {
+    }
+
+    private WhiletranDataflow() {
+    }
+
+    public static Result solve(WhiletranIr ir, Problem problem) {
+        int blocks = ir.blockCount();
+        boolean forward = problem.forward();
+        BitSet[] gen = new BitSet[blocks];
+        BitSet[] kill = new BitSet[blocks];
+        BitSet[] in = new BitSet[blocks];
+        BitSet[] out = new BitSet[blocks];
+        // facts flow from entering to leaving in the direction of the problem
+        BitSet[] entering = forward ? in : out;
+        BitSet[] leaving = forward ? out : in;
+        for (int b = 0; b < blocks; b++) {
+            gen[b] = problem.gen(b);
+            kill[b] = problem.kill(b);
+            entering[b] = new BitSet();
+            leaving[b] = new BitSet();
+            if (problem.allPaths()) {
+                leaving[b].set(0, problem.size());
+            }
+        }
+
+        // blocks are in program order, so sweeping with the flow settles in a few passes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int n = 0; n < blocks; n++) {
+                int b = forward ? n : blocks - 1 - n;
+                int neighbours = forward ? ir.predecessorCount(b) : ir.successorCount(b);
+                BitSet facts;
+                if (neighbours == 0) {
+                    facts = problem.boundary();
+                } else {
+                    facts = (BitSet) leaving[forward ? ir.predecessor(b, 0) : ir.successor(b, 0)].clone();
+                    for (int k = 1; k < neighbours; k++) {
+                        BitSet other = leaving[forward ? ir.predecessor(b, k) : ir.successor(b, k)];
+                        if (problem.allPaths()) {
+                            facts.and(other);
+                        } else {
+                            facts.or(other);
+                        }
+                    }
+                }
+                entering[b] = facts;
+                BitSet result = (BitSet) facts.clone();
+                result.andNot(kill[b]);
+                result.or(gen[b]);
+                if (!result.equals(leaving[b])) {
+                    leaving[b] = result;
+                    changed = true;
+                }
+            }
+        }
+        return new Result(in, out);
+    }
+
+    public static Result liveness(WhiletranIr ir) {
+        return solve(ir, new Problem() {
+            public boolean forward() {
+                return false;
+            }
+
+            public boolean allPaths() {
+                return false;
+            }
+
+            public int size() {
+                return ir.variableCount();
+            }
+
+            // read in the block before anything in it assigns them
+            public BitSet gen(int block) {
+                BitSet gen = new BitSet();
+                for (int i = ir.blockEnd(block) - 1; i >= ir.blockStart(block); i--) {
+                    if (ir.def(i) >= 0) {
+                        gen.clear(ir.def(i));
+                    }
+                    for (int k = 0; k < ir.useCount(i); k++) {
+                        gen.set(ir.use(i, k));
+                    }
+                }
+                return gen;
+            }
+
+            public BitSet kill(int block) {
+                BitSet kill = new BitSet();
+                for (int i = ir.blockStart(block); i < ir.blockEnd(block); i++) {
+                    if (ir.def(i) >= 0) {
+                        kill.set(ir.def(i));
+                    }
+                }
+                return kill;
+            }
+        });
+    }
+
+    public static Result reachingDefinitions(WhiletranIr ir) {
+        return solve(ir, new Problem() {
+            public boolean forward() {
+                return true;
+            }
+
+            public boolean allPaths() {
+                return false;
+            }
+
+            public int size() {
+                return ir.instructionCount() + ir.variableCount();
+            }
+
+            // the last assignment to each variable in the block
+            public BitSet gen(int block) {
+                BitSet gen = new BitSet();
+                BitSet seen = new BitSet();
+                for (int i = ir.blockEnd(block) - 1; i >= ir.blockStart(block); i--) {
+                    if (ir.def(i) >= 0 && !seen.get(ir.def(i))) {
+                        seen.set(ir.def(i));
+                        gen.set(i);
+                    }
+                }
+                return gen;
+            }
+
+            // every definition, initial 0 included, of each variable the block assigns
+            public BitSet kill(int block) {
+                BitSet kill = new BitSet();
+                BitSet assigned = assigned(ir, block);
+                for (int v = assigned.nextSetBit(0); v >= 0; v = assigned.nextSetBit(v + 1)) {
+                    for (int k = 0; k < ir.definitionCount(v); k++) {
+                        kill.set(ir.definition(v, k));
+                    }
+                    kill.set(initialDefinition(ir, v));
+                }
+                return kill;
+            }
+
+            public BitSet boundary() {
+                BitSet initial = new BitSet();
+                initial.set(ir.instructionCount(), ir.instructionCount() + ir.variableCount());
+                return initial;
+            }
+        });
+    }
+
+    public static Result availableCopies(WhiletranIr ir) {
+        // the copies each variable is the target or source of
+        int variables = ir.variableCount();
+        BitSet[] copiesOf = new BitSet[variables];
+        // the copy number of each copy instruction
+        int[] numbers = new int[ir.instructionCount()];
+        for (int c = 0; c < ir.copyCount(); c++) {
+            int i = ir.copy(c);
+            numbers[i] = c;
+            copiesOf(copiesOf, ir.def(i)).set(c);
+            copiesOf(copiesOf, ir.copySource(i)).set(c);
+        }
+
+        return solve(ir, new Problem() {
+            public boolean forward() {
+                return true;
+            }
+
+            public boolean allPaths() {
+                return true;
+            }
+
+            public int size() {
+                return ir.copyCount();
+            }
+
+            // copies in the block whose target and source aren't assigned again after them
+            public BitSet gen(int block) {
+                BitSet gen = new BitSet();
+                BitSet assignedLater = new BitSet();
+                for (int i = ir.blockEnd(block) - 1; i >= ir.blockStart(block); i--) {
+                    int source = ir.copySource(i);
+                    if (source >= 0 && !assignedLater.get(ir.def(i)) && !assignedLater.get(source)) {
+                        gen.set(numbers[i]);
+                    }
+                    if (ir.def(i) >= 0) {
+                        assignedLater.set(ir.def(i));
+                    }
+                }
+                return gen;
+            }
+
+            public BitSet kill(int block) {
+                BitSet kill = new BitSet();
+                BitSet assigned = assigned(ir, block);
+                for (int v = assigned.nextSetBit(0); v >= 0; v = assigned.nextSetBit(v + 1)) {
+                    if (copiesOf[v] != null) {
+                        kill.or(copiesOf[v]);
+                    }
+                }
+                return kill;
+            }
+        });
+    }
+
+    /**
+     * Which variables may have been assigned, one bit per variable id. It's reaching definitions
+     * with every definition of a variable but its initial 0 merged into one bit, so a variable
+     * that's clear can only still be 0.
+     */
+    public static Result maybeAssigned(WhiletranIr ir) {
+        return solve(ir, new Problem() {
+            public boolean forward() {
+                return true;
+            }
+
+            public boolean allPaths() {
+                return false;
+            }
+
+            public int size() {
+                return ir.variableCount();
+            }
+
+            public BitSet gen(int block) {
+                return assigned(ir, block);
+            }
+
+            public BitSet kill(int block) {
+                return new BitSet();
+            }
+        });
+    }
+
+    // the bit for a variable's initial 0 in reaching definitions
+    public static int initialDefinition(WhiletranIr ir, int variable) {
+        return ir.instructionCount() + variable;
+    }
+
+    // the variables the block assigns
+    private static BitSet assigned(WhiletranIr ir, int block) {
+        BitSet assigned = new BitSet();
+        for (int i = ir.blockStart(block); i < ir.blockEnd(block); i++) {
+            if (ir.def(i) >= 0) {
+                assigned.set(ir.def(i));
+            }
+        }
+        return assigned;
+    }
+
+    private static BitSet copiesOf(BitSet[] copiesOf, int variable) {
+        if (copiesOf[variable] == null) {
+            copiesOf[variable] = new BitSet();
+        }
+        return copiesOf[variable];
+    }
+}
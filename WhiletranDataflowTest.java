@@ -0,0 +1,124 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranDataflowTest {
+
+    private static final String LOOP = """
+            A = READ
+            B = 1
+            DO
+              B = B + A
+              A = A - 1
+            WHILE A
+            ENDDO
+            IF B >= 10 THEN
+              WRITE B
+            ELSE
+              C = A
+            ENDIF
+            WRITE C""";
+
+    @Test
+    public void testBlocks() {
+        WhiletranIr ir = ir(LOOP);
+        // entry, loop, after the loop, THEN, ELSE, after the IF
+        assertEquals(6, ir.blockCount());
+        assertEquals(2, ir.blockEnd(0));
+        assertEquals(WhiletranIr.BRANCH, ir.kind(ir.blockEnd(1) - 1));
+        assertEquals(1, ir.successor(0, 0));
+        assertEquals(2, ir.successorCount(1)); // back to itself and on past the loop
+        assertEquals(2, ir.predecessorCount(1));
+        assertEquals(2, ir.predecessorCount(5));
+        assertEquals(0, ir.successorCount(5));
+        assertEquals(2, ir.definitionCount(variable(ir, "A")));
+    }
+
+    @Test
+    public void testLiveness() {
+        WhiletranIr ir = ir(LOOP);
+        WhiletranDataflow.Result live = WhiletranDataflow.liveness(ir);
+        assertEquals(bits(ir, "A", "B", "C"), live.in()[1]);
+        assertEquals(bits(ir, "A", "B", "C"), live.out()[1]);
+        // C is read after the IF whichever way it goes, and may never have been assigned
+        assertEquals(bits(ir, "C"), live.in()[0]);
+        assertEquals(bits(ir, "B", "C"), live.in()[3]);
+        assertEquals(bits(ir, "A"), live.in()[4]);
+        assertEquals(new BitSet(), live.out()[5]);
+    }
+
+    @Test
+    public void testReachingDefinitions() {
+        WhiletranIr ir = ir(LOOP);
+        WhiletranDataflow.Result reaching = WhiletranDataflow.reachingDefinitions(ir);
+        int c = variable(ir, "C");
+        BitSet atEnd = reaching.in()[5];
+        // C = A in the ELSE, or C's initial 0 through the THEN
+        assertTrue(atEnd.get(ir.definition(c, 0)));
+        assertTrue(atEnd.get(WhiletranDataflow.initialDefinition(ir, c)));
+        // both assignments to B reach the loop head, only the one in the loop leaves it
+        int b = variable(ir, "B");
+        assertTrue(reaching.in()[1].get(ir.definition(b, 0)));
+        assertTrue(reaching.in()[1].get(ir.definition(b, 1)));
+        assertFalse(reaching.out()[1].get(ir.definition(b, 0)));
+        assertFalse(reaching.in()[1].get(WhiletranDataflow.initialDefinition(ir, b)));
+    }
+
+    @Test
+    public void testAvailableCopies() {
+        WhiletranIr ir = ir("""
+                A = READ
+                B = A
+                IF A THEN
+                  C = B
+                ELSE
+                  C = B
+                  A = 1
+                ENDIF
+                WRITE C""");
+        WhiletranDataflow.Result copies = WhiletranDataflow.availableCopies(ir);
+        int copy = 0;
+        assertEquals(3, ir.copyCount());
+        assertEquals(variable(ir, "A"), ir.copySource(ir.copy(copy)));
+        assertTrue(copies.in()[1].get(copy));
+        assertTrue(copies.out()[1].get(copy));
+        // A is assigned again in the ELSE, so B = A doesn't hold after the IF, and C = B holds
+        // along each branch but neither copy is on both
+        assertFalse(copies.out()[2].get(copy));
+        assertEquals(new BitSet(), copies.in()[3]);
+    }
+
+    @Test
+    public void testMaybeAssigned() {
+        WhiletranIr ir = ir(LOOP);
+        WhiletranDataflow.Result assigned = WhiletranDataflow.maybeAssigned(ir);
+        assertEquals(new BitSet(), assigned.in()[0]);
+        assertEquals(bits(ir, "A", "B"), assigned.in()[1]);
+        assertEquals(bits(ir, "A", "B", "C"), assigned.in()[5]);
+    }
+
+    private static WhiletranIr ir(String src) {
+        return WhiletranIr.from(WhiletranArena.from(new WhiletranParser().parse(src)));
+    }
+
+    private static int variable(WhiletranIr ir, String name) {
+        for (int v = 0; v < ir.variableCount(); v++) {
+            if (ir.arena().name(v).equals(name)) {
+                return v;
+            }
+        }
+        throw new AssertionError("No variable " + name);
+    }
+
+    private static BitSet bits(WhiletranIr ir, String... names) {
+        BitSet bits = new BitSet();
+        for (String name : names) {
+            bits.set(variable(ir, name));
+        }
+        return bits;
+    }
+}
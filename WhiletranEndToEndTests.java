@@ -1,8 +1,6 @@
 package csci366.lmc.whiletran;
 
-import csci366.lmc.asm.LittleManAssembler;
 import csci366.lmc.emulator.LittleManComputer;
-import csci366.lmc.whiletran.tree.WhiletranProgram;
 import org.junit.jupiter.api.Test;
 
 import java.util.LinkedList;
@@ -199,28 +197,33 @@ public class WhiletranEndToEndTests {
         }
     }
 
-    private static LinkedList<Integer> compileAndRun(String src, Integer... inputs) {
-
-        // parse the program
-        WhiletranParser parser = new WhiletranParser();
-        WhiletranProgram program = parser.parse(src);
+    // shared so that repeated compiles of the same program (e.g. testEndToEndFib) hit the cache
+    private static final WhiletranCompiler COMPILER = new WhiletranCompiler();
 
-        // generate the assembly
-        WhiletranCodeGenerator whiletranCodeGenerator = new WhiletranCodeGenerator();
-        String asmSrc = whiletranCodeGenerator.generateCode(program);
-        //System.out.println(asmSrc); // uncomment to print assembly
+    private static LinkedList<Integer> compileAndRun(String src, Integer... inputs) {
 
-        // assemble into machine instructions
-        LittleManAssembler asm = new LittleManAssembler();
-        int[] instructions = asm.assemble(asmSrc);
+        // parse, generate and assemble the program into machine instructions
+        LmcImage image = COMPILER.compile(src);
+        //System.out.println(image.listing()); // uncomment to print assembly
 
         // load the instructions and run them
         LittleManComputer computer = new LittleManComputer();
-        computer.load(instructions);
+        computer.load(image.mailboxes());
         computer.pushInputs(inputs);
         computer.run();
 
         LinkedList<Integer> output = computer.getOutput();
+
+        // the interpreter skips the LMC entirely, so it must come up with the same output
+        int[] ints = new int[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            ints[i] = inputs[i];
+        }
+        int[] interpreted = new WhiletranInterpreter().compile(new WhiletranParser().parse(src)).run(ints);
+        assertEquals(output.size(), interpreted.length);
+        for (int i = 0; i < interpreted.length; i++) {
+            assertEquals((int) output.get(i), interpreted[i]);
+        }
         return output;
     }
 }
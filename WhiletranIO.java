@@ -0,0 +1,25 @@
+package csci366.lmc.whiletran;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Where a compiled program's READs come from and its WRITEs go. It is also an IntSupplier and an
+ * IntConsumer so generated code only needs to know about JDK types.
+ */
+public interface WhiletranIO extends IntSupplier, IntConsumer {
+
+    int read();
+
+    void write(int value);
+
+    @Override
+    default int getAsInt() {
+        return read();
+    }
+
+    @Override
+    default void accept(int value) {
+        write(value);
+    }
+}
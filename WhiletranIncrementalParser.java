@@ -0,0 +1,333 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.WhiletranProgram;
+import csci366.lmc.whiletran.tree.WhiletranStatement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Re-parses a program after a text edit by re-lexing and re-parsing only the top level statements
+ * the edit touches (an edit anywhere inside an IF or DO re-parses that whole block), plus the gaps
+ * around them. Every other statement is reused as is, by identity.
+ *
+ * The re-parsed region must come out as whole statements that end exactly where the next
+ * untouched statement starts. If it doesn't (say an ENDIF was deleted, or a new comment runs into
+ * the next statement) the region is widened on both sides and parsed again, up to the whole
+ * program, which then fails or succeeds exactly as a full parse would.
+ *
+ * An edit costs time in the size of the edit and the touched statements, not of the program:
+ *
+ * - the source is a gap buffer, so replacing text only moves the chars between this edit and the last
+ * - the statements' spans are a gap buffer too. Spans after the gap are kept relative to the end of
+ *   the source and its last line, so an edit shifts them all without touching any of them
+ * - each span keeps where the line of its last token starts, so re-lexing after it doesn't scan back
+ *   along a long line to find its columns
+ * - the program's statements are a {@link StatementRope}, which shares every untouched run of
+ *   statements with the previous version
+ */
+public class WhiletranIncrementalParser {
+
+    private Source src;
+    private WhiletranProgram program;
+    // per top level statement: offset of its first token, end of its last token, line of its last token
+    // and the offset that line starts at.
+    // The gap is from gapStart up to gapEnd, spans before it are absolute and spans after it relative to
+    // the source length and line count in lengthBase and lineBase
+    private int[] starts;
+    private int[] ends;
+    private int[] endLines;
+    private int[] endLineStarts;
+    private int gapStart;
+    private int gapEnd;
+    private int lengthBase;
+    private int lineBase;
+    private int lastReparsedStatements;
+
+    public WhiletranProgram parse(String src) {
+        List<int[]> spans = new ArrayList<>();
+        List<WhiletranStatement> statements = new WhiletranParser().parseStatements(new WhiletranLexer(src), spans);
+        this.src = new Source(src);
+        this.program = new WhiletranProgram(StatementRope.of(statements));
+        int capacity = Math.max(16, spans.size() * 2);
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.endLines = new int[capacity];
+        this.endLineStarts = new int[capacity];
+        for (int i = 0; i < spans.size(); i++) {
+            starts[i] = spans.get(i)[0];
+            ends[i] = spans.get(i)[1];
+            endLines[i] = spans.get(i)[2];
+            endLineStarts[i] = spans.get(i)[3];
+        }
+        this.gapStart = spans.size();
+        this.gapEnd = capacity;
+        this.lengthBase = src.length();
+        this.lineBase = countLines(src, 0, src.length());
+        this.lastReparsedStatements = spans.size();
+        return program;
+    }
+
+    /**
+     * Replaces length characters at offset in the source previous was parsed from, and returns the
+     * program for the edited source.
+     */
+    public WhiletranProgram edit(WhiletranProgram previous, int offset, int length, String replacement) {
+        if (previous != program) {
+            throw new IllegalArgumentException("Not the last program produced by this parser");
+        }
+        if (offset < 0 || length < 0 || offset + length > src.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + length + " outside source of length " + src.length());
+        }
+
+        String removed = src.subSequence(offset, offset + length).toString();
+        int delta = replacement.length() - length;
+        int lineDelta = countLines(replacement, 0, replacement.length()) - countLines(removed, 0, length);
+        int n = statementCount();
+
+        // statements touching the edit are lo..hi, lo > hi when the edit is entirely between two statements.
+        // Spans are looked up before they're spliced, so the ones after the edit still need delta added
+        int lo = firstEndingAtOrAfter(offset);
+        int hi = firstStartingAfter(offset + length) - 1;
+        int grow = 1;
+        src.replace(offset, length, replacement);
+
+        try {
+            while (true) {
+                int regionStart = lo > 0 ? end(lo - 1) : 0;
+                int regionLine = lo > 0 ? endLine(lo - 1) : 1;
+                int regionLineStart = lo > 0 ? endLineStart(lo - 1) : 0;
+                int regionEnd = hi + 1 < n ? start(hi + 1) + delta : src.length();
+                boolean whole = lo == 0 && hi == n - 1;
+
+                List<int[]> spans = new ArrayList<>();
+                try {
+                    WhiletranLexer lexer = new WhiletranLexer(src, regionStart, regionEnd, regionLine, regionLineStart);
+                    List<WhiletranStatement> statements = new WhiletranParser().parseStatements(lexer, spans);
+                    if (whole || lexer.position() == regionEnd) {
+                        splice(lo, hi, statements, spans, delta, lineDelta);
+                        return program;
+                    }
+                } catch (WhiletranParseException e) {
+                    if (whole) {
+                        throw e;
+                    }
+                }
+
+                lo = Math.max(0, lo - grow);
+                hi = Math.min(n - 1, hi + grow);
+                grow *= 2;
+            }
+        } catch (RuntimeException e) {
+            // whatever went wrong, leave the parser at the previous version
+            src.replace(offset, replacement.length(), removed);
+            throw e;
+        }
+    }
+
+    // builds the whole source, so it's the one call here that takes time in the size of the program
+    public String source() {
+        return src.toString();
+    }
+
+    // how many statements the last parse or edit produced by parsing, rather than reusing
+    public int getLastReparsedStatements() {
+        return lastReparsedStatements;
+    }
+
+    private void splice(int lo, int hi, List<WhiletranStatement> statements, List<int[]> spans,
+                        int delta, int lineDelta) {
+        StatementRope children = (StatementRope) program.children();
+        children = children.slice(0, lo)
+                .append(StatementRope.of(statements))
+                .append(children.slice(hi + 1, children.size()));
+
+        // drop lo..hi by moving the gap over them, then shift every span after the gap at once
+        moveGap(hi + 1);
+        gapStart = lo;
+        lengthBase += delta;
+        lineBase += lineDelta;
+        if (gapEnd - gapStart < spans.size()) {
+            growGap(spans.size());
+        }
+        for (int[] span : spans) {
+            starts[gapStart] = span[0];
+            ends[gapStart] = span[1];
+            endLines[gapStart] = span[2];
+            endLineStarts[gapStart] = span[3];
+            gapStart++;
+        }
+
+        this.program = new WhiletranProgram(children);
+        this.lastReparsedStatements = statements.size();
+    }
+
+    private int statementCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    private int start(int statement) {
+        return statement < gapStart ? starts[statement] : starts[statement + gapEnd - gapStart] + lengthBase;
+    }
+
+    private int end(int statement) {
+        return statement < gapStart ? ends[statement] : ends[statement + gapEnd - gapStart] + lengthBase;
+    }
+
+    private int endLine(int statement) {
+        return statement < gapStart ? endLines[statement] : endLines[statement + gapEnd - gapStart] + lineBase;
+    }
+
+    private int endLineStart(int statement) {
+        return statement < gapStart ? endLineStarts[statement] : endLineStarts[statement + gapEnd - gapStart] + lengthBase;
+    }
+
+    // moves the gap to just before statement, converting the spans it passes over
+    private void moveGap(int statement) {
+        while (gapStart > statement) {
+            gapStart--;
+            gapEnd--;
+            starts[gapEnd] = starts[gapStart] - lengthBase;
+            ends[gapEnd] = ends[gapStart] - lengthBase;
+            endLines[gapEnd] = endLines[gapStart] - lineBase;
+            endLineStarts[gapEnd] = endLineStarts[gapStart] - lengthBase;
+        }
+        while (gapStart < statement) {
+            starts[gapStart] = starts[gapEnd] + lengthBase;
+            ends[gapStart] = ends[gapEnd] + lengthBase;
+            endLines[gapStart] = endLines[gapEnd] + lineBase;
+            endLineStarts[gapStart] = endLineStarts[gapEnd] + lengthBase;
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    private void growGap(int needed) {
+        int after = starts.length - gapEnd;
+        int capacity = Math.max(starts.length * 2, gapStart + needed + after);
+        starts = regrow(starts, capacity, after);
+        ends = regrow(ends, capacity, after);
+        endLines = regrow(endLines, capacity, after);
+        endLineStarts = regrow(endLineStarts, capacity, after);
+        gapEnd = capacity - after;
+    }
+
+    // a copy with room for capacity, keeping the last after entries at the end
+    private static int[] regrow(int[] array, int capacity, int after) {
+        int[] grown = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, array.length - after, grown, capacity - after, after);
+        return grown;
+    }
+
+    // the spans are sorted and don't overlap, so both lookups are binary searches
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = statementCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int firstStartingAfter(int offset) {
+        int low = 0;
+        int high = statementCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (start(mid) <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int countLines(CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * The source as a gap buffer: the text before the gap at the front of chars, the text after it at
+     * the back. A replacement moves the gap to where it goes, so edits close together move few chars.
+     */
+    private static final class Source implements CharSequence {
+
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        Source(String text) {
+            chars = new char[Math.max(16, text.length() * 2)];
+            text.getChars(0, text.length(), chars, 0);
+            gapStart = text.length();
+            gapEnd = chars.length;
+        }
+
+        void replace(int offset, int length, String replacement) {
+            moveGap(offset);
+            gapEnd += length;
+            if (gapEnd - gapStart < replacement.length()) {
+                int after = chars.length - gapEnd;
+                char[] grown = new char[Math.max(chars.length * 2, gapStart + replacement.length() + after)];
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - after, after);
+                chars = grown;
+                gapEnd = grown.length - after;
+            }
+            replacement.getChars(0, replacement.length(), chars, gapStart);
+            gapStart += replacement.length();
+        }
+
+        private void moveGap(int offset) {
+            if (offset < gapStart) {
+                int moved = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - moved, moved);
+                gapStart -= moved;
+                gapEnd -= moved;
+            } else if (offset > gapStart) {
+                int moved = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, moved);
+                gapStart += moved;
+                gapEnd += moved;
+            }
+        }
+
+        @Override
+        public int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder text = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                text.append(charAt(i));
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(length()).append(chars, 0, gapStart)
+                    .append(chars, gapEnd, chars.length - gapEnd).toString();
+        }
+    }
+}
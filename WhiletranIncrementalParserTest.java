@@ -0,0 +1,206 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranIncrementalParserTest {
+
+    static final String SRC = """
+            A = READ
+            B = READ
+            ! divide A by B
+            DIV = -1
+            DO
+                DIV = DIV + 1
+                A = A - B
+            WHILE A
+            ENDDO
+            IF DIV THEN
+                WRITE DIV
+            ELSE
+                WRITE 0
+            ENDIF
+            """;
+
+    @Test
+    public void testEditReusesUntouchedStatements() {
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram before = parser.parse(SRC);
+        int offset = SRC.indexOf("-1");
+
+        WhiletranProgram after = parser.edit(before, offset, 2, "-2");
+
+        assertEquals(new WhiletranParser().parse(parser.source()), after);
+        assertEquals(1, parser.getLastReparsedStatements());
+        assertSame(before.children().get(0), after.children().get(0));
+        assertSame(before.children().get(1), after.children().get(1));
+        assertNotSame(before.children().get(2), after.children().get(2));
+        assertSame(before.children().get(3), after.children().get(3));
+        assertSame(before.children().get(4), after.children().get(4));
+    }
+
+    @Test
+    public void testEditInsideBlockReparsesTheBlock() {
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram before = parser.parse(SRC);
+        int offset = SRC.indexOf("WRITE 0") + 6;
+
+        WhiletranProgram after = parser.edit(before, offset, 1, "7");
+
+        assertEquals(new WhiletranParser().parse(parser.source()), after);
+        assertEquals(1, parser.getLastReparsedStatements());
+        assertSame(before.children().get(3), after.children().get(3));
+        IfStatement ifStatement = (IfStatement) after.children().get(4);
+        assertEquals(7, ((NumberExpression) ((WriteStatement) ifStatement.elseBody().get(0)).expression()).num());
+    }
+
+    @Test
+    public void testInsertingStatements() {
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram before = parser.parse(SRC);
+        int offset = SRC.indexOf("DIV = -1");
+
+        WhiletranProgram after = parser.edit(before, offset, 0, "WRITE A\nWRITE B\n");
+
+        assertEquals(new WhiletranParser().parse(parser.source()), after);
+        assertEquals(7, after.children().size());
+        assertSame(before.children().get(4), after.children().get(6));
+    }
+
+    @Test
+    public void testEditChangingStructureWidensTheRegion() {
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram before = parser.parse("X = A\nY = 1\nWRITE X");
+
+        // '+ 1' on its own isn't a statement, it continues the assignment before it
+        WhiletranProgram after = parser.edit(before, 6, 5, "+ 1");
+
+        assertEquals(new WhiletranParser().parse(parser.source()), after);
+        assertEquals(2, after.children().size());
+        assertInstanceOf(AdditiveExpression.class, ((AssignmentStatement) after.children().get(0)).expression());
+    }
+
+    @Test
+    public void testCommentRunningIntoNextStatement() {
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram before = parser.parse("X = 1 WRITE X\nWRITE 2");
+
+        WhiletranProgram after = parser.edit(before, 5, 0, " !");
+
+        assertEquals(new WhiletranParser().parse(parser.source()), after);
+        assertEquals(2, after.children().size());
+    }
+
+    @Test
+    public void testBrokenEditFailsLikeAFullParse() {
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram before = parser.parse(SRC);
+        int offset = SRC.indexOf("ENDIF");
+        assertThrows(WhiletranParseException.class, () -> parser.edit(before, offset, 5, ""));
+    }
+
+    @Test
+    public void testRejectedNumberLeavesThePreviousVersion() {
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram before = parser.parse(SRC);
+        int offset = SRC.indexOf("-1") + 1;
+
+        assertThrows(WhiletranParseException.class, () -> parser.edit(before, offset, 1, "99999999999"));
+        assertEquals(SRC, parser.source());
+
+        WhiletranProgram after = parser.edit(before, offset, 1, "2");
+        assertEquals(new WhiletranParser().parse(SRC.replace("-1", "-2")), after);
+        assertSame(before.children().get(4), after.children().get(4));
+    }
+
+    @Test
+    public void testColumnsOnALongLine() {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            src.append("X = X + ").append(i % 10).append(' ');
+        }
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram program = parser.parse(src.toString());
+        int offset = src.lastIndexOf("X = X");
+
+        // the error is reported at the same column a full parse gives, far along the one line
+        String edited = src.substring(0, offset) + "X = 1000 " + src.substring(offset + "X = X + 9 ".length());
+        WhiletranParseException expected = assertThrows(WhiletranParseException.class,
+                () -> new WhiletranParser().parse(edited));
+        WhiletranParseException actual = assertThrows(WhiletranParseException.class,
+                () -> parser.edit(program, offset, "X = X + 9 ".length(), "X = 1000 "));
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(src.toString(), parser.source());
+    }
+
+    @Test
+    public void testEditsToALargeProgram() {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            src.append("X").append(i % 7).append(" = ").append(i % 100).append(" + Y\n");
+        }
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram program = parser.parse(src.toString());
+        Random random = new Random(24);
+        StringBuilder expected = new StringBuilder(src);
+        for (int i = 0; i < 200; i++) {
+            // a handful of statements around one spot, the way an editor sends them
+            int line = 900 + random.nextInt(200);
+            int offset = nthLine(expected, line);
+            WhiletranProgram previous = program;
+            program = parser.edit(program, offset, 0, "WRITE " + i + "\n");
+            expected.insert(offset, "WRITE " + i + "\n");
+            // the new statement and the one it was inserted in front of
+            assertEquals(2, parser.getLastReparsedStatements());
+            assertSame(previous.children().get(0), program.children().get(0));
+            assertSame(previous.children().getLast(), program.children().getLast());
+        }
+        assertEquals(expected.toString(), parser.source());
+        assertEquals(new WhiletranParser().parse(expected.toString()), program);
+        WhiletranProgram last = program;
+        assertThrows(UnsupportedOperationException.class, () -> last.children().removeFirst());
+    }
+
+    private static int nthLine(CharSequence src, int line) {
+        int offset = 0;
+        for (int i = 0; i < line; i++) {
+            while (src.charAt(offset) != '\n') {
+                offset++;
+            }
+            offset++;
+        }
+        return offset;
+    }
+
+    @Test
+    public void testRandomEditsMatchFullParse() {
+        String[] snippets = {"X", " ", "\n", "1", "-", "+ 1", "WRITE 3 ", "! c\n", "= ", "IF X THEN WRITE X ENDIF ", ""};
+        Random random = new Random(366);
+        WhiletranIncrementalParser parser = new WhiletranIncrementalParser();
+        WhiletranProgram program = parser.parse(SRC);
+        for (int i = 0; i < 500; i++) {
+            String src = parser.source();
+            int offset = random.nextInt(src.length() + 1);
+            int length = random.nextInt(Math.min(4, src.length() - offset) + 1);
+            String replacement = snippets[random.nextInt(snippets.length)];
+            String edited = src.substring(0, offset) + replacement + src.substring(offset + length);
+
+            WhiletranProgram expected;
+            try {
+                expected = new WhiletranParser().parse(edited);
+            } catch (WhiletranParseException e) {
+                WhiletranProgram previous = program;
+                assertThrows(WhiletranParseException.class, () -> parser.edit(previous, offset, length, replacement));
+                // the failed edit leaves the parser at the previous version
+                continue;
+            }
+            program = parser.edit(program, offset, length, replacement);
+            assertEquals(expected, program);
+            assertEquals(edited, parser.source());
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+import csci366.lmc.whiletran.tree.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs programs straight from the tree, for when only the output matters and not the LMC cycle
+ * count. Each node is compiled once into a lambda with its children and its variables' slots already
+ * bound, so running does no instanceof checks or map lookups, only calls and int array accesses.
+ *
+ * Results match running the generated LMC code on {@code LittleManComputer}, with the same rules as
+ * {@link WhiletranJvmCompiler}: ADD and SUB are range checked, comparisons subtract their sides first
+ * and a plain value as a condition is non-zero for IF and >= 0 for DO.
+ *
+ * A step is one statement, plus one for every DO iteration, and running out of steps stops the
+ * program the same way {@link LmcMachine#run(long)} does. Everything one compile needs lives in its
+ * own Context, so an interpreter can be shared between threads.
+ */
+public class WhiletranInterpreter {
+
+    @FunctionalInterface
+    interface Statement {
+        void execute(Frame frame);
+    }
+
+    @FunctionalInterface
+    interface Expression {
+        int evaluate(Frame frame);
+    }
+
+    @FunctionalInterface
+    interface Condition {
+        boolean test(Frame frame);
+    }
+
+    // the state of one run, so a compiled program can run on several threads at once
+    static final class Frame {
+        final int[] slots;
+        final WhiletranIO io;
+        long stepsLeft;
+
+        Frame(int slotCount, WhiletranIO io, long maxSteps) {
+            this.slots = new int[slotCount];
+            this.io = io;
+            this.stepsLeft = maxSteps;
+        }
+
+        void step() {
+            if (--stepsLeft < 0) {
+                throw OutOfSteps.INSTANCE;
+            }
+        }
+    }
+
+    // thrown through the lambdas to stop a run, so it has no stack trace to fill in
+    private static final class OutOfSteps extends RuntimeException {
+        static final OutOfSteps INSTANCE = new OutOfSteps();
+
+        private static final long serialVersionUID = 1L;
+
+        private OutOfSteps() {
+            super("Out of steps", null, false, false);
+        }
+    }
+
+    public static final class CompiledProgram {
+
+        private final Statement body;
+        private final int slotCount;
+
+        CompiledProgram(Statement body, int slotCount) {
+            this.body = body;
+            this.slotCount = slotCount;
+        }
+
+        /**
+         * Runs until the program ends or has taken maxSteps steps.
+         *
+         * @return true if the program ran to the end
+         */
+        public boolean run(WhiletranIO io, long maxSteps) {
+            try {
+                body.execute(new Frame(slotCount, io, maxSteps));
+                return true;
+            } catch (OutOfSteps e) {
+                return false;
+            }
+        }
+
+        // like LmcMachine, running out of input is an IllegalStateException
+        public int[] run(int... inputs) {
+            ArrayIO io = new ArrayIO(inputs);
+            run(io, Long.MAX_VALUE);
+            return io.getOutput();
+        }
+    }
+
+    public CompiledProgram compile(WhiletranProgram program) {
+        Context context = new Context();
+        Statement body = context.compileStatements(program.children());
+        return new CompiledProgram(body, context.slots.size());
+    }
+
+    // the state of a single compile
+    private static final class Context {
+
+        final Map<String, Integer> slots = new HashMap<>();
+
+        private Statement compileStatements(List<WhiletranStatement> statements) {
+            Statement[] compiled = new Statement[statements.size()];
+            int i = 0;
+            for (WhiletranStatement statement : statements) {
+                compiled[i++] = compileStatement(statement);
+            }
+            if (compiled.length == 1) {
+                Statement only = compiled[0];
+                return frame -> {
+                    frame.step();
+                    only.execute(frame);
+                };
+            }
+            return frame -> {
+                for (Statement statement : compiled) {
+                    frame.step();
+                    statement.execute(frame);
+                }
+            };
+        }
+
+        private Statement compileStatement(WhiletranStatement statement) {
+            if (statement instanceof WriteStatement ws) {
+                Expression expression = compileExpression(ws.expression());
+                return frame -> frame.io.write(expression.evaluate(frame));
+
+            } else if (statement instanceof AssignmentStatement as) {
+                Expression expression = compileExpression(as.expression());
+                int slot = slotFor(as.variable());
+                return frame -> frame.slots[slot] = expression.evaluate(frame);
+
+            } else if (statement instanceof IfStatement is) {
+                Statement thenBody = compileStatements(is.thenBody());
+                Statement elseBody = is.elseBody() == null ? null : compileStatements(is.elseBody());
+                if (is.condition() instanceof BooleanExpression be) {
+                    return be.value() ? thenBody : elseBody == null ? frame -> { } : elseBody;
+                }
+                Condition condition = compileCondition(is.condition(), false);
+                if (elseBody == null) {
+                    return frame -> {
+                        if (condition.test(frame)) {
+                            thenBody.execute(frame);
+                        }
+                    };
+                }
+                return frame -> {
+                    if (condition.test(frame)) {
+                        thenBody.execute(frame);
+                    } else {
+                        elseBody.execute(frame);
+                    }
+                };
+
+            } else if (statement instanceof DoWhileLoopStatement dl) {
+                Statement body = compileStatements(dl.body());
+                Condition condition = compileCondition(dl.condition(), true);
+                return frame -> {
+                    do {
+                        frame.step();
+                        body.execute(frame);
+                    } while (condition.test(frame));
+                };
+
+            } else {
+                throw new IllegalArgumentException("Don't know how to compile " + statement);
+            }
+        }
+
+        // a plain value is true when it's >= 0 in a DO condition and when it's non-zero in an IF
+        private Condition compileCondition(WhiletranExpression condition, boolean loop) {
+            if (condition instanceof BooleanExpression be) {
+                boolean value = be.value();
+                return frame -> value;
+            }
+            if (condition instanceof ConditionalExpression ce) {
+                Expression difference = compileDifference(ce);
+                if (ce.op().equals("==")) {
+                    return frame -> difference.evaluate(frame) == 0;
+                }
+                return frame -> difference.evaluate(frame) >= 0;
+            }
+            Expression value = compileExpression(condition);
+            if (loop) {
+                return frame -> value.evaluate(frame) >= 0;
+            }
+            return frame -> value.evaluate(frame) != 0;
+        }
+
+        // the code generator skips SUB N_0, so comparing with 0 isn't range checked either
+        private Expression compileDifference(ConditionalExpression ce) {
+            if (!ce.op().equals("==") && !ce.op().equals(">=")) {
+                throw new IllegalArgumentException("Don't know how to compile " + ce);
+            }
+            Expression lhs = compileExpression(ce.lhs());
+            if (ce.rhs() instanceof NumberExpression ne && ne.num() == 0) {
+                return lhs;
+            }
+            Expression rhs = compileExpression(ce.rhs());
+            return frame -> LmcMachine.checkRange(lhs.evaluate(frame) - rhs.evaluate(frame));
+        }
+
+        private Expression compileExpression(WhiletranExpression expression) {
+            if (expression instanceof NumberExpression ne) {
+                int num = literal(ne);
+                return frame -> num;
+
+            } else if (expression instanceof BooleanExpression be) {
+                int value = be.value() ? 1 : 0;
+                return frame -> value;
+
+            } else if (expression instanceof VariableExpression ve) {
+                int slot = slotFor(ve.name());
+                return frame -> frame.slots[slot];
+
+            } else if (expression instanceof ReadExpression) {
+                return frame -> frame.io.read();
+
+            } else if (expression instanceof AdditiveExpression ae) {
+                return compileAdditive(ae);
+
+            } else if (expression instanceof ConditionalExpression ce) {
+                Condition condition = compileCondition(ce, false);
+                return frame -> condition.test(frame) ? 1 : 0;
+
+            } else {
+                throw new IllegalArgumentException("Don't know how to compile " + expression);
+            }
+        }
+
+        // the right hand side is almost always a constant or a variable, so those get their own lambdas
+        private Expression compileAdditive(AdditiveExpression ae) {
+            Expression lhs = compileExpression(ae.lhs());
+            int sign = ae.op().equals("+") ? 1 : -1;
+            if (ae.rhs() instanceof NumberExpression ne) {
+                int constant = sign * literal(ne);
+                return frame -> LmcMachine.checkRange(lhs.evaluate(frame) + constant);
+            }
+            if (ae.rhs() instanceof VariableExpression ve) {
+                int slot = slotFor(ve.name());
+                if (sign > 0) {
+                    return frame -> LmcMachine.checkRange(lhs.evaluate(frame) + frame.slots[slot]);
+                }
+                return frame -> LmcMachine.checkRange(lhs.evaluate(frame) - frame.slots[slot]);
+            }
+            Expression rhs = compileExpression(ae.rhs());
+            if (sign > 0) {
+                return frame -> LmcMachine.checkRange(lhs.evaluate(frame) + rhs.evaluate(frame));
+            }
+            return frame -> LmcMachine.checkRange(lhs.evaluate(frame) - rhs.evaluate(frame));
+        }
+
+        private static int literal(NumberExpression ne) {
+            if (ne.num() < LittleManComputer.MIN_VALUE || LittleManComputer.MAX_VALUE < ne.num()) {
+                throw new IllegalStateException("Value out of range: " + ne.num());
+            }
+            return ne.num();
+        }
+
+        private int slotFor(String variable) {
+            return slots.computeIfAbsent(variable, v -> slots.size());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranInterpreterTest {
+
+    @Test
+    public void testDivisionAndFib() {
+        WhiletranInterpreter.CompiledProgram division = compile(LmcMachineTest.DIVISION);
+        for (int a = 0; a < 60; a += 7) {
+            assertMatchesEmulator(LmcMachineTest.DIVISION, division, a, 10);
+        }
+        WhiletranInterpreter.CompiledProgram fib = compile(LmcMachineTest.FIB);
+        for (int n = 1; n < 15; n++) {
+            assertMatchesEmulator(LmcMachineTest.FIB, fib, n);
+        }
+        assertArrayEquals(new int[]{55}, fib.run(10));
+    }
+
+    @Test
+    public void testConditions() {
+        WhiletranInterpreter.CompiledProgram program = compile("""
+                X = READ
+                IF X >= 3 THEN
+                  IF X == 4 THEN WRITE 4 ELSE WRITE 3 ENDIF
+                ELSE
+                  WRITE X == 0
+                ENDIF
+                IF X THEN WRITE 1 ENDIF
+                DO X = X + 1 WHILE 5 >= X ENDDO
+                WRITE X
+                DO X = X + 1 WHILE FALSE ENDDO
+                WRITE X""");
+        assertArrayEquals(new int[]{1, 6, 7}, program.run(0));
+        assertArrayEquals(new int[]{0, 1, 6, 7}, program.run(2));
+        assertArrayEquals(new int[]{4, 1, 6, 7}, program.run(4));
+        assertArrayEquals(new int[]{3, 1, 10, 11}, program.run(9));
+    }
+
+    @Test
+    public void testStepBudget() {
+        WhiletranInterpreter.CompiledProgram program = compile("DO X = X + 1 WHILE 1 ENDDO");
+        assertFalse(program.run(new ArrayIO(new int[0]), 1000));
+
+        // 2 statements, 1 loop iteration and 1 statement in the loop
+        WhiletranInterpreter.CompiledProgram loop = compile("X = 0 DO WRITE X WHILE FALSE ENDDO");
+        assertTrue(loop.run(new ArrayIO(new int[0]), 4));
+        assertFalse(loop.run(new ArrayIO(new int[0]), 3));
+    }
+
+    @Test
+    public void testOutOfRange() {
+        WhiletranInterpreter.CompiledProgram program = compile("X = READ WRITE X + 999");
+        assertArrayEquals(new int[]{999}, program.run(0));
+        assertThrows(IllegalStateException.class, () -> program.run(1));
+    }
+
+    @Test
+    public void testMissingInput() {
+        assertThrows(IllegalStateException.class, () -> compile("X = READ").run());
+    }
+
+    @Test
+    public void testRandomProgramsMatchEmulator() {
+        Random random = new Random(14);
+        for (int i = 0; i < 300; i++) {
+            StringBuilder src = new StringBuilder();
+            WhiletranJvmCompilerTest.generateStatements(random, src, 2, 0);
+            int[] inputs = random.ints(12, -20, 20).toArray();
+            assertMatchesEmulator(src.toString(), compile(src.toString()), inputs);
+        }
+    }
+
+    private static WhiletranInterpreter.CompiledProgram compile(String src) {
+        return new WhiletranInterpreter().compile(new WhiletranParser().parse(src));
+    }
+
+    // a program that fails on the LMC (out of range, out of input) must fail in the interpreter too
+    private static void assertMatchesEmulator(String src, WhiletranInterpreter.CompiledProgram program, int... inputs) {
+        int[] image = new WhiletranCompiler().compile(src).mailboxes();
+        LmcMachine machine = new LmcMachine();
+        machine.load(image);
+        machine.pushInputs(inputs);
+        try {
+            machine.run();
+        } catch (IllegalStateException e) {
+            assertThrows(IllegalStateException.class, () -> program.run(inputs), src);
+            return;
+        }
+
+        LittleManComputer computer = new LittleManComputer();
+        computer.load(image);
+        for (int input : inputs) {
+            computer.pushInputs(input);
+        }
+        computer.run();
+        LinkedList<Integer> expected = computer.getOutput();
+        int[] actual = program.run(inputs);
+        assertEquals(expected.size(), actual.length, src);
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals((int) expected.get(i), actual[i], src);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package csci366.lmc.whiletran;
+
+import java.util.Arrays;
+
+/**
+ * A flow graph over a {@link WhiletranArena}, for data-flow analysis. There's one instruction per
+ * assignment, WRITE and IF or DO condition, in basic blocks linked by the edges control can take.
+ * Expressions have no side effects apart from a whole READ, so an instruction keeps its expression
+ * as the arena node it came from and only records which variables it reads and which one it assigns.
+ *
+ * Blocks are numbered in program order, block 0 is the entry and the last block the exit:
+ *
+ * - an IF condition ends its block, with edges to the THEN block, the ELSE block or straight to the
+ *   block after the IF, and from the end of each branch to there
+ * - a DO starts a new block for the loop head, and its condition ends the block that jumps back to
+ *   the head or on to the block after the loop
+ *
+ * Blocks can be empty. Everything is kept in int arrays like the arena, lists of uses, edges and
+ * definitions as runs in one shared array each.
+ */
+public final class WhiletranIr {
+
+    public static final int ASSIGN = 0;
+    public static final int WRITE = 1;
+    public static final int BRANCH = 2;
+
+    private final WhiletranArena arena;
+    private final int instructionCount;
+    private final int[] kinds;
+    private final int[] nodes;
+    private final int[] defs;
+    private final int[] useStarts;
+    private final int[] uses;
+    private final int[] blockStarts;
+    private final int[] successorStarts;
+    private final int[] successors;
+    private final int[] predecessorStarts;
+    private final int[] predecessors;
+    private final int[] definitionStarts;
+    private final int[] definitions;
+    private final int[] copies;
+
+    private WhiletranIr(Construction c) {
+        arena = c.arena;
+        instructionCount = c.instructionCount;
+        kinds = Arrays.copyOf(c.kinds, instructionCount);
+        nodes = Arrays.copyOf(c.nodes, instructionCount);
+        defs = Arrays.copyOf(c.defs, instructionCount);
+        useStarts = Arrays.copyOf(c.useStarts, instructionCount + 1);
+        useStarts[instructionCount] = c.useCount;
+        uses = Arrays.copyOf(c.uses, c.useCount);
+        blockStarts = Arrays.copyOf(c.blockStarts, c.blockCount + 1);
+        blockStarts[c.blockCount] = instructionCount;
+
+        successorStarts = new int[c.blockCount + 1];
+        predecessorStarts = new int[c.blockCount + 1];
+        for (int e = 0; e < c.edgeCount; e++) {
+            successorStarts[c.edgeFrom[e] + 1]++;
+            predecessorStarts[c.edgeTo[e] + 1]++;
+        }
+        for (int b = 0; b < c.blockCount; b++) {
+            successorStarts[b + 1] += successorStarts[b];
+            predecessorStarts[b + 1] += predecessorStarts[b];
+        }
+        successors = new int[c.edgeCount];
+        predecessors = new int[c.edgeCount];
+        int[] nextSuccessor = Arrays.copyOf(successorStarts, c.blockCount);
+        int[] nextPredecessor = Arrays.copyOf(predecessorStarts, c.blockCount);
+        for (int e = 0; e < c.edgeCount; e++) {
+            successors[nextSuccessor[c.edgeFrom[e]]++] = c.edgeTo[e];
+            predecessors[nextPredecessor[c.edgeTo[e]]++] = c.edgeFrom[e];
+        }
+
+        int variables = arena.variableCount();
+        definitionStarts = new int[variables + 1];
+        for (int i = 0; i < instructionCount; i++) {
+            if (defs[i] >= 0) {
+                definitionStarts[defs[i] + 1]++;
+            }
+        }
+        for (int v = 0; v < variables; v++) {
+            definitionStarts[v + 1] += definitionStarts[v];
+        }
+        definitions = new int[definitionStarts[variables]];
+        int[] nextDefinition = Arrays.copyOf(definitionStarts, variables);
+        int copyCount = 0;
+        for (int i = 0; i < instructionCount; i++) {
+            if (defs[i] >= 0) {
+                definitions[nextDefinition[defs[i]]++] = i;
+            }
+            if (copySource(i) >= 0) {
+                copyCount++;
+            }
+        }
+        copies = new int[copyCount];
+        copyCount = 0;
+        for (int i = 0; i < instructionCount; i++) {
+            if (copySource(i) >= 0) {
+                copies[copyCount++] = i;
+            }
+        }
+    }
+
+    public static WhiletranIr from(WhiletranArena arena) {
+        Construction construction = new Construction(arena);
+        construction.list(arena.root());
+        return new WhiletranIr(construction);
+    }
+
+    public WhiletranArena arena() {
+        return arena;
+    }
+
+    public int variableCount() {
+        return arena.variableCount();
+    }
+
+    public int instructionCount() {
+        return instructionCount;
+    }
+
+    public int kind(int instruction) {
+        return kinds[instruction];
+    }
+
+    // the arena statement an instruction came from, the IF or DO itself for a BRANCH
+    public int node(int instruction) {
+        return nodes[instruction];
+    }
+
+    // the value assigned, written or branched on
+    public int expression(int instruction) {
+        int node = nodes[instruction];
+        return kinds[instruction] == BRANCH ? arena.condition(node) : arena.expression(node);
+    }
+
+    // the variable an ASSIGN assigns, -1 for anything else
+    public int def(int instruction) {
+        return defs[instruction];
+    }
+
+    // each variable the expression reads, once
+    public int useCount(int instruction) {
+        return useStarts[instruction + 1] - useStarts[instruction];
+    }
+
+    public int use(int instruction, int index) {
+        return uses[useStarts[instruction] + index];
+    }
+
+    // the variable an assignment copies, when its whole expression is a different variable, or -1
+    public int copySource(int instruction) {
+        if (kinds[instruction] != ASSIGN) {
+            return -1;
+        }
+        int expression = arena.expression(nodes[instruction]);
+        if (arena.kind(expression) != WhiletranArena.VARIABLE || arena.variable(expression) == defs[instruction]) {
+            return -1;
+        }
+        return arena.variable(expression);
+    }
+
+    // the copies numbered from 0 in program order, each the instruction it is
+    public int copyCount() {
+        return copies.length;
+    }
+
+    public int copy(int index) {
+        return copies[index];
+    }
+
+    public int blockCount() {
+        return blockStarts.length - 1;
+    }
+
+    // the block's instructions run from blockStart up to but not including blockEnd
+    public int blockStart(int block) {
+        return blockStarts[block];
+    }
+
+    public int blockEnd(int block) {
+        return blockStarts[block + 1];
+    }
+
+    public int successorCount(int block) {
+        return successorStarts[block + 1] - successorStarts[block];
+    }
+
+    public int successor(int block, int index) {
+        return successors[successorStarts[block] + index];
+    }
+
+    public int predecessorCount(int block) {
+        return predecessorStarts[block + 1] - predecessorStarts[block];
+    }
+
+    public int predecessor(int block, int index) {
+        return predecessors[predecessorStarts[block] + index];
+    }
+
+    // the assignments to a variable, in program order
+    public int definitionCount(int variable) {
+        return definitionStarts[variable + 1] - definitionStarts[variable];
+    }
+
+    public int definition(int variable, int index) {
+        return definitions[definitionStarts[variable] + index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < blockCount(); b++) {
+            sb.append('b').append(b).append(" ->");
+            for (int k = 0; k < successorCount(b); k++) {
+                sb.append(" b").append(successor(b, k));
+            }
+            sb.append('\n');
+            for (int i = blockStart(b); i < blockEnd(b); i++) {
+                sb.append("  ").append(i).append(": ").append(kinds[i] == ASSIGN ? "ASSIGN " + arena.name(defs[i])
+                        : kinds[i] == WRITE ? "WRITE" : "BRANCH");
+                for (int k = 0; k < useCount(i); k++) {
+                    sb.append(k == 0 ? " uses " : " ").append(arena.name(use(i, k)));
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    // the growing arrays while the graph is built, one walk over the arena
+    private static final class Construction {
+        final WhiletranArena arena;
+        // the last instruction each variable was recorded as used by, to list it only once
+        final int[] usedBy;
+        int[] kinds = new int[64];
+        int[] nodes = new int[64];
+        int[] defs = new int[64];
+        int[] useStarts = new int[64];
+        int instructionCount = 0;
+        int[] uses = new int[64];
+        int useCount = 0;
+        int[] blockStarts = new int[16];
+        int blockCount = 1;
+        int[] edgeFrom = new int[16];
+        int[] edgeTo = new int[16];
+        int edgeCount = 0;
+        int current = 0;
+
+        Construction(WhiletranArena arena) {
+            this.arena = arena;
+            this.usedBy = new int[arena.variableCount()];
+            Arrays.fill(usedBy, -1);
+        }
+
+        void list(int list) {
+            for (int i = 0; i < arena.size(list); i++) {
+                statement(arena.statement(list, i));
+            }
+        }
+
+        void statement(int node) {
+            switch (arena.kind(node)) {
+                case WhiletranArena.WRITE -> add(WRITE, node, -1, arena.expression(node));
+                case WhiletranArena.ASSIGN -> add(ASSIGN, node, arena.variable(node), arena.expression(node));
+                case WhiletranArena.IF -> {
+                    add(BRANCH, node, -1, arena.condition(node));
+                    int branch = current;
+                    edge(branch, newBlock());
+                    list(arena.thenBody(node));
+                    int thenEnd = current;
+                    int elseEnd = branch;
+                    if (arena.elseBody(node) >= 0) {
+                        edge(branch, newBlock());
+                        list(arena.elseBody(node));
+                        elseEnd = current;
+                    }
+                    int join = newBlock();
+                    edge(thenEnd, join);
+                    edge(elseEnd, join);
+                }
+                case WhiletranArena.DO -> {
+                    int before = current;
+                    int head = newBlock();
+                    edge(before, head);
+                    list(arena.body(node));
+                    add(BRANCH, node, -1, arena.condition(node));
+                    int tail = current;
+                    edge(tail, head);
+                    edge(tail, newBlock());
+                }
+                default -> throw new IllegalArgumentException("Not a statement: " + node);
+            }
+        }
+
+        void add(int kind, int node, int def, int expression) {
+            if (instructionCount == kinds.length) {
+                int capacity = kinds.length * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                nodes = Arrays.copyOf(nodes, capacity);
+                defs = Arrays.copyOf(defs, capacity);
+                useStarts = Arrays.copyOf(useStarts, capacity);
+            }
+            kinds[instructionCount] = kind;
+            nodes[instructionCount] = node;
+            defs[instructionCount] = def;
+            useStarts[instructionCount] = useCount;
+            collectUses(expression);
+            instructionCount++;
+        }
+
+        void collectUses(int expression) {
+            switch (arena.kind(expression)) {
+                case WhiletranArena.VARIABLE -> {
+                    int variable = arena.variable(expression);
+                    if (usedBy[variable] != instructionCount) {
+                        usedBy[variable] = instructionCount;
+                        if (useCount == uses.length) {
+                            uses = Arrays.copyOf(uses, useCount * 2);
+                        }
+                        uses[useCount++] = variable;
+                    }
+                }
+                case WhiletranArena.ADD, WhiletranArena.SUB, WhiletranArena.GREATER_EQUAL, WhiletranArena.EQUAL -> {
+                    collectUses(arena.lhs(expression));
+                    collectUses(arena.rhs(expression));
+                }
+                default -> {
+                }
+            }
+        }
+
+        int newBlock() {
+            if (blockCount == blockStarts.length) {
+                blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+            }
+            blockStarts[blockCount] = instructionCount;
+            current = blockCount++;
+            return current;
+        }
+
+        void edge(int from, int to) {
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+            }
+            edgeFrom[edgeCount] = from;
+            edgeTo[edgeCount] = to;
+            edgeCount++;
+        }
+    }
+}
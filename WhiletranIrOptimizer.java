@@ -0,0 +1,300 @@
+package csci366.lmc.whiletran;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data-flow optimization between the simplifier and the code generator. The program is turned into
+ * a {@link WhiletranIr}, analysed with {@link WhiletranDataflow}, and a new arena is built without
+ * what the passes found. That's repeated until none of them finds anything:
+ *
+ * - a read of a variable that can't have been assigned yet is its initial 0
+ * - a read of X where {@code X = Y} holds on every path there reads Y instead
+ * - an assignment whose value is never read is dropped, as is {@code X = X}. The value must be one
+ *   that can't fail to compute, so a READ, which takes an input, and any arithmetic or comparison,
+ *   which the machine may find out of range, stay
+ *
+ * A variable that's no longer read or assigned anywhere isn't in the new arena, so it gets no mailbox.
+ */
+public class WhiletranIrOptimizer {
+
+    public enum Pass {
+        /** reads of a variable's initial 0 */
+        INITIAL_ZERO,
+        /** reads through X = Y copies */
+        COPY_PROPAGATION,
+        /** assignments nothing reads */
+        DEAD_STORE
+    }
+
+    public record Result(WhiletranArena arena, Map<Pass, Integer> hits, int variablesRemoved) {
+    }
+
+    // a replacement for a variable read that isn't another variable
+    private static final int ZERO = -2;
+
+    private final Set<Pass> passes;
+
+    public WhiletranIrOptimizer() {
+        this(EnumSet.allOf(Pass.class));
+    }
+
+    public WhiletranIrOptimizer(Set<Pass> passes) {
+        this.passes = EnumSet.noneOf(Pass.class);
+        this.passes.addAll(passes);
+    }
+
+    public Result optimize(WhiletranArena arena) {
+        Map<Pass, Integer> hits = new EnumMap<>(Pass.class);
+        int variables = arena.variableCount();
+        while (true) {
+            Rewrite rewrite = new Rewrite(WhiletranIr.from(arena));
+            if (passes.contains(Pass.INITIAL_ZERO)) {
+                count(hits, Pass.INITIAL_ZERO, replaceInitialZeros(rewrite));
+            }
+            if (passes.contains(Pass.COPY_PROPAGATION)) {
+                count(hits, Pass.COPY_PROPAGATION, propagateCopies(rewrite));
+            }
+            if (passes.contains(Pass.DEAD_STORE)) {
+                count(hits, Pass.DEAD_STORE, removeDeadStores(rewrite));
+            }
+            if (!rewrite.changed) {
+                break;
+            }
+            arena = rewrite.apply();
+        }
+        return new Result(arena, hits, variables - arena.variableCount());
+    }
+
+    private static void count(Map<Pass, Integer> hits, Pass pass, int count) {
+        if (count > 0) {
+            hits.merge(pass, count, Integer::sum);
+        }
+    }
+
+    private static int replaceInitialZeros(Rewrite rewrite) {
+        WhiletranIr ir = rewrite.ir;
+        WhiletranDataflow.Result assigned = WhiletranDataflow.maybeAssigned(ir);
+        int count = 0;
+        for (int b = 0; b < ir.blockCount(); b++) {
+            BitSet maybe = (BitSet) assigned.in()[b].clone();
+            for (int i = ir.blockStart(b); i < ir.blockEnd(b); i++) {
+                for (int k = 0; k < ir.useCount(i); k++) {
+                    if (!maybe.get(ir.use(i, k))) {
+                        rewrite.substitute(i, ir.use(i, k), ZERO);
+                        count++;
+                    }
+                }
+                if (ir.def(i) >= 0) {
+                    maybe.set(ir.def(i));
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int propagateCopies(Rewrite rewrite) {
+        WhiletranIr ir = rewrite.ir;
+        WhiletranDataflow.Result available = WhiletranDataflow.availableCopies(ir);
+        int variables = ir.variableCount();
+        // per target variable, the copy that last assigned it and when. A copy still holds as long as
+        // its source hasn't been assigned since, which assignedAt tells
+        int[] copyOf = new int[variables];
+        int[] copiedAt = new int[variables];
+        int[] assignedAt = new int[variables];
+        Arrays.fill(copyOf, -1);
+        int[] touched = new int[variables];
+        int count = 0;
+        for (int b = 0; b < ir.blockCount(); b++) {
+            int touchedCount = 0;
+            BitSet in = available.in()[b];
+            for (int c = in.nextSetBit(0); c >= 0; c = in.nextSetBit(c + 1)) {
+                int copy = ir.copy(c);
+                if (copyOf[ir.def(copy)] < 0) {
+                    touched[touchedCount++] = ir.def(copy);
+                }
+                copyOf[ir.def(copy)] = copy;
+            }
+            int time = 0;
+            for (int i = ir.blockStart(b); i < ir.blockEnd(b); i++) {
+                time++;
+                for (int k = 0; k < ir.useCount(i); k++) {
+                    int use = ir.use(i, k);
+                    int copy = copyOf[use];
+                    if (copy >= 0 && assignedAt[ir.copySource(copy)] <= copiedAt[use]) {
+                        rewrite.substitute(i, use, ir.copySource(copy));
+                        count++;
+                    }
+                }
+                int def = ir.def(i);
+                if (def >= 0) {
+                    if (copyOf[def] < 0 && assignedAt[def] == 0) {
+                        touched[touchedCount++] = def;
+                    }
+                    assignedAt[def] = time;
+                    copyOf[def] = ir.copySource(i) >= 0 ? i : -1;
+                    copiedAt[def] = time;
+                }
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                copyOf[touched[t]] = -1;
+                copiedAt[touched[t]] = 0;
+                assignedAt[touched[t]] = 0;
+            }
+        }
+        return count;
+    }
+
+    private static int removeDeadStores(Rewrite rewrite) {
+        WhiletranIr ir = rewrite.ir;
+        WhiletranArena arena = ir.arena();
+        WhiletranDataflow.Result liveness = WhiletranDataflow.liveness(ir);
+        int count = 0;
+        for (int b = 0; b < ir.blockCount(); b++) {
+            BitSet live = (BitSet) liveness.out()[b].clone();
+            for (int i = ir.blockEnd(b) - 1; i >= ir.blockStart(b); i--) {
+                int def = ir.def(i);
+                if (def >= 0) {
+                    int expression = ir.expression(i);
+                    boolean selfCopy = arena.kind(expression) == WhiletranArena.VARIABLE && arena.variable(expression) == def;
+                    if (selfCopy || !live.get(def) && cannotFail(arena, expression)) {
+                        // its reads don't count either, which may make earlier stores dead too
+                        rewrite.remove(i);
+                        count++;
+                        continue;
+                    }
+                    live.clear(def);
+                }
+                for (int k = 0; k < ir.useCount(i); k++) {
+                    live.set(ir.use(i, k));
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean cannotFail(WhiletranArena arena, int expression) {
+        return switch (arena.kind(expression)) {
+            case WhiletranArena.NUMBER, WhiletranArena.BOOLEAN, WhiletranArena.VARIABLE -> true;
+            default -> false;
+        };
+    }
+
+    // what the passes found in one IR, and the new arena with it applied
+    private static final class Rewrite {
+        final WhiletranIr ir;
+        final WhiletranArena arena;
+        final int[] instructionOf;
+        final boolean[] removed;
+        // per instruction, pairs of variable and what reads of it become
+        final int[][] substitutions;
+        boolean changed = false;
+        WhiletranArena.Builder builder;
+
+        Rewrite(WhiletranIr ir) {
+            this.ir = ir;
+            this.arena = ir.arena();
+            this.instructionOf = new int[arena.nodeCount()];
+            for (int i = 0; i < ir.instructionCount(); i++) {
+                instructionOf[ir.node(i)] = i;
+            }
+            this.removed = new boolean[ir.instructionCount()];
+            this.substitutions = new int[ir.instructionCount()][];
+        }
+
+        void remove(int instruction) {
+            removed[instruction] = true;
+            changed = true;
+        }
+
+        // the first pass to replace a read wins, the rest see it next time round
+        void substitute(int instruction, int variable, int replacement) {
+            int[] pairs = substitutions[instruction];
+            if (pairs == null) {
+                substitutions[instruction] = new int[]{variable, replacement};
+            } else {
+                for (int p = 0; p < pairs.length; p += 2) {
+                    if (pairs[p] == variable) {
+                        return;
+                    }
+                }
+                pairs = Arrays.copyOf(pairs, pairs.length + 2);
+                pairs[pairs.length - 2] = variable;
+                pairs[pairs.length - 1] = replacement;
+                substitutions[instruction] = pairs;
+            }
+            changed = true;
+        }
+
+        WhiletranArena apply() {
+            builder = new WhiletranArena.Builder();
+            return builder.build(list(arena.root()));
+        }
+
+        int list(int list) {
+            int[] statements = new int[arena.size(list)];
+            int count = 0;
+            for (int i = 0; i < statements.length; i++) {
+                int node = arena.statement(list, i);
+                if (!removed[instructionOf[node]]) {
+                    statements[count++] = statement(node);
+                }
+            }
+            return builder.list(statements, 0, count);
+        }
+
+        int statement(int node) {
+            int[] pairs = substitutions[instructionOf[node]];
+            return switch (arena.kind(node)) {
+                case WhiletranArena.WRITE -> builder.write(expression(arena.expression(node), pairs));
+                case WhiletranArena.ASSIGN -> {
+                    int expression = expression(arena.expression(node), pairs);
+                    yield builder.assign(arena.name(arena.variable(node)), expression);
+                }
+                case WhiletranArena.IF -> {
+                    int condition = expression(arena.condition(node), pairs);
+                    int thenBody = list(arena.thenBody(node));
+                    int elseBody = arena.elseBody(node) < 0 ? -1 : list(arena.elseBody(node));
+                    yield builder.ifStatement(condition, thenBody, elseBody);
+                }
+                case WhiletranArena.DO -> {
+                    int body = list(arena.body(node));
+                    yield builder.doWhile(body, expression(arena.condition(node), pairs));
+                }
+                default -> throw new IllegalArgumentException("Not a statement: " + node);
+            };
+        }
+
+        int expression(int node, int[] pairs) {
+            return switch (arena.kind(node)) {
+                case WhiletranArena.READ -> builder.read();
+                case WhiletranArena.NUMBER -> builder.number(arena.value(node));
+                case WhiletranArena.BOOLEAN -> builder.bool(arena.value(node) != 0);
+                case WhiletranArena.VARIABLE -> {
+                    int variable = arena.variable(node);
+                    int replacement = replacement(pairs, variable);
+                    yield replacement == ZERO ? builder.number(0) : builder.variable(arena.name(replacement));
+                }
+                default -> {
+                    int lhs = expression(arena.lhs(node), pairs);
+                    yield builder.binary(arena.kind(node), lhs, expression(arena.rhs(node), pairs));
+                }
+            };
+        }
+
+        private static int replacement(int[] pairs, int variable) {
+            if (pairs != null) {
+                for (int p = 0; p < pairs.length; p += 2) {
+                    if (pairs[p] == variable) {
+                        return pairs[p + 1];
+                    }
+                }
+            }
+            return variable;
+        }
+    }
+}
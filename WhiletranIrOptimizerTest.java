@@ -0,0 +1,185 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranIrOptimizerTest {
+
+    @Test
+    public void testDeadStoresAndUnusedVariables() {
+        WhiletranIrOptimizer.Result result = optimize("""
+                X = READ
+                Y = 5
+                Y = X
+                Z = Y
+                WRITE X""");
+        // Z = Y goes, then Y = X, then Y = 5, and neither Y nor Z is left
+        assertEquals(3, result.hits().get(WhiletranIrOptimizer.Pass.DEAD_STORE));
+        assertEquals(2, result.variablesRemoved());
+        assertEquals(1, result.arena().variableCount());
+        assertEquals(2, result.arena().size(result.arena().root()));
+    }
+
+    @Test
+    public void testReadsAndArithmeticAreKept() {
+        WhiletranIrOptimizer.Result result = optimize("""
+                X = READ
+                Y = X + 999
+                WRITE 1""");
+        assertNull(result.hits().get(WhiletranIrOptimizer.Pass.DEAD_STORE));
+        assertEquals(3, result.arena().size(result.arena().root()));
+        // still fails the way it did
+        int[] image = new WhiletranCodeGenerator().generateImage(result.arena()).mailboxes();
+        LmcMachine machine = new LmcMachine();
+        machine.load(image);
+        machine.pushInputs(5);
+        assertThrows(IllegalStateException.class, machine::run);
+    }
+
+    @Test
+    public void testCopyPropagation() {
+        WhiletranIrOptimizer.Result result = optimize("""
+                A = READ
+                B = A
+                C = B
+                DO
+                  WRITE C + 1
+                  A = A - 1
+                WHILE A
+                ENDDO""");
+        // C = B becomes C = A and the loop writes B + 1, so C = A goes. A changes in the loop, so
+        // B = A has to stay
+        assertEquals(2, result.hits().get(WhiletranIrOptimizer.Pass.COPY_PROPAGATION));
+        assertEquals(3, result.arena().size(result.arena().root()));
+        assertEquals(2, result.arena().variableCount());
+        assertArrayEquals(new int[]{4, 4, 4, 4}, run(result.arena(), 3));
+    }
+
+    @Test
+    public void testCopyIsNotPropagatedPastItsSourceChanging() {
+        String src = """
+                A = READ
+                B = A
+                A = 7
+                WRITE B
+                WRITE A""";
+        WhiletranIrOptimizer.Result result = optimize(src);
+        assertNull(result.hits().get(WhiletranIrOptimizer.Pass.COPY_PROPAGATION));
+        assertArrayEquals(new int[]{3, 7}, run(result.arena(), 3));
+    }
+
+    @Test
+    public void testInitialZero() {
+        WhiletranIrOptimizer.Result result = optimize("""
+                WRITE X + 1
+                DO
+                  X = X + 1
+                WHILE 2 - X
+                ENDDO
+                WRITE X""");
+        // only the first read is before any assignment, the one in the loop may see the loop's own
+        assertEquals(1, result.hits().get(WhiletranIrOptimizer.Pass.INITIAL_ZERO));
+        assertArrayEquals(new int[]{1, 3}, run(result.arena()));
+    }
+
+    @Test
+    public void testPassesCanBeTurnedOff() {
+        String src = "A = 1 B = A WRITE B";
+        WhiletranIrOptimizer.Result result = new WhiletranIrOptimizer(EnumSet.of(WhiletranIrOptimizer.Pass.DEAD_STORE))
+                .optimize(arena(src));
+        assertTrue(result.hits().isEmpty());
+        assertEquals(3, result.arena().size(result.arena().root()));
+    }
+
+    @Test
+    public void testShrinksStepsAndMailboxes() {
+        String src = """
+                N = READ
+                T = N
+                DO
+                  S = T
+                  T = T - 1
+                  WRITE S
+                WHILE T - 1
+                ENDDO
+                U = 3""";
+        WhiletranArena plain = arena(src);
+        WhiletranArena optimized = new WhiletranIrOptimizer().optimize(plain).arena();
+        LmcMachine before = machine(plain, 5);
+        LmcMachine after = machine(optimized, 5);
+        assertArrayEquals(before.getOutput(), after.getOutput());
+        assertTrue(after.getSteps() < before.getSteps());
+        // U = 3 goes, along with U's mailbox and the constant 3
+        assertEquals(new WhiletranCodeGenerator().generateInstructions(plain).size() - 4,
+                new WhiletranCodeGenerator().generateInstructions(optimized).size());
+    }
+
+    @Test
+    public void testRandomProgramsBehaveTheSame() {
+        Random random = new Random(24);
+        for (int i = 0; i < 300; i++) {
+            StringBuilder src = new StringBuilder();
+            WhiletranJvmCompilerTest.generateStatements(random, src, 2, 0);
+            int[] inputs = random.ints(12, -20, 20).toArray();
+            WhiletranArena plain = arena(src.toString());
+            WhiletranArena optimized = new WhiletranIrOptimizer().optimize(plain).arena();
+            int[] plainImage;
+            try {
+                plainImage = image(plain);
+            } catch (IllegalStateException e) {
+                continue; // too big for the machine without the optimizer
+            }
+
+            LmcMachine before = new LmcMachine();
+            before.load(plainImage);
+            before.pushInputs(inputs);
+            LmcMachine after = new LmcMachine();
+            after.load(image(optimized));
+            after.pushInputs(inputs);
+            boolean failed = false;
+            try {
+                before.run();
+            } catch (IllegalStateException e) {
+                failed = true;
+            }
+            if (failed) {
+                assertThrows(IllegalStateException.class, after::run, src.toString());
+            } else {
+                after.run();
+                assertArrayEquals(before.getOutput(), after.getOutput(), src.toString());
+                assertTrue(after.getSteps() <= before.getSteps(), src.toString());
+            }
+        }
+    }
+
+    private static WhiletranArena arena(String src) {
+        return WhiletranArena.from(new WhiletranSimplifier().simplify(new WhiletranParser().parse(src)));
+    }
+
+    private static WhiletranIrOptimizer.Result optimize(String src) {
+        return new WhiletranIrOptimizer().optimize(arena(src));
+    }
+
+    // the rest of the compiler's pipeline, so random programs fit
+    private static int[] image(WhiletranArena arena) {
+        List<LmcInstruction> code = new WhiletranCodeGenerator().generateInstructions(arena);
+        return new LmcImageWriter().write(new PeepholeOptimizer().optimize(code).instructions()).mailboxes();
+    }
+
+    private static LmcMachine machine(WhiletranArena arena, int... inputs) {
+        LmcMachine machine = new LmcMachine();
+        machine.load(new WhiletranCodeGenerator().generateImage(arena).mailboxes());
+        machine.pushInputs(inputs);
+        machine.run();
+        return machine;
+    }
+
+    private static int[] run(WhiletranArena arena, int... inputs) {
+        return machine(arena, inputs).getOutput();
+    }
+}
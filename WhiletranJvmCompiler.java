@@ -0,0 +1,313 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+import csci366.lmc.whiletran.tree.*;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Compiles a program to a JVM class instead of LMC code, for when only the output matters and not
+ * the cycle count. Every variable is a local int and READ and WRITE go through a {@link WhiletranIO},
+ * so HotSpot can JIT a hot DO loop like any other Java loop.
+ *
+ * Results match running the generated LMC code on {@code LittleManComputer}: each ADD or SUB the
+ * code generator would emit is range checked the same way, comparisons subtract their sides first,
+ * and a plain value as a condition is true when it's non-zero for IF and >= 0 for DO.
+ *
+ * The ClassFile API needs a newer JDK than we build with, so the class is written as Java source,
+ * compiled in memory with the system compiler and defined as a hidden class, which is unloaded once
+ * nothing uses the program. That needs a JDK rather than a JRE at runtime.
+ */
+public class WhiletranJvmCompiler {
+
+    static final String CLASS_NAME = "WhiletranCompiledProgram";
+
+    public static final class CompiledProgram {
+
+        private final MethodHandle run;
+        private final String source;
+
+        CompiledProgram(MethodHandle run, String source) {
+            this.run = run;
+            this.source = source;
+        }
+
+        public void run(WhiletranIO io) {
+            try {
+                run.invokeExact((IntSupplier) io, (IntConsumer) io);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        // like LmcMachine, running out of input is an IllegalStateException
+        public int[] run(int... inputs) {
+            ArrayIO io = new ArrayIO(inputs);
+            run(io);
+            return io.getOutput();
+        }
+
+        public String source() {
+            return source;
+        }
+    }
+
+    private final Map<String, String> locals = new LinkedHashMap<>();
+
+    public CompiledProgram compile(WhiletranProgram program) {
+        String source = generateSource(program);
+        byte[] classFile = javac(source);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(void.class, IntSupplier.class, IntConsumer.class));
+            return new CompiledProgram(run, source);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String generateSource(WhiletranProgram program) {
+        locals.clear();
+        StringBuilder body = new StringBuilder();
+        generateStatements(program.children(), body, "        ");
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(WhiletranJvmCompiler.class.getPackageName()).append(";\n\n");
+        sb.append("final class ").append(CLASS_NAME).append(" {\n\n");
+        sb.append("    static void run(java.util.function.IntSupplier in, java.util.function.IntConsumer out) {\n");
+        for (String local : locals.values()) {
+            sb.append("        int ").append(local).append(" = 0;\n");
+        }
+        sb.append(body);
+        sb.append("    }\n\n");
+        sb.append("    private static int check(int value) {\n");
+        sb.append("        if (value < ").append(LittleManComputer.MIN_VALUE)
+                .append(" || ").append(LittleManComputer.MAX_VALUE).append(" < value) {\n");
+        sb.append("            throw new IllegalStateException(\"Value out of range: \" + value);\n");
+        sb.append("        }\n");
+        sb.append("        return value;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /*
+     * javac rejects statements it can prove are unreachable, so generation stops after a statement
+     * that never completes (a DO whose condition javac folds to true, or an IF whose branches both
+     * contain one).
+     *
+     * @return true if the statements can complete
+     */
+    private boolean generateStatements(List<WhiletranStatement> statements, StringBuilder sb, String indent) {
+        for (WhiletranStatement statement : statements) {
+            if (!generateStatement(statement, sb, indent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean generateStatement(WhiletranStatement statement, StringBuilder sb, String indent) {
+        if (statement instanceof WriteStatement ws) {
+            sb.append(indent).append("out.accept(");
+            generateExpression(ws.expression(), sb);
+            sb.append(");\n");
+            return true;
+
+        } else if (statement instanceof AssignmentStatement as) {
+            sb.append(indent).append(localFor(as.variable())).append(" = ");
+            generateExpression(as.expression(), sb);
+            sb.append(";\n");
+            return true;
+
+        } else if (statement instanceof IfStatement is) {
+            if (is.condition() instanceof BooleanExpression be) {
+                if (be.value()) {
+                    return generateStatements(is.thenBody(), sb, indent);
+                }
+                return is.elseBody() == null || generateStatements(is.elseBody(), sb, indent);
+            }
+            sb.append(indent).append("if (");
+            generateCondition(is.condition(), " != 0", sb);
+            sb.append(") {\n");
+            boolean completes = generateStatements(is.thenBody(), sb, indent + "    ");
+            if (is.elseBody() != null) {
+                sb.append(indent).append("} else {\n");
+                completes |= generateStatements(is.elseBody(), sb, indent + "    ");
+            } else {
+                completes = true;
+            }
+            sb.append(indent).append("}\n");
+            return completes;
+
+        } else if (statement instanceof DoWhileLoopStatement dl) {
+            sb.append(indent).append("do {\n");
+            boolean completes = generateStatements(dl.body(), sb, indent + "    ");
+            sb.append(indent).append("} while (");
+            generateCondition(dl.condition(), " >= 0", sb);
+            sb.append(");\n");
+            Integer folded = folded(dl.condition());
+            boolean endless = folded != null && (dl.condition() instanceof BooleanExpression
+                    || dl.condition() instanceof ConditionalExpression ? folded != 0 : folded >= 0);
+            return completes && !endless;
+
+        } else {
+            throw new IllegalArgumentException("Don't know how to generate code for " + statement);
+        }
+    }
+
+    /*
+     * The value javac folds an expression to, or null when it isn't a constant expression in the
+     * generated source. Literals are, and so is a comparison with a literal 0 since it's emitted
+     * without check(...). Anything that reads a variable or goes through check(...) isn't.
+     */
+    private static Integer folded(WhiletranExpression expression) {
+        if (expression instanceof NumberExpression ne) {
+            return ne.num();
+        } else if (expression instanceof BooleanExpression be) {
+            return be.value() ? 1 : 0;
+        } else if (expression instanceof ConditionalExpression ce
+                && ce.rhs() instanceof NumberExpression ne && ne.num() == 0) {
+            Integer lhs = folded(ce.lhs());
+            if (lhs == null) {
+                return null;
+            }
+            return (ce.op().equals("==") ? lhs == 0 : lhs >= 0) ? 1 : 0;
+        }
+        return null;
+    }
+
+    // plainTest is what a plain value is compared with, which differs between IF and DO
+    private void generateCondition(WhiletranExpression condition, String plainTest, StringBuilder sb) {
+        if (condition instanceof BooleanExpression be) {
+            sb.append(be.value());
+        } else if (condition instanceof ConditionalExpression ce) {
+            generateComparison(ce, sb);
+        } else {
+            sb.append("(");
+            generateExpression(condition, sb);
+            sb.append(")").append(plainTest);
+        }
+    }
+
+    // the code generator skips SUB N_0, so comparing with 0 isn't range checked either
+    private void generateComparison(ConditionalExpression ce, StringBuilder sb) {
+        if (ce.rhs() instanceof NumberExpression ne && ne.num() == 0) {
+            generateExpression(ce.lhs(), sb);
+        } else {
+            sb.append("check(");
+            generateExpression(ce.lhs(), sb);
+            sb.append(" - ");
+            generateExpression(ce.rhs(), sb);
+            sb.append(")");
+        }
+        if (ce.op().equals("==")) {
+            sb.append(" == 0");
+        } else if (ce.op().equals(">=")) {
+            sb.append(" >= 0");
+        } else {
+            throw new IllegalArgumentException("Don't know how to generate code for " + ce);
+        }
+    }
+
+    private void generateExpression(WhiletranExpression expression, StringBuilder sb) {
+        if (expression instanceof NumberExpression ne) {
+            if (ne.num() < LittleManComputer.MIN_VALUE || LittleManComputer.MAX_VALUE < ne.num()) {
+                throw new IllegalStateException("Value out of range: " + ne.num());
+            }
+            sb.append(ne.num() < 0 ? "(" + ne.num() + ")" : String.valueOf(ne.num()));
+
+        } else if (expression instanceof BooleanExpression be) {
+            sb.append(be.value() ? 1 : 0);
+
+        } else if (expression instanceof VariableExpression ve) {
+            sb.append(localFor(ve.name()));
+
+        } else if (expression instanceof ReadExpression) {
+            sb.append("in.getAsInt()");
+
+        } else if (expression instanceof AdditiveExpression ae) {
+            sb.append("check(");
+            generateExpression(ae.lhs(), sb);
+            sb.append(ae.op().equals("+") ? " + " : " - ");
+            generateExpression(ae.rhs(), sb);
+            sb.append(")");
+
+        } else if (expression instanceof ConditionalExpression ce) {
+            sb.append("(");
+            generateComparison(ce, sb);
+            sb.append(" ? 1 : 0)");
+
+        } else {
+            throw new IllegalArgumentException("Don't know how to generate code for " + expression);
+        }
+    }
+
+    // Whiletran names can be Java keywords, so locals are numbered instead
+    private String localFor(String variable) {
+        return locals.computeIfAbsent(variable, v -> "v" + locals.size());
+    }
+
+    private static byte[] javac(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No Java compiler available, the JVM backend needs a JDK");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+        JavaFileObject sourceFile = new SimpleJavaFileObject(
+                URI.create("string:///" + CLASS_NAME + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        try (StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, null)) {
+            JavaFileManager fileManager = new ForwardingJavaFileManager<>(standard) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                           JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            return classFile;
+                        }
+                    };
+                }
+            };
+            boolean compiled = compiler.getTask(null, fileManager, diagnostics, List.of("-proc:none", "-g:none"),
+                    null, List.of(sourceFile)).call();
+            if (!compiled) {
+                throw new IllegalStateException("Generated class doesn't compile: " + diagnostics.getDiagnostics());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return classFile.toByteArray();
+    }
+}
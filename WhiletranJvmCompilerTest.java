@@ -0,0 +1,192 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranJvmCompilerTest {
+
+    @Test
+    public void testDivisionAndFib() {
+        WhiletranJvmCompiler.CompiledProgram division = compile(LmcMachineTest.DIVISION);
+        for (int a = 0; a < 60; a += 7) {
+            assertMatchesEmulator(LmcMachineTest.DIVISION, division, a, 10);
+        }
+        WhiletranJvmCompiler.CompiledProgram fib = compile(LmcMachineTest.FIB);
+        for (int n = 1; n < 15; n++) {
+            assertMatchesEmulator(LmcMachineTest.FIB, fib, n);
+        }
+        assertArrayEquals(new int[]{55}, fib.run(10));
+    }
+
+    @Test
+    public void testConditions() {
+        WhiletranJvmCompiler.CompiledProgram program = compile("""
+                X = READ
+                IF X >= 3 THEN
+                  IF X == 4 THEN WRITE 4 ELSE WRITE 3 ENDIF
+                ELSE
+                  WRITE X == 0
+                ENDIF
+                IF X THEN WRITE 1 ENDIF
+                DO X = X + 1 WHILE 5 >= X ENDDO
+                WRITE X
+                DO X = X + 1 WHILE FALSE ENDDO
+                WRITE X""");
+        assertArrayEquals(new int[]{1, 6, 7}, program.run(0));
+        assertArrayEquals(new int[]{0, 1, 6, 7}, program.run(2));
+        assertArrayEquals(new int[]{4, 1, 6, 7}, program.run(4));
+        assertArrayEquals(new int[]{3, 1, 10, 11}, program.run(9));
+    }
+
+    @Test
+    public void testIO() {
+        WhiletranJvmCompiler.CompiledProgram program = compile("X = READ Y = READ WRITE X - Y WRITE -100");
+        LinkedList<Integer> written = new LinkedList<>();
+        program.run(new WhiletranIO() {
+            int next = 10;
+
+            @Override
+            public int read() {
+                return next++;
+            }
+
+            @Override
+            public void write(int value) {
+                written.add(value);
+            }
+        });
+        assertEquals(-1, (int) written.poll());
+        assertEquals(-100, (int) written.poll());
+    }
+
+    @Test
+    public void testOutOfRange() {
+        WhiletranJvmCompiler.CompiledProgram program = compile("X = READ WRITE X + 999");
+        assertArrayEquals(new int[]{999}, program.run(0));
+        assertThrows(IllegalStateException.class, () -> program.run(1));
+    }
+
+    @Test
+    public void testMissingInput() {
+        assertThrows(IllegalStateException.class, () -> compile("X = READ").run());
+    }
+
+    @Test
+    public void testCodeAfterEndlessLoop() {
+        // javac would reject the WRITE as unreachable if it were generated
+        WhiletranJvmCompiler.CompiledProgram program = compile("DO X = X + 1 WHILE TRUE ENDDO WRITE X");
+        assertThrows(IllegalStateException.class, program::run);
+    }
+
+    @Test
+    public void testLoopsWithConstantConditions() {
+        // javac folds these, so a WRITE after one that never ends would be unreachable
+        String[] conditions = {"1", "(2)", "1 >= 0", "(1) == 0", "-1", "0 >= 0", "(3 >= 0) >= 0", "1 == 1", "TRUE", "FALSE"};
+        for (String condition : conditions) {
+            String src = "DO A = READ WRITE A WHILE " + condition + " ENDDO WRITE 9";
+            assertMatchesEmulator(src, compile(src), 1, 2, 3);
+        }
+    }
+
+    @Test
+    public void testRandomProgramsMatchEmulator() {
+        Random random = new Random(366);
+        for (int i = 0; i < 60; i++) {
+            StringBuilder src = new StringBuilder();
+            generateStatements(random, src, 2, 0);
+            int[] inputs = random.ints(12, -20, 20).toArray();
+            assertMatchesEmulator(src.toString(), compile(src.toString()), inputs);
+        }
+    }
+
+    private static WhiletranJvmCompiler.CompiledProgram compile(String src) {
+        return new WhiletranJvmCompiler().compile(new WhiletranParser().parse(src));
+    }
+
+    // a program that fails on the LMC (out of range, out of input) must fail on the JVM too
+    private static void assertMatchesEmulator(String src, WhiletranJvmCompiler.CompiledProgram program, int... inputs) {
+        int[] image = new WhiletranCompiler().compile(src).mailboxes();
+        LmcMachine machine = new LmcMachine();
+        machine.load(image);
+        machine.pushInputs(inputs);
+        try {
+            machine.run();
+        } catch (IllegalStateException e) {
+            assertThrows(IllegalStateException.class, () -> program.run(inputs), src);
+            return;
+        }
+
+        LittleManComputer computer = new LittleManComputer();
+        computer.load(image);
+        for (int input : inputs) {
+            computer.pushInputs(input);
+        }
+        computer.run();
+        LinkedList<Integer> expected = computer.getOutput();
+        int[] actual = program.run(inputs);
+        assertEquals(expected.size(), actual.length, src);
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals((int) expected.get(i), actual[i], src);
+        }
+    }
+
+    // loops count down their own counter, which nothing else assigns, so every program halts, also used by WhiletranInterpreterTest
+    static void generateStatements(Random random, StringBuilder src, int depth, int loops) {
+        int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(depth > 0 ? 5 : 3);
+            if (kind == 0) {
+                src.append("WRITE ").append(expression(random)).append("\n");
+            } else if (kind <= 2) {
+                src.append((char) ('A' + random.nextInt(3))).append(" = ")
+                        .append(random.nextInt(6) == 0 ? "READ" : expression(random)).append("\n");
+            } else if (kind == 3) {
+                src.append("IF ").append(expression(random)).append(" THEN\n");
+                generateStatements(random, src, depth - 1, loops);
+                if (random.nextBoolean()) {
+                    src.append("ELSE\n");
+                    generateStatements(random, src, depth - 1, loops);
+                }
+                src.append("ENDIF\n");
+            } else {
+                String counter = "C" + loops;
+                src.append(counter).append(" = ").append(1 + random.nextInt(4)).append("\n");
+                src.append("DO\n");
+                generateStatements(random, src, depth - 1, loops + 1);
+                src.append(counter).append(" = ").append(counter).append(" - 1\n");
+                src.append("WHILE ").append(counter).append(" - 1\nENDDO\n");
+            }
+        }
+    }
+
+    private static String expression(Random random) {
+        String[] ops = {"+", "-", ">=", "=="};
+        return switch (random.nextInt(6)) {
+            case 0 -> atom(random);
+            case 1 -> random.nextBoolean() ? "TRUE" : "FALSE";
+            case 2 -> operand(random, 2) + " " + ops[random.nextInt(ops.length)] + " " + operand(random, 2);
+            default -> atom(random) + " " + ops[random.nextInt(ops.length)] + " " + atom(random);
+        };
+    }
+
+    // a parenthesised sub-expression now and then, to exercise precedence and temporaries
+    private static String operand(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) > 0) {
+            return atom(random);
+        }
+        String[] ops = {"+", "-", "+", "-", ">=", "=="};
+        return "(" + operand(random, depth - 1) + " " + ops[random.nextInt(ops.length)] + " "
+                + operand(random, depth - 1) + ")";
+    }
+
+    private static String atom(Random random) {
+        return random.nextBoolean()
+                ? String.valueOf((char) ('A' + random.nextInt(3)))
+                : String.valueOf(random.nextInt(11) - 5);
+    }
+}
@@ -0,0 +1,235 @@
+package csci366.lmc.whiletran;
+
+/**
+ * Single pass lexer over the Whiletran source. Tokens are produced lazily one at a time
+ * from a character cursor, comments ('!' to end of line) are skipped inline.
+ *
+ * The parser uses this as its token cursor via {@link #peek()}, {@link #take()} and
+ * {@link #hasMore()}.
+ *
+ * A lexer can also be limited to a region of the source, for incremental re-parsing: it stops at
+ * the first token that starts at or after the region end. Tokens and comments are still read to
+ * their natural end, so {@link #position()} tells whether the region ended on a token boundary.
+ *
+ * Every token's text is interned in a {@link WhiletranSymbols} as it's read, so the same identifier or
+ * number is the same String and the same {@link WhiletranToken#symbol()} wherever it appears.
+ */
+public class WhiletranLexer {
+
+    private final CharSequence src;
+    private final WhiletranSymbols symbols;
+    private final int end;
+    private int pos;
+    private int line;
+    private int lineStart;
+    private int lastEnd;
+    private int lastLine;
+    private int lastLineStart;
+    private int taken;
+    private WhiletranToken next;
+
+    public WhiletranLexer(String src) {
+        this(src, 0, src.length(), 1);
+    }
+
+    public WhiletranLexer(String src, WhiletranSymbols symbols) {
+        this(src, 0, src.length(), 1, symbols);
+    }
+
+    /**
+     * Lexes src from start up to end, numbering lines from the given line. src can be any
+     * CharSequence, so an editor's buffer can be lexed without copying it to a String first.
+     */
+    public WhiletranLexer(CharSequence src, int start, int end, int line) {
+        this(src, start, end, line, new WhiletranSymbols());
+    }
+
+    public WhiletranLexer(CharSequence src, int start, int end, int line, WhiletranSymbols symbols) {
+        this(src, start, end, line, lineStart(src, start), symbols);
+    }
+
+    /**
+     * Lexes src from start up to end, where start is on the given line and that line starts at
+     * lineStart. Finding the start of the line would take a scan back over it, which a caller that
+     * already knows it (see {@link #lastLineStart()}) can skip.
+     */
+    public WhiletranLexer(CharSequence src, int start, int end, int line, int lineStart) {
+        this(src, start, end, line, lineStart, new WhiletranSymbols());
+    }
+
+    private WhiletranLexer(CharSequence src, int start, int end, int line, int lineStart, WhiletranSymbols symbols) {
+        this.src = src;
+        this.symbols = symbols;
+        this.end = end;
+        this.pos = start;
+        this.line = line;
+        this.lineStart = lineStart;
+        this.lastEnd = start;
+        this.lastLine = line;
+        this.lastLineStart = lineStart;
+        this.next = lex();
+    }
+
+    public WhiletranToken peek() {
+        return next;
+    }
+
+    public WhiletranToken take() {
+        WhiletranToken token = next;
+        if (token != null) {
+            lastEnd = token.end();
+            lastLine = token.line();
+            lastLineStart = token.offset() - token.column() + 1;
+            taken++;
+            next = lex();
+        }
+        return token;
+    }
+
+    public boolean hasMore() {
+        return next != null;
+    }
+
+    // end offset and line of the last token taken
+    public int lastEnd() {
+        return lastEnd;
+    }
+
+    public int lastLine() {
+        return lastLine;
+    }
+
+    // offset of the start of the line the last token taken is on
+    public int lastLineStart() {
+        return lastLineStart;
+    }
+
+    public int tokensTaken() {
+        return taken;
+    }
+
+    public WhiletranSymbols symbols() {
+        return symbols;
+    }
+
+    // once there are no more tokens, how far whitespace and comments were skipped
+    public int position() {
+        return pos;
+    }
+
+    private static int lineStart(CharSequence src, int start) {
+        int lineStart = start;
+        while (lineStart > 0 && src.charAt(lineStart - 1) != '\n') {
+            lineStart--;
+        }
+        return lineStart;
+    }
+
+    private WhiletranToken lex() {
+        skipWhitespaceAndComments();
+        if (pos >= end) {
+            return null;
+        }
+
+        int start = pos;
+        int column = start - lineStart + 1;
+        char c = src.charAt(pos);
+
+        if (isUpper(c)) {
+            pos++;
+            while (pos < src.length() && (isUpper(src.charAt(pos)) || isDigit(src.charAt(pos)))) {
+                pos++;
+            }
+            // a trailing character that can't be part of an identifier (e.g. 'aBc') makes it unknown
+            if (pos < src.length() && isWordChar(src.charAt(pos))) {
+                return unknown(start, column);
+            }
+            return token(WhiletranToken.Kind.IDENTIFIER, start, column);
+        }
+
+        // a '-' that starts a word and is directly followed by a digit is a negative literal ('X = -1'),
+        // otherwise it is the subtraction operator ('X = A - 1', 'X = A-1', 'X = (A)-1')
+        if (isDigit(c) || (c == '-' && isDigitAt(pos + 1) && !isWordCharAt(pos - 1) && !isCharAt(pos - 1, ')'))) {
+            pos++;
+            while (pos < src.length() && isDigit(src.charAt(pos))) {
+                pos++;
+            }
+            if (pos < src.length() && isWordChar(src.charAt(pos))) {
+                return unknown(start, column);
+            }
+            return token(WhiletranToken.Kind.NUMBER, start, column);
+        }
+
+        if (c == '+' || c == '-' || c == '(' || c == ')') {
+            pos++;
+            return token(WhiletranToken.Kind.OPERATOR, start, column);
+        }
+
+        if (c == '=' || c == '>') {
+            pos++;
+            if (pos < src.length() && src.charAt(pos) == '=') {
+                pos++;
+            }
+            return token(WhiletranToken.Kind.OPERATOR, start, column);
+        }
+
+        return unknown(start, column);
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (pos < src.length()) {
+            char c = src.charAt(pos);
+            if (c == '\n') {
+                pos++;
+                line++;
+                lineStart = pos;
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '!') {
+                while (pos < src.length() && src.charAt(pos) != '\n') {
+                    pos++;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private WhiletranToken token(WhiletranToken.Kind kind, int start, int column) {
+        int symbol = symbols.intern(src, start, pos);
+        return new WhiletranToken(kind, symbols.name(symbol), line, column, start, symbol);
+    }
+
+    // anything up to the next whitespace is consumed as a single unknown token so the parser
+    // reports the whole offending word
+    private WhiletranToken unknown(int start, int column) {
+        while (pos < src.length() && !Character.isWhitespace(src.charAt(pos)) && src.charAt(pos) != '!') {
+            pos++;
+        }
+        return token(WhiletranToken.Kind.UNKNOWN, start, column);
+    }
+
+    private boolean isDigitAt(int i) {
+        return i < src.length() && isDigit(src.charAt(i));
+    }
+
+    private boolean isCharAt(int i, char c) {
+        return i >= 0 && src.charAt(i) == c;
+    }
+
+    private boolean isWordCharAt(int i) {
+        return i >= 0 && isWordChar(src.charAt(i));
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,99 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranLexerTest {
+
+    @Test
+    public void testTokenKinds() {
+        List<WhiletranToken> tokens = lexAll("X1 = 10 >= Y == 2 + 3");
+        assertEquals(List.of("X1", "=", "10", ">=", "Y", "==", "2", "+", "3"), texts(tokens));
+        assertEquals(WhiletranToken.Kind.IDENTIFIER, tokens.get(0).kind());
+        assertEquals(WhiletranToken.Kind.OPERATOR, tokens.get(1).kind());
+        assertEquals(WhiletranToken.Kind.NUMBER, tokens.get(2).kind());
+        assertEquals(WhiletranToken.Kind.OPERATOR, tokens.get(3).kind());
+    }
+
+    @Test
+    public void testCommentsAreSkipped() {
+        List<WhiletranToken> tokens = lexAll("! comment 1\nA = 1 ! comment 2\n!\nWRITE A");
+        assertEquals(List.of("A", "=", "1", "WRITE", "A"), texts(tokens));
+    }
+
+    @Test
+    public void testNegativeNumbersAndSubtraction() {
+        assertEquals(List.of("WRITE", "-100"), texts(lexAll("WRITE -100")));
+        assertEquals(List.of("X", "=", "A", "-", "1"), texts(lexAll("X = A - 1")));
+        assertEquals(List.of("X", "=", "A", "-", "1"), texts(lexAll("X = A-1")));
+        assertEquals(WhiletranToken.Kind.NUMBER, lexAll("DIV = -1").get(2).kind());
+    }
+
+    @Test
+    public void testParentheses() {
+        List<WhiletranToken> tokens = lexAll("X = (A+(-1))-1");
+        assertEquals(List.of("X", "=", "(", "A", "+", "(", "-1", ")", ")", "-", "1"), texts(tokens));
+        assertEquals(WhiletranToken.Kind.OPERATOR, tokens.get(2).kind());
+        assertEquals(WhiletranToken.Kind.NUMBER, tokens.get(6).kind());
+    }
+
+    @Test
+    public void testLineAndColumn() {
+        List<WhiletranToken> tokens = lexAll("A = 1\n  WRITE A");
+        assertEquals(1, tokens.get(0).line());
+        assertEquals(1, tokens.get(0).column());
+        assertEquals(2, tokens.get(3).line());
+        assertEquals(3, tokens.get(3).column());
+    }
+
+    @Test
+    public void testTextIsInterned() {
+        List<WhiletranToken> tokens = lexAll("ABC = ABC");
+        assertSame(tokens.get(0).text(), tokens.get(2).text());
+    }
+
+    @Test
+    public void testSymbols() {
+        WhiletranSymbols symbols = new WhiletranSymbols();
+        WhiletranLexer lexer = new WhiletranLexer("X = 1 X = X + 1", symbols);
+        List<WhiletranToken> tokens = new ArrayList<>();
+        while (lexer.hasMore()) {
+            tokens.add(lexer.take());
+        }
+        assertEquals(tokens.get(0).symbol(), tokens.get(3).symbol());
+        assertEquals(tokens.get(2).symbol(), tokens.get(7).symbol());
+        assertNotEquals(tokens.get(0).symbol(), tokens.get(2).symbol());
+        assertEquals("X", symbols.name(tokens.get(5).symbol()));
+        // X, =, 1 and +
+        assertEquals(4, symbols.size());
+    }
+
+    @Test
+    public void testUnknownTokens() {
+        List<WhiletranToken> tokens = lexAll("x = 1a");
+        assertEquals(WhiletranToken.Kind.UNKNOWN, tokens.get(0).kind());
+        assertEquals("1a", tokens.get(2).text());
+        assertEquals(WhiletranToken.Kind.UNKNOWN, tokens.get(2).kind());
+    }
+
+    private static List<WhiletranToken> lexAll(String src) {
+        WhiletranLexer lexer = new WhiletranLexer(src);
+        List<WhiletranToken> tokens = new ArrayList<>();
+        while (lexer.hasMore()) {
+            tokens.add(lexer.take());
+        }
+        return tokens;
+    }
+
+    private static List<String> texts(List<WhiletranToken> tokens) {
+        List<String> texts = new ArrayList<>();
+        for (WhiletranToken token : tokens) {
+            texts.add(token.text());
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,174 @@
+package csci366.lmc.whiletran;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms for each phase of compiling and running a program, and totals of what went
+ * through them. Nothing is recorded unless one of these is given to
+ * {@link WhiletranCompiler#setMetrics(WhiletranMetrics)} or {@link LmcMachine#setMetrics(WhiletranMetrics)},
+ * and until then those don't even read the clock. One instance can be shared by any number of
+ * compilers and machines on any number of threads.
+ *
+ * The same compilations and runs are also emitted as JDK Flight Recorder events,
+ * {@code csci366.lmc.whiletran.Compile} and {@code csci366.lmc.whiletran.Run}, whenever a recording
+ * has them enabled, whether or not metrics are set.
+ */
+public final class WhiletranMetrics {
+
+    // LEX is the tokenizing pass for the cache key, PARSE lexes as it goes, DATAFLOW is
+    // WhiletranIrOptimizer, OPTIMIZE the peephole pass and ASSEMBLE is writing the image
+    public enum Phase {
+        LEX, PARSE, SIMPLIFY, DATAFLOW, GENERATE, OPTIMIZE, ASSEMBLE, RUN
+    }
+
+    /**
+     * Counts of durations in power of two buckets of nanoseconds, so quantiles are accurate to
+     * within a factor of two and recording one is a couple of atomic adds.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public double meanNanos() {
+            long count = count();
+            return count == 0 ? 0 : (double) totalNanos() / count;
+        }
+
+        // the upper end of the bucket the q quantile falls in, 0 if nothing was recorded
+        public long quantileNanos(double q) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder instructions = new LongAdder();
+    private final LongAdder mailboxes = new LongAdder();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder steps = new LongAdder();
+
+    public WhiletranMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new Histogram());
+        }
+    }
+
+    /**
+     * Records a phase that started at start, as read from System.nanoTime(), and returns the time
+     * now for the next phase to start from. With no metrics it does nothing and returns 0.
+     */
+    static long record(WhiletranMetrics metrics, Phase phase, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.phases.get(phase).record(now - start);
+        return now;
+    }
+
+    void addTokens(int count) {
+        tokens.add(count);
+    }
+
+    void addCacheHit() {
+        cacheHits.increment();
+    }
+
+    void addCompilation(int nodes, int instructions, int mailboxes) {
+        compilations.increment();
+        this.nodes.add(nodes);
+        this.instructions.add(instructions);
+        this.mailboxes.add(mailboxes);
+    }
+
+    void addRun(long steps) {
+        runs.increment();
+        this.steps.add(steps);
+    }
+
+    public Histogram histogram(Phase phase) {
+        return phases.get(phase);
+    }
+
+    // compilations that missed the cache and went through the whole pipeline
+    public long getCompilations() {
+        return compilations.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    public long getInstructions() {
+        return instructions.sum();
+    }
+
+    public long getMailboxes() {
+        return mailboxes.sum();
+    }
+
+    // calls to LmcMachine.run, a machine run a quantum at a time counts once per quantum
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = phases.get(phase);
+            sb.append(String.format("%-8s count=%d mean=%.0fns p50<=%dns p99<=%dns%n", phase, histogram.count(),
+                    histogram.meanNanos(), histogram.quantileNanos(0.5), histogram.quantileNanos(0.99)));
+        }
+        sb.append(String.format("compilations=%d cacheHits=%d tokens=%d nodes=%d instructions=%d mailboxes=%d runs=%d steps=%d",
+                getCompilations(), getCacheHits(), getTokens(), getNodes(), getInstructions(), getMailboxes(),
+                getRuns(), getSteps()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.WhiletranMetrics.Phase;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranMetricsTest {
+
+    @Test
+    public void testCompileAndRunAreRecorded() {
+        WhiletranMetrics metrics = new WhiletranMetrics();
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        compiler.setMetrics(metrics);
+        LmcImage image = compiler.compile("X = READ WRITE X + 1");
+        compiler.compile("X = READ  WRITE X + 1 ! same tokens");
+
+        assertEquals(1, metrics.getCompilations());
+        assertEquals(1, metrics.getCacheHits());
+        assertEquals(14, metrics.getTokens());
+        assertEquals(6, metrics.getNodes()); // 2 statements and 4 expressions
+        assertEquals(image.instructions().size(), metrics.getInstructions());
+        assertEquals(image.mailboxes().length, metrics.getMailboxes());
+        assertEquals(2, metrics.histogram(Phase.LEX).count());
+        for (Phase phase : List.of(Phase.PARSE, Phase.SIMPLIFY, Phase.DATAFLOW, Phase.GENERATE, Phase.OPTIMIZE, Phase.ASSEMBLE)) {
+            assertEquals(1, metrics.histogram(phase).count());
+        }
+
+        LmcMachine machine = new LmcMachine();
+        machine.setMetrics(metrics);
+        machine.load(image.mailboxes());
+        machine.pushInputs(4);
+        machine.run(2);
+        machine.run();
+        assertEquals(2, metrics.getRuns());
+        assertEquals(machine.getSteps(), metrics.getSteps());
+        assertEquals(2, metrics.histogram(Phase.RUN).count());
+    }
+
+    @Test
+    public void testNothingIsRecordedWithoutMetrics() {
+        WhiletranMetrics metrics = new WhiletranMetrics();
+        WhiletranCompiler compiler = new WhiletranCompiler();
+        compiler.setMetrics(metrics);
+        compiler.setMetrics(null);
+        compiler.compile("WRITE 1");
+        assertEquals(0, metrics.getCompilations());
+        assertEquals(0, metrics.histogram(Phase.LEX).count());
+    }
+
+    @Test
+    public void testHistogramQuantiles() {
+        WhiletranMetrics.Histogram histogram = new WhiletranMetrics.Histogram();
+        assertEquals(0, histogram.quantileNanos(0.5));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1_000_000);
+        assertEquals(100, histogram.count());
+        assertEquals(99 * 100 + 1_000_000, histogram.totalNanos());
+        assertEquals(127, histogram.quantileNanos(0.5));
+        assertEquals(127, histogram.quantileNanos(0.99));
+        assertEquals((1 << 20) - 1, histogram.quantileNanos(1));
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws IOException {
+        Path file = Files.createTempFile("whiletran", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("csci366.lmc.whiletran.Compile");
+            recording.enable("csci366.lmc.whiletran.Run");
+            recording.start();
+            LmcImage image = new WhiletranCompiler().compile("WRITE 1");
+            LmcMachine machine = new LmcMachine();
+            machine.load(image.mailboxes());
+            machine.run();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        RecordedEvent compile = find(events, "csci366.lmc.whiletran.Compile");
+        assertEquals(2, compile.getInt("tokens"));
+        assertFalse(compile.getBoolean("cacheHit"));
+        RecordedEvent run = find(events, "csci366.lmc.whiletran.Run");
+        assertEquals(3, run.getLong("steps"));
+        assertTrue(run.getBoolean("halted"));
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + name + " event");
+    }
+}
@@ -1,208 +1,334 @@
 package csci366.lmc.whiletran;
 
 import csci366.lmc.emulator.LittleManComputer;
-import csci366.lmc.emulator.Utils;
 import csci366.lmc.whiletran.tree.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
-import java.util.Objects;
-import java.util.regex.Matcher;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Everything one parse needs lives in its own Context, so a parser can be reused and shared
+ * between threads. {@link #parseWithLines(String)} also hands back the line each statement starts on
+ * and the program's variables, interned once each in order of first appearance, which is the order
+ * {@link WhiletranArena} numbers them in. They're looked up by the lexer's symbol id, so the parser
+ * doesn't hash a name again when it's used.
+ *
+ * Expressions nest with parentheses and the usual precedence. READ is still only allowed as a whole
+ * expression, so evaluating an expression has no side effects and the code generator is free to pick
+ * the order it evaluates the parts in.
+ */
 public class WhiletranParser {
 
-    LinkedList<String> tokens;
-    LinkedList<String> variables = new LinkedList<>();
+    // binary operator precedences, loosest first
+    private static final int CONDITIONAL = 0;
+    private static final int ADDITIVE = 1;
+
+    // records are compared by value, so two identical statements on different lines need identity keys
+    public record ParseResult(WhiletranProgram program, Map<WhiletranStatement, Integer> statementLines,
+                              WhiletranSymbols variables) {
+
+        // the source line a statement of this program starts on, or -1 if it isn't one of them
+        public int lineOf(WhiletranStatement statement) {
+            Integer line = statementLines.get(statement);
+            return line == null ? -1 : line;
+        }
+    }
 
     public WhiletranProgram parse(String src) {
-        src = src.replaceAll(Matcher.quoteReplacement("![^\n]*"), ""); // remove comments
-        tokens = Utils.tokenize(src);
+        return parseWithLines(src).program();
+    }
+
+    public ParseResult parseWithLines(String src) {
+        return parseWithLines(new WhiletranLexer(src));
+    }
+
+    // from a lexer over the whole source that hasn't been read from yet
+    public ParseResult parseWithLines(WhiletranLexer lexer) {
+        Context context = new Context(lexer);
         WhiletranProgram program = new WhiletranProgram(new LinkedList<>());
-        while (moreTokens()) {
-            program.children().add(parseStatement());
+        while (context.moreTokens()) {
+            program.children().add(context.parseStatement());
         }
-        return program;
+        return new ParseResult(program, context.statementLines, context.variables);
     }
 
     public WhiletranExpression parseAsExpression(String src) {
-        tokens = Utils.tokenize(src);
-        WhiletranExpression expression = parseExpression();
-        if (tokens.size() > 0) {
-            throw new IllegalArgumentException("Unconsumed tokens: " + tokens);
+        Context context = new Context(new WhiletranLexer(src));
+        WhiletranExpression expression = context.parseExpression();
+        if (context.tokens.hasMore()) {
+            throw new IllegalArgumentException("Unconsumed tokens: " + context.tokens.peek() + " at "
+                    + context.position(context.tokens.peek()));
         }
         return expression;
     }
 
-    private WhiletranStatement parseStatement() {
-        WhiletranStatement write = parseWriteStatement();
-        if (write != null) {
-            return write;
+    /**
+     * Parses top level statements from a lexer that may be limited to a region of the source. For
+     * each statement the offset of its first token, the end offset of its last token and the line
+     * that last token is on and the offset that line starts at are added to spans.
+     */
+    List<WhiletranStatement> parseStatements(WhiletranLexer lexer, List<int[]> spans) {
+        Context context = new Context(lexer);
+        List<WhiletranStatement> statements = new ArrayList<>();
+        while (context.moreTokens()) {
+            int start = lexer.peek().offset();
+            statements.add(context.parseStatement());
+            spans.add(new int[]{start, lexer.lastEnd(), lexer.lastLine(), lexer.lastLineStart()});
         }
+        return statements;
+    }
 
-        WhiletranStatement doLoop = parseDoLoop();
-        if (doLoop != null) {
-            return doLoop;
+    // -1 for anything that isn't a binary operator, which ends the expression
+    private static int precedence(WhiletranToken token) {
+        if (token.kind() != WhiletranToken.Kind.OPERATOR) {
+            return -1;
         }
+        return switch (token.text()) {
+            case ">=", "==" -> CONDITIONAL;
+            case "+", "-" -> ADDITIVE;
+            default -> -1;
+        };
+    }
+
+    // the state of a single parse
+    private final class Context {
+
+        final WhiletranLexer tokens;
+        final WhiletranSymbols variables = new WhiletranSymbols();
+        // the variable id of each lexer symbol, -1 for one that hasn't been used as a variable
+        int[] variableOf = new int[0];
+        final Map<WhiletranStatement, Integer> statementLines = new IdentityHashMap<>();
 
-        WhiletranStatement ifStatement = parseIfStatement();
-        if (ifStatement != null) {
-            return ifStatement;
+        Context(WhiletranLexer tokens) {
+            this.tokens = tokens;
         }
 
-        WhiletranStatement assignment = parseAssignment();
-        if (assignment != null) {
-            return assignment;
+        private WhiletranStatement parseStatement() {
+            WhiletranToken first = tokens.peek();
+            WhiletranStatement statement = parseAnyStatement();
+            statementLines.put(statement, first.line());
+            return statement;
         }
 
-        return error("Unknown Token: " + tokens.poll());
-    }
+        private WhiletranStatement parseAnyStatement() {
+            WhiletranStatement write = parseWriteStatement();
+            if (write != null) {
+                return write;
+            }
 
-    private WhiletranStatement parseWriteStatement() {
-        if (matchString("WRITE")) {
-            String token = takeToken();
-            WhiletranExpression expression  = parseExpression();
-            return new WriteStatement(expression);
-        }
-        return null;
-    }
+            WhiletranStatement doLoop = parseDoLoop();
+            if (doLoop != null) {
+                return doLoop;
+            }
 
-    private WhiletranStatement parseDoLoop() {
-        if (matchString("DO")) {
-            takeToken();
-            LinkedList<WhiletranStatement> body = new LinkedList<>();
-            while (!matchString("WHILE")) {
-                body.add(parseStatement());
+            WhiletranStatement ifStatement = parseIfStatement();
+            if (ifStatement != null) {
+                return ifStatement;
             }
-            requireString("WHILE");
-            WhiletranExpression condition = parseExpression();
-            requireString("ENDDO");
-            return new DoWhileLoopStatement(body, condition);
+
+            WhiletranStatement assignment = parseAssignment();
+            if (assignment != null) {
+                return assignment;
+            }
+
+            WhiletranToken token = tokens.take();
+            return error("Unknown Token: " + token + " at " + position(token));
         }
-        return null;
-    }
 
-    private WhiletranStatement parseIfStatement() {
-        if (matchString("IF")) {
-            takeToken();
-            WhiletranExpression condition = parseExpression();
-            requireString("THEN");
-            WhiletranProgram thenBody = new WhiletranProgram(new LinkedList<>());
-            while (!matchString("ENDIF") && !matchString("ELSE")) {
-                thenBody.children().add(parseStatement());
+        private WhiletranStatement parseWriteStatement() {
+            if (matchString("WRITE")) {
+                String token = takeToken();
+                WhiletranExpression expression  = parseExpression();
+                return new WriteStatement(expression);
             }
+            return null;
+        }
 
-            WhiletranProgram elseBody = null;
-            if (matchString("ELSE")) {
+        private WhiletranStatement parseDoLoop() {
+            if (matchString("DO")) {
                 takeToken();
-                elseBody = new WhiletranProgram(new LinkedList<>());
-                while (!matchString("ENDIF")) {
-                    elseBody.children().add(parseStatement());
+                LinkedList<WhiletranStatement> body = new LinkedList<>();
+                while (!matchString("WHILE")) {
+                    body.add(parseStatement());
                 }
+                requireString("WHILE");
+                WhiletranExpression condition = parseExpression();
+                requireString("ENDDO");
+                return new DoWhileLoopStatement(body, condition);
             }
-
-            requireString("ENDIF");
-            return new IfStatement(condition, thenBody.children(), elseBody == null ? null : elseBody.children());
+            return null;
         }
-        return null;
-    }
 
-    private WhiletranStatement parseAssignment() {
-        if (matchIdentifier()) {
-            String var = takeToken();
-            requireString("=");
-            WhiletranExpression rhs = parseExpression();
-            variables.add(var);
-            return new AssignmentStatement(var, rhs);
+        private WhiletranStatement parseIfStatement() {
+            if (matchString("IF")) {
+                takeToken();
+                WhiletranExpression condition = parseExpression();
+                requireString("THEN");
+                WhiletranProgram thenBody = new WhiletranProgram(new LinkedList<>());
+                while (!matchString("ENDIF") && !matchString("ELSE")) {
+                    thenBody.children().add(parseStatement());
+                }
+
+                WhiletranProgram elseBody = null;
+                if (matchString("ELSE")) {
+                    takeToken();
+                    elseBody = new WhiletranProgram(new LinkedList<>());
+                    while (!matchString("ENDIF")) {
+                        elseBody.children().add(parseStatement());
+                    }
+                }
+
+                requireString("ENDIF");
+                return new IfStatement(condition, thenBody.children(), elseBody == null ? null : elseBody.children());
+            }
+            return null;
         }
-        return null;
-    }
-    
-    private WhiletranExpression parseExpression() {
-        ReadExpression readExpression = parseReadExpression();
-        if (readExpression != null) {
-            return readExpression;
-        } else {
-            return parseAdditiveOrConditionalExpression();
+
+        private WhiletranStatement parseAssignment() {
+            if (matchIdentifier()) {
+                WhiletranToken var = tokens.take();
+                requireString("=");
+                WhiletranExpression rhs = parseExpression();
+                variable(var);
+                return new AssignmentStatement(var.text(), rhs);
+            }
+            return null;
         }
-    }
 
-    private WhiletranExpression parseAdditiveOrConditionalExpression() {
-        WhiletranExpression expression = parsePrimaryExpression();
-        if (matchString("+") || matchString("-")) {
-            String op = takeToken();
-            WhiletranExpression rhs = parsePrimaryExpression();
-            expression = new AdditiveExpression(op, expression, rhs);
-        } else if (matchString(">=") || matchString("==")) {
-            String op = takeToken();
-            WhiletranExpression rhs = parsePrimaryExpression();
-            expression = new ConditionalExpression(op, expression, rhs);
+        private WhiletranExpression parseExpression() {
+            ReadExpression readExpression = parseReadExpression();
+            if (readExpression != null) {
+                return readExpression;
+            } else {
+                return parseBinaryExpression(CONDITIONAL);
+            }
         }
-        return expression;
-    }
 
+        /*
+         * Precedence climbing over the binary operators. Every operator is left associative and
+         * comparisons bind looser than + and -, so "A + 1 >= B - C" compares two sums.
+         */
+        private WhiletranExpression parseBinaryExpression(int minPrecedence) {
+            WhiletranExpression expression = parsePrimaryExpression();
+            while (true) {
+                WhiletranToken peek = tokens.peek();
+                int precedence = peek == null ? -1 : precedence(peek);
+                if (precedence < minPrecedence) {
+                    return expression;
+                }
+                String op = takeToken();
+                WhiletranExpression rhs = parseBinaryExpression(precedence + 1);
+                if (precedence == ADDITIVE) {
+                    expression = new AdditiveExpression(op, expression, rhs);
+                } else {
+                    expression = new ConditionalExpression(op, expression, rhs);
+                }
+            }
+        }
 
-    private ReadExpression parseReadExpression() {
-        if (matchString("READ")) {
-            String token = takeToken();
-            return new ReadExpression();
+        private ReadExpression parseReadExpression() {
+            if (matchString("READ")) {
+                String token = takeToken();
+                return new ReadExpression();
+            }
+            return null;
         }
-        return null;
-    }
 
-    private WhiletranExpression parsePrimaryExpression() {
-        if (matchIdentifier()) {
-            String identifier = takeToken();
-            if (identifier.equals("TRUE")) {
-                return new BooleanExpression(true);
-            } else if (identifier.equals("FALSE")) {
-                return new BooleanExpression(false);
+        private WhiletranExpression parsePrimaryExpression() {
+            if (matchString("(")) {
+                takeToken();
+                WhiletranExpression expression = parseBinaryExpression(CONDITIONAL);
+                requireString(")");
+                return expression;
+            } else if (matchIdentifier()) {
+                WhiletranToken token = tokens.take();
+                String identifier = token.text();
+                if (identifier.equals("TRUE")) {
+                    return new BooleanExpression(true);
+                } else if (identifier.equals("FALSE")) {
+                    return new BooleanExpression(false);
+                } else {
+                    variable(token);
+                    return new VariableExpression(identifier);
+                }
             } else {
-                variables.add(identifier);
-                return new VariableExpression(identifier);
+                WhiletranToken token = tokens.take();
+                if (token == null || token.kind() != WhiletranToken.Kind.NUMBER) {
+                    error("Expected variable or number at " + position(token));
+                }
+                return new NumberExpression(number(token));
             }
-        } else {
-            String token = tokens.poll();
-            if (token == null || !token.matches("-?[0-9]*")) {
-                error("Expected variable or number");
+        }
+
+
+        // a literal too long for an int is out of range too, and reported the same way
+        private int number(WhiletranToken token) {
+            long num = LittleManComputer.MAX_VALUE + 1L;
+            try {
+                num = Long.parseLong(token.text());
+            } catch (NumberFormatException e) {
+                // longer than a long, out of range either way
             }
-            int num = Integer.parseInt(token);
-            if(num < LittleManComputer.MIN_VALUE || LittleManComputer.MAX_VALUE < num) {
-                error("Number out of range: " + num);
+            if (num < LittleManComputer.MIN_VALUE || LittleManComputer.MAX_VALUE < num) {
+                error("Number out of range: " + token.text() + " at " + position(token));
             }
-            return new NumberExpression(num);
+            return (int) num;
         }
-    }
 
+        private void variable(WhiletranToken token) {
+            int symbol = token.symbol();
+            if (symbol >= variableOf.length) {
+                int length = variableOf.length;
+                variableOf = Arrays.copyOf(variableOf, Math.max(symbol + 1, length * 2));
+                Arrays.fill(variableOf, length, variableOf.length, -1);
+            }
+            if (variableOf[symbol] < 0) {
+                variableOf[symbol] = variables.intern(token.text());
+            }
+        }
 
-    private void requireString(String expected) {
-        if (!matchString(expected)) {
-            error("Expected '" + expected + "' but got '" + tokens.peek() + "'");
-        } else {
-            tokens.pop();
+        private void requireString(String expected) {
+            if (!matchString(expected)) {
+                WhiletranToken peek = tokens.peek();
+                error("Expected '" + expected + "' but got '" + peek + "' at " + position(peek));
+            } else {
+                tokens.take();
+            }
         }
-    }
 
-    private boolean matchString(String string) {
-        String peek = tokens.peek();
-        return Objects.equals(peek, string);
-    }
+        private boolean matchString(String string) {
+            WhiletranToken peek = tokens.peek();
+            return peek != null && peek.text().equals(string);
+        }
 
-    private String takeToken() {
-        return tokens.poll();
-    }
+        private String takeToken() {
+            WhiletranToken token = tokens.take();
+            return token == null ? null : token.text();
+        }
 
-    private boolean matchIdentifier() {
-        String peek = tokens.peek();
-        return peek != null && peek.matches("[A-Z][A-Z0-9]*");
-    }
+        private boolean matchIdentifier() {
+            WhiletranToken peek = tokens.peek();
+            return peek != null && peek.kind() == WhiletranToken.Kind.IDENTIFIER;
+        }
 
-    private boolean moreTokens() {
-        return !tokens.isEmpty();
-    }
+        private boolean moreTokens() {
+            return tokens.hasMore();
+        }
+
+        private String position(WhiletranToken token) {
+            if (token == null) {
+                return "end of input";
+            }
+            return "line " + token.line() + ", column " + token.column();
+        }
 
 
-    private <T> T error(String err) {
-        throw new WhiletranParseException(err);
+        private <T> T error(String err) {
+            throw new WhiletranParseException(err);
+        }
     }
-
 }
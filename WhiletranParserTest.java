@@ -26,7 +26,6 @@ public class WhiletranParserTest {
     @Test
     public void testVariableExpression() {
         WhiletranParser parser = new WhiletranParser();
-        parser.variables.add("X");
         WhiletranExpression expr = parser.parseAsExpression("X");
         assertInstanceOf(VariableExpression.class, expr);
         VariableExpression variable = (VariableExpression) expr;
@@ -91,6 +90,40 @@ public class WhiletranParserTest {
         assertInstanceOf(NumberExpression.class, add.rhs());
     }
 
+    @Test
+    public void testParsePrecedence() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranExpression expr = parser.parseAsExpression("1 - 2 + 3 >= 4");
+        assertInstanceOf(ConditionalExpression.class, expr);
+        ConditionalExpression comparison = (ConditionalExpression) expr;
+        AdditiveExpression add = (AdditiveExpression) comparison.lhs();
+        assertEquals("+", add.op());
+        AdditiveExpression sub = (AdditiveExpression) add.lhs();
+        assertEquals("-", sub.op());
+        assertInstanceOf(NumberExpression.class, comparison.rhs());
+    }
+
+    @Test
+    public void testParseParentheses() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranExpression expr = parser.parseAsExpression("1 - (2 + 3)");
+        AdditiveExpression sub = (AdditiveExpression) expr;
+        assertEquals("-", sub.op());
+        assertInstanceOf(NumberExpression.class, sub.lhs());
+        assertInstanceOf(AdditiveExpression.class, sub.rhs());
+        assertThrows(WhiletranParseException.class, () -> parser.parseAsExpression("(1 + 2"));
+    }
+
+    @Test
+    public void testNumberTooLongForAnIntIsOutOfRange() {
+        WhiletranParser parser = new WhiletranParser();
+        WhiletranParseException e = assertThrows(WhiletranParseException.class,
+                () -> parser.parse("X = 1\nWRITE 99999999999"));
+        assertEquals("Number out of range: 99999999999 at line 2, column 7", e.getMessage());
+        assertThrows(WhiletranParseException.class, () -> parser.parse("WRITE -99999999999999999999999"));
+        assertThrows(WhiletranParseException.class, () -> parser.parse("WRITE 1000"));
+    }
+
     @Test
     public void testCommentsAreIgnored() {
         WhiletranParser parser = new WhiletranParser();
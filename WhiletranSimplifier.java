@@ -0,0 +1,126 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.emulator.LittleManComputer;
+import csci366.lmc.whiletran.tree.*;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Tree to tree simplification run between the parser and the code generator:
+ *
+ * - arithmetic and comparisons over literals are folded, as long as the result stays within
+ *   the LMC value range (anything else is left for the machine to compute). A comparison is
+ *   computed by subtracting its sides, except from 0, so it's the difference that has to fit
+ * - x + 0, 0 + x and x - 0 become x, unless x is a comparison or a boolean: as a DO condition those
+ *   loop while they're true, where the sum is a plain value that loops while it's >= 0
+ * - an IF whose condition is constant is replaced by the branch that would run
+ *
+ * Expressions, WRITEs and assignments that don't change are returned as is.
+ */
+public class WhiletranSimplifier {
+
+    public WhiletranProgram simplify(WhiletranProgram program) {
+        return new WhiletranProgram(simplify(program.children()));
+    }
+
+    private LinkedList<WhiletranStatement> simplify(List<WhiletranStatement> statements) {
+        LinkedList<WhiletranStatement> result = new LinkedList<>();
+        for (WhiletranStatement statement : statements) {
+            simplify(statement, result);
+        }
+        return result;
+    }
+
+    private void simplify(WhiletranStatement statement, List<WhiletranStatement> result) {
+        if (statement instanceof WriteStatement ws) {
+            WhiletranExpression expression = simplify(ws.expression());
+            result.add(expression == ws.expression() ? ws : new WriteStatement(expression));
+
+        } else if (statement instanceof AssignmentStatement as) {
+            WhiletranExpression expression = simplify(as.expression());
+            result.add(expression == as.expression() ? as : new AssignmentStatement(as.variable(), expression));
+
+        } else if (statement instanceof IfStatement is) {
+            WhiletranExpression condition = simplify(is.condition());
+            Integer constant = constantValue(condition);
+            if (constant == null) {
+                result.add(new IfStatement(condition, simplify(is.thenBody()),
+                        is.elseBody() == null ? null : simplify(is.elseBody())));
+            } else if (constant != 0) {
+                result.addAll(simplify(is.thenBody()));
+            } else if (is.elseBody() != null) {
+                result.addAll(simplify(is.elseBody()));
+            }
+
+        } else if (statement instanceof DoWhileLoopStatement dl) {
+            result.add(new DoWhileLoopStatement(simplify(dl.body()), simplify(dl.condition())));
+
+        } else {
+            throw new IllegalArgumentException("Don't know how to simplify " + statement);
+        }
+    }
+
+    WhiletranExpression simplify(WhiletranExpression expression) {
+        if (expression instanceof AdditiveExpression ae) {
+            WhiletranExpression lhs = simplify(ae.lhs());
+            WhiletranExpression rhs = simplify(ae.rhs());
+            Integer lhsValue = constantValue(lhs);
+            Integer rhsValue = constantValue(rhs);
+
+            if (lhsValue != null && rhsValue != null) {
+                int value = ae.op().equals("+") ? lhsValue + rhsValue : lhsValue - rhsValue;
+                if (inRange(value)) {
+                    return new NumberExpression(value);
+                }
+            }
+            if (rhsValue != null && rhsValue == 0 && isPlainValue(lhs)) {
+                return lhs;
+            }
+            if (lhsValue != null && lhsValue == 0 && ae.op().equals("+") && isPlainValue(rhs)) {
+                return rhs;
+            }
+            if (lhs == ae.lhs() && rhs == ae.rhs()) {
+                return ae;
+            }
+            return new AdditiveExpression(ae.op(), lhs, rhs);
+
+        } else if (expression instanceof ConditionalExpression ce) {
+            WhiletranExpression lhs = simplify(ce.lhs());
+            WhiletranExpression rhs = simplify(ce.rhs());
+            Integer lhsValue = constantValue(lhs);
+            Integer rhsValue = constantValue(rhs);
+
+            if (lhsValue != null && rhsValue != null && (rhsValue == 0 || inRange(lhsValue - rhsValue))) {
+                if (ce.op().equals(">=")) {
+                    return new BooleanExpression(lhsValue >= rhsValue);
+                } else {
+                    return new BooleanExpression(lhsValue.intValue() == rhsValue.intValue());
+                }
+            }
+            if (lhs == ce.lhs() && rhs == ce.rhs()) {
+                return ce;
+            }
+            return new ConditionalExpression(ce.op(), lhs, rhs);
+        }
+        return expression;
+    }
+
+    private static boolean inRange(int value) {
+        return LittleManComputer.MIN_VALUE <= value && value <= LittleManComputer.MAX_VALUE;
+    }
+
+    private static boolean isPlainValue(WhiletranExpression expression) {
+        return !(expression instanceof ConditionalExpression) && !(expression instanceof BooleanExpression);
+    }
+
+    // booleans are 1 and 0 at runtime, the same as the code generator loads them
+    private static Integer constantValue(WhiletranExpression expression) {
+        if (expression instanceof NumberExpression ne) {
+            return ne.num();
+        } else if (expression instanceof BooleanExpression be) {
+            return be.value() ? 1 : 0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package csci366.lmc.whiletran;
+
+import csci366.lmc.whiletran.tree.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranSimplifierTest {
+
+    @Test
+    public void testFoldAddition() {
+        WhiletranExpression expr = simplify("1 + 2");
+        assertInstanceOf(NumberExpression.class, expr);
+        assertEquals(3, ((NumberExpression) expr).num());
+    }
+
+    @Test
+    public void testFoldSubtractionToNegative() {
+        WhiletranExpression expr = simplify("1 - 2");
+        assertEquals(-1, ((NumberExpression) expr).num());
+    }
+
+    @Test
+    public void testOutOfRangeIsNotFolded() {
+        WhiletranExpression expr = simplify("999 + 1");
+        assertInstanceOf(AdditiveExpression.class, expr);
+    }
+
+    @Test
+    public void testAddZero() {
+        assertInstanceOf(VariableExpression.class, simplify("X + 0"));
+        assertInstanceOf(VariableExpression.class, simplify("0 + X"));
+        assertInstanceOf(VariableExpression.class, simplify("X - 0"));
+        assertInstanceOf(AdditiveExpression.class, simplify("0 - X"));
+        // a DO tests a comparison for true but a sum for >= 0, so those keep their + 0
+        assertInstanceOf(AdditiveExpression.class, simplify("(X == 5) + 0"));
+        assertInstanceOf(AdditiveExpression.class, simplify("0 + (X >= 5)"));
+        assertInstanceOf(AdditiveExpression.class, simplify("(X == 5) - 0"));
+    }
+
+    @Test
+    public void testFoldComparisons() {
+        assertEquals(true, ((BooleanExpression) simplify("1 >= 0")).value());
+        assertEquals(false, ((BooleanExpression) simplify("0 >= 1")).value());
+        assertEquals(true, ((BooleanExpression) simplify("TRUE == 1")).value());
+        assertEquals(false, ((BooleanExpression) simplify("0 == 1")).value());
+        assertInstanceOf(ConditionalExpression.class, simplify("X == 1"));
+        // 999 - -1 is out of range on the machine, but nothing is subtracted to compare with 0
+        assertInstanceOf(ConditionalExpression.class, simplify("999 >= -1"));
+        assertInstanceOf(ConditionalExpression.class, simplify("-999 == 1"));
+        assertEquals(true, ((BooleanExpression) simplify("999 >= 0")).value());
+        assertEquals(false, ((BooleanExpression) simplify("-999 >= 0")).value());
+    }
+
+    @Test
+    public void testConstantIfIsReplacedByBranch() {
+        WhiletranProgram program = simplifyProgram("IF 1 >= 0 THEN WRITE 1 WRITE 2 ELSE WRITE 3 ENDIF WRITE 4");
+        assertEquals(3, program.children().size());
+        assertInstanceOf(WriteStatement.class, program.children().get(0));
+
+        program = simplifyProgram("IF FALSE THEN WRITE 1 ELSE WRITE 3 ENDIF");
+        assertEquals(1, program.children().size());
+        WriteStatement write = (WriteStatement) program.children().get(0);
+        assertEquals(3, ((NumberExpression) write.expression()).num());
+
+        program = simplifyProgram("IF FALSE THEN WRITE 1 ENDIF");
+        assertEquals(0, program.children().size());
+    }
+
+    @Test
+    public void testUnchangedNodesAreReused() {
+        WhiletranProgram program = new WhiletranParser().parse("X = READ WRITE X + 1");
+        WhiletranProgram simplified = new WhiletranSimplifier().simplify(program);
+        assertSame(program.children().get(0), simplified.children().get(0));
+        assertSame(program.children().get(1), simplified.children().get(1));
+    }
+
+    private static WhiletranExpression simplify(String src) {
+        return new WhiletranSimplifier().simplify(new WhiletranParser().parseAsExpression(src));
+    }
+
+    private static WhiletranProgram simplifyProgram(String src) {
+        return new WhiletranSimplifier().simplify(new WhiletranParser().parse(src));
+    }
+}
@@ -0,0 +1,122 @@
+package csci366.lmc.whiletran;
+
+import java.util.Arrays;
+
+/**
+ * Interns names to dense int ids, numbered from 0 in order of first appearance, so the passes after
+ * the lexer can key their tables by id instead of hashing strings.
+ *
+ * A name can be interned straight from a region of the source, which is how the lexer looks up
+ * every token without cutting it out of the source first. Each name's String is made once, the first
+ * time it's interned, and {@link #name(int)} hands back that same instance every time. The hash is
+ * String's own, so interning a String uses the hash it has already cached.
+ *
+ * A table isn't thread safe, each lexer, parse and arena has its own.
+ */
+public final class WhiletranSymbols {
+
+    private String[] names = new String[16];
+    private int[] hashes = new int[16];
+    // open addressing, id + 1 in each slot and 0 for an empty one
+    private int[] slots = new int[32];
+    private int size = 0;
+
+    public WhiletranSymbols() {
+    }
+
+    // a table that starts out with the same names and ids as other
+    public WhiletranSymbols(WhiletranSymbols other) {
+        names = other.names.clone();
+        hashes = other.hashes.clone();
+        slots = other.slots.clone();
+        size = other.size;
+    }
+
+    public int intern(String name) {
+        int id = find(name, 0, name.length(), name.hashCode());
+        return id >= 0 ? id : add(name, name.hashCode());
+    }
+
+    // interns chars from start up to but not including end
+    public int intern(CharSequence chars, int start, int end) {
+        int hash = hash(chars, start, end);
+        int id = find(chars, start, end, hash);
+        return id >= 0 ? id : add(chars.subSequence(start, end).toString(), hash);
+    }
+
+    // the id of a name already interned, or -1
+    public int find(String name) {
+        return find(name, 0, name.length(), name.hashCode());
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the names in id order
+    public String[] names() {
+        return Arrays.copyOf(names, size);
+    }
+
+    private int find(CharSequence chars, int start, int end, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(names[id], chars, start, end)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        // kept at most half full
+        if (size * 2 >= slots.length) {
+            slots = new int[slots.length * 2];
+            for (int id = 0; id < size; id++) {
+                place(id);
+            }
+        }
+        place(size);
+        return size++;
+    }
+
+    private void place(int id) {
+        int mask = slots.length - 1;
+        int slot = hashes[id] & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean matches(String name, CharSequence chars, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package csci366.lmc.whiletran;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhiletranSymbolsTest {
+
+    @Test
+    public void testIdsAreDenseInOrderOfFirstAppearance() {
+        WhiletranSymbols symbols = new WhiletranSymbols();
+        assertEquals(0, symbols.intern("X"));
+        assertEquals(1, symbols.intern("Y"));
+        assertEquals(0, symbols.intern("X"));
+        assertEquals(2, symbols.size());
+        assertEquals("Y", symbols.name(1));
+        assertEquals(-1, symbols.find("Z"));
+        assertEquals(List.of("X", "Y"), List.of(symbols.names()));
+    }
+
+    @Test
+    public void testInternFromARegion() {
+        WhiletranSymbols symbols = new WhiletranSymbols();
+        String src = "ABC = ABC + AB";
+        int abc = symbols.intern(src, 0, 3);
+        assertEquals(abc, symbols.intern(src, 6, 9));
+        assertEquals(abc, symbols.intern("ABC"));
+        assertNotEquals(abc, symbols.intern(src, 12, 14));
+        // the same instance every time
+        assertSame(symbols.name(abc), symbols.name(symbols.intern(src, 6, 9)));
+    }
+
+    @Test
+    public void testManyNames() {
+        WhiletranSymbols symbols = new WhiletranSymbols();
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, symbols.intern("V" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, symbols.find("V" + i));
+            assertEquals("V" + i, symbols.name(i));
+        }
+        // "Aa" and "BB" have the same hash
+        assertNotEquals(symbols.intern("Aa"), symbols.intern("BB"));
+        assertEquals(10_002, symbols.size());
+    }
+}
@@ -0,0 +1,26 @@
+package csci366.lmc.whiletran;
+
+// offset is where the token starts in the source, the token ends at offset + text.length(). symbol is
+// the text's id in the lexer's WhiletranSymbols, or -1 for a token that didn't come from a lexer
+public record WhiletranToken(Kind kind, String text, int line, int column, int offset, int symbol) {
+
+    public enum Kind {
+        IDENTIFIER,
+        NUMBER,
+        OPERATOR,
+        UNKNOWN
+    }
+
+    public WhiletranToken(Kind kind, String text, int line, int column, int offset) {
+        this(kind, text, line, column, offset, -1);
+    }
+
+    public int end() {
+        return offset + text.length();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,85 @@
+package csci366.lmc.whiletran.bench;
+
+import csci366.lmc.asm.LittleManAssembler;
+import csci366.lmc.whiletran.LmcImage;
+import csci366.lmc.whiletran.LmcImageWriter;
+import csci366.lmc.whiletran.LmcInstruction;
+import csci366.lmc.whiletran.PeepholeOptimizer;
+import csci366.lmc.whiletran.WhiletranCodeGenerator;
+import csci366.lmc.whiletran.WhiletranParser;
+import csci366.lmc.whiletran.tree.WhiletranProgram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Code generation and peephole optimization over synthetic programs of every size, and both ways
+ * of assembling (text through LittleManAssembler, and LmcImageWriter) over the corpus programs,
+ * which are the only ones that fit in 100 mailboxes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackEndBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Synthetic {
+
+        @Param({"10", "100", "1000", "10000", "100000"})
+        public int statements;
+
+        WhiletranProgram program;
+        List<LmcInstruction> code;
+
+        @Setup
+        public void setup() {
+            program = new WhiletranParser().parse(BenchmarkCorpus.synthetic(statements));
+            code = new WhiletranCodeGenerator().generateInstructions(program);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+
+        @Param({"division", "fib", "max"})
+        public String name;
+
+        List<LmcInstruction> code;
+        String asm;
+
+        @Setup
+        public void setup() {
+            WhiletranProgram program = new WhiletranParser().parse(BenchmarkCorpus.program(name));
+            code = new WhiletranCodeGenerator().generateInstructions(program);
+            asm = LmcInstruction.toListing(code);
+        }
+    }
+
+    @Benchmark
+    public List<LmcInstruction> generateInstructions(Synthetic state) {
+        return new WhiletranCodeGenerator().generateInstructions(state.program);
+    }
+
+    @Benchmark
+    public String generateCode(Synthetic state) {
+        return new WhiletranCodeGenerator().generateCode(state.program);
+    }
+
+    @Benchmark
+    public PeepholeOptimizer.Result peephole(Synthetic state) {
+        return new PeepholeOptimizer().optimize(state.code);
+    }
+
+    @Benchmark
+    public int[] assembleText(Corpus state) {
+        return new LittleManAssembler().assemble(state.asm);
+    }
+
+    @Benchmark
+    public LmcImage writeImage(Corpus state) {
+        return new LmcImageWriter().write(state.code);
+    }
+}
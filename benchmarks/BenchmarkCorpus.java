@@ -0,0 +1,85 @@
+package csci366.lmc.whiletran.bench;
+
+/**
+ * Programs the benchmarks run over: the end to end test programs, which fit in the 100 mailboxes
+ * and can be run, and synthetic programs of a given number of statements, which only exercise the
+ * front end and code generator.
+ */
+public class BenchmarkCorpus {
+
+    public static final String DIVISION = """
+            A = READ
+            B = READ
+            DIV = -1
+            DO
+                DIV = DIV + 1
+                A = A - B
+            WHILE A
+            ENDDO
+            WRITE DIV""";
+
+    public static final String FIB = """
+            N = READ
+            F1 = 0
+            F2 = 1
+            DO
+              TMP = F1 + F2
+              F2 = F1
+              F1 = TMP
+              N = N - 1
+            WHILE N - 1
+            ENDDO
+            WRITE F1""";
+
+    public static final String MAX = """
+            A = READ
+            B = READ
+            IF A >= B THEN
+                WRITE A
+            ELSE
+                WRITE B
+            ENDIF""";
+
+    public static String program(String name) {
+        return switch (name) {
+            case "division" -> DIVISION;
+            case "fib" -> FIB;
+            case "max" -> MAX;
+            default -> throw new IllegalArgumentException("Unknown program: " + name);
+        };
+    }
+
+    public static int[] inputs(String name) {
+        return switch (name) {
+            case "division" -> new int[]{900, 3};
+            case "fib" -> new int[]{14};
+            case "max" -> new int[]{10, 20};
+            default -> throw new IllegalArgumentException("Unknown program: " + name);
+        };
+    }
+
+    /**
+     * A program of roughly the given number of statements, cycling through assignments, WRITEs,
+     * IF/ELSE and DO loops over a handful of variables and comments.
+     */
+    public static String synthetic(int statements) {
+        StringBuilder sb = new StringBuilder(statements * 24);
+        sb.append("! synthetic program, ").append(statements).append(" statements\n");
+        sb.append("V0 = READ\n");
+        for (int i = 1; i < statements; i++) {
+            String v = "V" + (i % 8);
+            String w = "V" + ((i + 3) % 8);
+            switch (i % 6) {
+                case 0 -> sb.append(v).append(" = ").append(w).append(" + ").append(i % 100).append('\n');
+                case 1 -> sb.append(v).append(" = ").append(w).append(" - 1 ! decrement\n");
+                case 2 -> sb.append("WRITE ").append(v).append('\n');
+                case 3 -> sb.append("IF ").append(v).append(" >= ").append(w).append(" THEN\n  WRITE ").append(v)
+                        .append("\nELSE\n  WRITE ").append(w).append("\nENDIF\n");
+                case 4 -> sb.append("DO\n  ").append(v).append(" = ").append(v).append(" - 1\nWHILE ").append(v)
+                        .append("\nENDDO\n");
+                default -> sb.append(v).append(" = ").append(i % 2 == 0 ? "TRUE" : "-" + (i % 50)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
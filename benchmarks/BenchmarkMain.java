@@ -0,0 +1,29 @@
+package csci366.lmc.whiletran.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark (or those matching the first argument) with the GC profiler, so each result
+ * also reports allocation per operation, and writes the results as JSON to the second argument
+ * (jmh-result.json by default) for comparing between releases.
+ *
+ * Needs jmh-core and jmh-generator-annprocess on the classpath, alongside the compiled
+ * csci366.lmc sources, which is what build.gradle in this directory sets up (gradle :benchmarks:jmh).
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "csci366.lmc.whiletran.bench")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 1 ? args[1] : "jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,81 @@
+package csci366.lmc.whiletran.bench;
+
+import csci366.lmc.emulator.LittleManComputer;
+import csci366.lmc.whiletran.LmcMachine;
+import csci366.lmc.whiletran.WhiletranCompiler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running the corpus programs, including load and input setup, on LittleManComputer and on
+ * LmcMachine, stepped and predecoded, plus the full compile with and without the compiler cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionBenchmark {
+
+    @Param({"division", "fib", "max"})
+    public String name;
+
+    String src;
+    int[] image;
+    int[] inputs;
+    Integer[] boxedInputs;
+    WhiletranCompiler cachedCompiler;
+
+    @Setup
+    public void setup() {
+        src = BenchmarkCorpus.program(name);
+        cachedCompiler = new WhiletranCompiler();
+        image = cachedCompiler.compile(src).mailboxes();
+        inputs = BenchmarkCorpus.inputs(name);
+        boxedInputs = new Integer[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            boxedInputs[i] = inputs[i];
+        }
+    }
+
+    @Benchmark
+    public LinkedList<Integer> littleManComputer() {
+        LittleManComputer computer = new LittleManComputer();
+        computer.load(image);
+        computer.pushInputs(boxedInputs);
+        computer.run();
+        return computer.getOutput();
+    }
+
+    @Benchmark
+    public int[] lmcMachine() {
+        LmcMachine machine = new LmcMachine();
+        machine.load(image);
+        machine.pushInputs(inputs);
+        machine.run();
+        return machine.getOutput();
+    }
+
+    @Benchmark
+    public int[] lmcMachinePredecoded() {
+        LmcMachine machine = new LmcMachine();
+        machine.enablePredecoding();
+        machine.load(image);
+        machine.pushInputs(inputs);
+        machine.run();
+        return machine.getOutput();
+    }
+
+    @Benchmark
+    public Object compileUncached() {
+        return cachedCompiler.compileUncached(src);
+    }
+
+    @Benchmark
+    public Object compileCached() {
+        return cachedCompiler.compile(src);
+    }
+}
@@ -0,0 +1,59 @@
+package csci366.lmc.whiletran.bench;
+
+import csci366.lmc.emulator.Utils;
+import csci366.lmc.whiletran.WhiletranLexer;
+import csci366.lmc.whiletran.WhiletranParser;
+import csci366.lmc.whiletran.WhiletranSimplifier;
+import csci366.lmc.whiletran.tree.WhiletranProgram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexing, parsing and simplification over synthetic programs from 10 to 100k statements.
+ * Utils.tokenize is included as the baseline the lexer replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int statements;
+
+    String src;
+    WhiletranProgram program;
+
+    @Setup
+    public void setup() {
+        src = BenchmarkCorpus.synthetic(statements);
+        program = new WhiletranParser().parse(src);
+    }
+
+    @Benchmark
+    public void lex(Blackhole bh) {
+        WhiletranLexer lexer = new WhiletranLexer(src);
+        while (lexer.hasMore()) {
+            bh.consume(lexer.take());
+        }
+    }
+
+    @Benchmark
+    public Object utilsTokenize() {
+        return Utils.tokenize(src);
+    }
+
+    @Benchmark
+    public WhiletranProgram parse() {
+        return new WhiletranParser().parse(src);
+    }
+
+    @Benchmark
+    public WhiletranProgram simplify() {
+        return new WhiletranSimplifier().simplify(program);
+    }
+}